@@ -0,0 +1,98 @@
+package net.playwright.extraction_dimensions;
+
+import net.minecraft.core.Registry;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.LevelHeightAccessor;
+import net.minecraft.world.level.StructureManager;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.ChunkGenerator;
+import net.minecraft.world.level.chunk.ProtoChunk;
+import net.minecraft.world.level.chunk.UpgradeData;
+import net.minecraft.world.level.dimension.LevelStem;
+import net.minecraft.world.level.levelgen.NoiseBasedChunkGenerator;
+import net.minecraft.world.level.levelgen.NoiseGeneratorSettings;
+import net.minecraft.world.level.levelgen.RandomState;
+import net.minecraft.world.level.levelgen.blending.Blender;
+import net.minecraft.world.level.levelgen.structure.Structure;
+import net.minecraft.world.level.levelgen.structure.StructureStart;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Chunks per second through the terrain step of the vanilla noise generator ({@code iron_world}) and
+ * of {@link ArenaChunkGenerator} ({@code arena_world}). Each operation fills one fresh proto chunk,
+ * walking over a 32x32 chunk area inside the arena.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+public class ChunkGenerationBenchmark {
+
+    private static final int AREA_CHUNKS = 32;
+    private static final long SEED = 42L;
+
+    @Param({"noise", "arena"})
+    public String generator;
+
+    private ChunkGenerator chunkGenerator;
+    private RandomState randomState;
+    private Registry<Biome> biomes;
+    private StructureManager structures;
+    private LevelHeightAccessor height;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws Exception {
+        RegistryAccess registries = HeadlessRegistries.load();
+        String stem = generator.equals("noise") ? "iron_world" : "arena_world";
+        LevelStem levelStem = registries.registryOrThrow(Registries.LEVEL_STEM)
+                .getOrThrow(ResourceKey.create(Registries.LEVEL_STEM, new ResourceLocation(DimensionMod.MODID, stem)));
+        chunkGenerator = levelStem.generator();
+
+        // The same way ChunkMap sets it up; the arena generator doesn't use it
+        NoiseGeneratorSettings settings = chunkGenerator instanceof NoiseBasedChunkGenerator noise
+                ? noise.generatorSettings().value() : NoiseGeneratorSettings.dummy();
+        randomState = RandomState.create(settings, registries.lookupOrThrow(Registries.NOISE), SEED);
+
+        biomes = registries.registryOrThrow(Registries.BIOME);
+        height = LevelHeightAccessor.create(levelStem.type().value().minY(), levelStem.type().value().height());
+        structures = new NoStructures();
+    }
+
+    @Benchmark
+    public ChunkAccess fillChunk() {
+        int index = next++ % (AREA_CHUNKS * AREA_CHUNKS);
+        ChunkPos pos = new ChunkPos(index % AREA_CHUNKS - AREA_CHUNKS / 2, index / AREA_CHUNKS - AREA_CHUNKS / 2);
+        ProtoChunk chunk = new ProtoChunk(pos, UpgradeData.EMPTY, height, biomes, null);
+        return chunkGenerator.fillFromNoise(Runnable::run, Blender.empty(), randomState, structures, chunk).join();
+    }
+
+    // The noise generator asks for structure starts to shape terrain around them; there are none here
+    private static class NoStructures extends StructureManager {
+        private NoStructures() {
+            super(null, null, null);
+        }
+
+        @Override
+        public List<StructureStart> startsForStructure(ChunkPos pos, Predicate<Structure> predicate) {
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package net.playwright.extraction_dimensions;
+
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.util.RandomSource;
+import net.minecraft.world.level.dimension.LevelStem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a freshly seeded match {@link LevelStem} with
+ * {@link TemporaryDimensionHelper#stemWithRandomSeed}, with and without the encoded template cached.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class GeneratorTemplateBenchmark {
+
+    private static final ResourceLocation TEMPLATE = new ResourceLocation(DimensionMod.MODID, "iron_world");
+
+    private RegistryAccess registries;
+    private RandomSource random;
+
+    @Setup
+    public void setUp() throws Exception {
+        registries = HeadlessRegistries.load();
+        random = RandomSource.create(42);
+    }
+
+    // What every match after the first pays: copy the cached tag, patch the seed, parse
+    @Benchmark
+    public LevelStem cachedTemplate() {
+        return TemporaryDimensionHelper.stemWithRandomSeed(registries, TEMPLATE, random);
+    }
+
+    // The first match after a start or reload: encode the template stem as well
+    @Benchmark
+    public LevelStem coldTemplate() {
+        TemporaryDimensionHelper.clearTemplateCache();
+        return TemporaryDimensionHelper.stemWithRandomSeed(registries, TEMPLATE, random);
+    }
+}
@@ -0,0 +1,70 @@
+package net.playwright.extraction_dimensions;
+
+import net.minecraft.SharedConstants;
+import net.minecraft.core.LayeredRegistryAccess;
+import net.minecraft.core.MappedRegistry;
+import net.minecraft.core.Registry;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.RegistryDataLoader;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.server.RegistryLayer;
+import net.minecraft.server.packs.PackResources;
+import net.minecraft.server.packs.PackType;
+import net.minecraft.server.packs.PathPackResources;
+import net.minecraft.server.packs.repository.ServerPacksSource;
+import net.minecraft.server.packs.resources.CloseableResourceManager;
+import net.minecraft.server.packs.resources.MultiPackResourceManager;
+
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Loads the worldgen and dimension registries from the vanilla data pack and this mod's resources,
+ * the same way the server does on startup, without a running server.
+ */
+final class HeadlessRegistries {
+
+    private HeadlessRegistries() {
+    }
+
+    static RegistryAccess.Frozen load() throws URISyntaxException {
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+        registerGenerators();
+
+        List<PackResources> packs = List.of(ServerPacksSource.createVanillaPackSource(), modResources());
+        try (CloseableResourceManager resources = new MultiPackResourceManager(PackType.SERVER_DATA, packs)) {
+            LayeredRegistryAccess<RegistryLayer> layers = RegistryLayer.createRegistryAccess();
+            RegistryAccess.Frozen worldgen = RegistryDataLoader.load(resources,
+                    layers.getAccessForLoading(RegistryLayer.WORLDGEN), RegistryDataLoader.WORLDGEN_REGISTRIES);
+            layers = layers.replaceFrom(RegistryLayer.WORLDGEN, worldgen);
+            RegistryAccess.Frozen dimensions = RegistryDataLoader.load(resources,
+                    layers.getAccessForLoading(RegistryLayer.DIMENSIONS), RegistryDataLoader.DIMENSION_REGISTRIES);
+            return layers.replaceFrom(RegistryLayer.DIMENSIONS, dimensions).compositeAccess();
+        }
+    }
+
+    // Without FML nothing runs the mod's deferred registers, but the dimension files need its generator type
+    private static void registerGenerators() {
+        ResourceLocation arena = new ResourceLocation(DimensionMod.MODID, "arena");
+        MappedRegistry<?> generators = (MappedRegistry<?>) BuiltInRegistries.CHUNK_GENERATOR;
+        if (BuiltInRegistries.CHUNK_GENERATOR.containsKey(arena))
+            return;
+        generators.unfreeze();
+        Registry.register(BuiltInRegistries.CHUNK_GENERATOR, arena, ArenaChunkGenerator.CODEC);
+        generators.freeze();
+    }
+
+    // The mod's resources are on the benchmark classpath as a plain directory
+    private static PackResources modResources() throws URISyntaxException {
+        URL template = HeadlessRegistries.class.getResource("/data/" + DimensionMod.MODID + "/dimension/iron_world.json");
+        if (template == null)
+            throw new IllegalStateException("Mod resources are not on the classpath");
+        Path root = Path.of(template.toURI()).getParent().getParent().getParent().getParent();
+        return new PathPackResources(DimensionMod.MODID, root, false);
+    }
+}
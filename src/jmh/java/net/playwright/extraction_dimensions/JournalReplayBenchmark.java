@@ -0,0 +1,65 @@
+package net.playwright.extraction_dimensions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to read back a compacted match journal at server start: the file read, checksums and rebuilding
+ * the journal's view of every match. Creating the levels of the recovered matches is not included.
+ * Each match is running and has eight players.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+public class JournalReplayBenchmark {
+
+    private static final int PLAYERS_PER_MATCH = 8;
+
+    @Param({"100", "1000"})
+    public int matches;
+
+    private Path journal;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<MatchJournal.JournalMatch> entries = new ArrayList<>(matches);
+        for (int i = 0; i < matches; i++) {
+            MatchJournal.JournalMatch entry = new MatchJournal.JournalMatch(i + 1, 30 * 60 * 20,
+                    MatchManager.Match.MatchState.PLAYING, i * 20);
+            for (int slot = 0; slot < PLAYERS_PER_MATCH; slot++) {
+                entry.getPlayers().add(UUID.randomUUID());
+            }
+            entries.add(entry);
+        }
+        journal = Files.createTempFile("extraction_matches", ".journal");
+        MatchJournal.write(journal, entries);
+    }
+
+    @Benchmark
+    public Collection<MatchJournal.JournalMatch> replay() throws IOException {
+        return MatchJournal.read(journal);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(journal);
+    }
+}
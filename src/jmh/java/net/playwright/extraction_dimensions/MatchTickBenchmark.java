@@ -0,0 +1,89 @@
+package net.playwright.extraction_dimensions;
+
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-tick match bookkeeping with many matches running at once, on the real {@link MatchManager.Match}.
+ * <p>
+ * Each match is put straight into gameplay without a level ({@link MatchManager.Match#startHeadless}),
+ * so its players are offline: the timer bar, extraction countdowns and journal records are all produced,
+ * but no packets are sent. Each call runs one tick of the frame {@code MatchManager.runBookkeeping} runs
+ * for every match: snapshot, timers, HUD flush and commands. An iteration is a batch of {@link #TICKS}
+ * calls timed together, so divide by it for the cost of one tick; {@code -prof gc} shows what the
+ * batch allocated.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, batchSize = MatchTickBenchmark.TICKS)
+@Measurement(iterations = 20, batchSize = MatchTickBenchmark.TICKS)
+@Fork(1)
+public class MatchTickBenchmark {
+
+    // A minute of match time per batch; extractions last longer, so every extracting player keeps
+    // extracting for the whole batch
+    static final int TICKS = 20 * 60;
+
+    @Param({"1", "10", "100"})
+    public int matches;
+
+    @Param({"0", "4", "16"})
+    public int extractingPlayers;
+
+    private MatchManager.Match[] running;
+    private long tick;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws Exception {
+        // Bootstraps the registries the match's components and boss bars need
+        HeadlessRegistries.load();
+        Config.matchWarmupSeconds = 15;
+        Config.matchDurationSeconds = 30 * 60;
+        Config.extractionSeconds = 2 * TICKS / 20;
+        Config.extractionZoneRadius = 6;
+        Config.recorderEnabled = false;
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        tick = 0;
+        running = new MatchManager.Match[matches];
+        for (int i = 0; i < matches; i++) {
+            ResourceKey<net.minecraft.world.level.Level> dimension = ResourceKey.create(Registries.DIMENSION,
+                    new ResourceLocation(DimensionMod.MODID, "match_" + (i + 1)));
+            running[i] = new MatchManager.Match(null, dimension, 0);
+            // Stagger the matches so their countdowns don't all land on the same tick
+            running[i].startHeadless(i * 7L, Math.max(extractingPlayers, 1), extractingPlayers);
+        }
+    }
+
+    @Benchmark
+    public void tick() {
+        for (MatchManager.Match match : running) {
+            match.beginFrame(tick);
+        }
+        for (MatchManager.Match match : running) {
+            match.evaluate();
+        }
+        for (MatchManager.Match match : running) {
+            match.endFrame();
+        }
+        tick++;
+    }
+}
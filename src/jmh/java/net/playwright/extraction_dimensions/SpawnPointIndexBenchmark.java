@@ -0,0 +1,71 @@
+package net.playwright.extraction_dimensions;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.core.BlockPos;
+import net.minecraft.util.RandomSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spawn position selection for one match, from the samples its spawn chunks produce.
+ * <p>
+ * The samples are laid out the way {@link SpawnPregenerator} and {@link SpawnPointIndex#sampleChunk}
+ * produce them: one square of chunks per spawn column, with a 4x4 grid of samples per chunk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class SpawnPointIndexBenchmark {
+
+    @Param({"4", "16", "64"})
+    public int spawnAreas;
+
+    @Param({"0", "8"})
+    public int extractionPoints;
+
+    private LongArrayList samples;
+    private List<BlockPos> avoid;
+    private long seed;
+
+    @Setup
+    public void setUp() {
+        RandomSource random = RandomSource.create(42);
+        int radius = 2; // The default spawnPregenRadius
+        samples = new LongArrayList();
+        for (int area = 0; area < spawnAreas; area++) {
+            int centerX = (random.nextInt(1001) - 500) >> 4;
+            int centerZ = (random.nextInt(1001) - 500) >> 4;
+            for (int cx = centerX - radius; cx <= centerX + radius; cx++) {
+                for (int cz = centerZ - radius; cz <= centerZ + radius; cz++) {
+                    for (int lx = 2; lx < 16; lx += 4) {
+                        for (int lz = 2; lz < 16; lz += 4) {
+                            samples.add(BlockPos.asLong(cx * 16 + lx, 64 + random.nextInt(8), cz * 16 + lz));
+                        }
+                    }
+                }
+            }
+        }
+
+        avoid = new ArrayList<>();
+        for (int i = 0; i < extractionPoints; i++) {
+            avoid.add(new BlockPos(random.nextInt(1001) - 500, 64, random.nextInt(1001) - 500));
+        }
+    }
+
+    @Benchmark
+    public SpawnPointIndex build() {
+        return SpawnPointIndex.build(samples, 32, avoid, 64, seed++);
+    }
+}
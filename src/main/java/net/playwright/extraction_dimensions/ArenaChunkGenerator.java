@@ -0,0 +1,373 @@
+package net.playwright.extraction_dimensions;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.MapCodec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.WorldGenRegion;
+import net.minecraft.util.RandomSource;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.LevelHeightAccessor;
+import net.minecraft.world.level.NaturalSpawner;
+import net.minecraft.world.level.NoiseColumn;
+import net.minecraft.world.level.StructureManager;
+import net.minecraft.world.level.WorldGenLevel;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.BiomeManager;
+import net.minecraft.world.level.biome.BiomeSource;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.ChunkGenerator;
+import net.minecraft.world.level.chunk.ChunkGeneratorStructureState;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.minecraft.world.level.levelgen.GenerationStep;
+import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.level.levelgen.LegacyRandomSource;
+import net.minecraft.world.level.levelgen.RandomState;
+import net.minecraft.world.level.levelgen.RandomSupport;
+import net.minecraft.world.level.levelgen.WorldgenRandom;
+import net.minecraft.world.level.levelgen.blending.Blender;
+import net.minecraft.world.level.levelgen.structure.templatesystem.StructureTemplateManager;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A cheap generator for match arenas: rolling terrain from a heightfield, inside a square arena around
+ * 0,0 and nothing outside it.
+ * <p>
+ * Heights come from a few octaves of value noise over small lattices that are built once per
+ * generator, so a column costs a handful of array reads. Sections that lie entirely below the surface
+ * are filled in one go. The terrain only depends on the {@code seed} field, which
+ * {@link TemporaryDimensionHelper#stemWithRandomSeed} re-rolls for every match, not on the world seed.
+ * <p>
+ * Use it from a dimension JSON with {@code "type": "extraction_dimensions:arena"}; see
+ * {@code dimension/arena_world.json}.
+ */
+public class ArenaChunkGenerator extends ChunkGenerator {
+
+    public static final Codec<ArenaChunkGenerator> CODEC = RecordCodecBuilder.create(instance -> instance.group(
+            BiomeSource.CODEC.fieldOf("biome_source").forGetter(generator -> generator.biomeSource),
+            Codec.LONG.optionalFieldOf("seed", 0L).forGetter(generator -> generator.seed),
+            Settings.CODEC.forGetter(generator -> generator.settings)
+    ).apply(instance, ArenaChunkGenerator::new));
+
+    // How many blocks of subsurface (dirt) sit between the surface block and the default block
+    private static final int SUBSURFACE_DEPTH = 3;
+    private static final int OCTAVES = 3;
+    // Largest arena, so the heightfield lattices stay small; 8192 blocks across is already far more than
+    // a match can use
+    private static final int MAX_ARENA_RADIUS = 4096;
+    // Most lattice points along a side per octave; small feature sizes on large arenas get coarser cells
+    // instead, so a lattice never takes more than 4 MB
+    private static final int MAX_LATTICE_SIZE = 1024;
+
+    /**
+     * Shape and blocks of the arena.
+     *
+     * @param arenaRadius     half the side of the square arena, in blocks, at most 4096
+     * @param baseHeight      average surface height
+     * @param heightVariation how far the surface may rise above or sink below the base height
+     * @param featureSize     size in blocks of the largest hills and valleys
+     */
+    public record Settings(int arenaRadius, int minY, int height, int seaLevel, int baseHeight, int heightVariation,
+                           double featureSize, BlockState defaultBlock, BlockState subsurfaceBlock,
+                           BlockState surfaceBlock, BlockState defaultFluid) {
+
+        public static final MapCodec<Settings> CODEC = RecordCodecBuilder.mapCodec(instance -> instance.group(
+                Codec.intRange(16, MAX_ARENA_RADIUS).optionalFieldOf("arena_radius", 512).forGetter(Settings::arenaRadius),
+                Codec.intRange(-2032, 2031).optionalFieldOf("min_y", -64).forGetter(Settings::minY),
+                Codec.intRange(16, 4064).optionalFieldOf("height", 384).forGetter(Settings::height),
+                Codec.INT.optionalFieldOf("sea_level", 62).forGetter(Settings::seaLevel),
+                Codec.INT.optionalFieldOf("base_height", 68).forGetter(Settings::baseHeight),
+                Codec.intRange(0, 256).optionalFieldOf("height_variation", 16).forGetter(Settings::heightVariation),
+                Codec.doubleRange(4.0, 4096.0).optionalFieldOf("feature_size", 96.0).forGetter(Settings::featureSize),
+                BlockState.CODEC.optionalFieldOf("default_block", Blocks.STONE.defaultBlockState()).forGetter(Settings::defaultBlock),
+                BlockState.CODEC.optionalFieldOf("subsurface_block", Blocks.DIRT.defaultBlockState()).forGetter(Settings::subsurfaceBlock),
+                BlockState.CODEC.optionalFieldOf("surface_block", Blocks.GRASS_BLOCK.defaultBlockState()).forGetter(Settings::surfaceBlock),
+                BlockState.CODEC.optionalFieldOf("default_fluid", Blocks.WATER.defaultBlockState()).forGetter(Settings::defaultFluid)
+        ).apply(instance, Settings::new));
+    }
+
+    private final long seed;
+    private final Settings settings;
+    private final HeightField heightField;
+
+    public ArenaChunkGenerator(BiomeSource biomeSource, long seed, Settings settings) {
+        super(biomeSource);
+        this.seed = seed;
+        this.settings = settings;
+        this.heightField = new HeightField(seed, settings.arenaRadius(), settings.featureSize());
+    }
+
+    @Override
+    protected Codec<? extends ChunkGenerator> codec() {
+        return CODEC;
+    }
+
+    public int getArenaRadius() {
+        return settings.arenaRadius();
+    }
+
+    /**
+     * Keeps players of an arena level inside the arena.
+     */
+    public static void applyWorldBorder(ServerLevel level) {
+        if (level.getChunkSource().getGenerator() instanceof ArenaChunkGenerator arena) {
+            level.getWorldBorder().setCenter(0, 0);
+            level.getWorldBorder().setSize(arena.getArenaRadius() * 2);
+        }
+    }
+
+    public boolean isInsideArena(ChunkPos pos) {
+        int radius = settings.arenaRadius();
+        return pos.getMaxBlockX() >= -radius && pos.getMinBlockX() < radius
+                && pos.getMaxBlockZ() >= -radius && pos.getMinBlockZ() < radius;
+    }
+
+    private boolean isInsideArena(int x, int z) {
+        int radius = settings.arenaRadius();
+        return x >= -radius && x < radius && z >= -radius && z < radius;
+    }
+
+    // Y of the topmost solid block of a column inside the arena
+    private int surfaceY(int x, int z) {
+        int y = settings.baseHeight() + Math.round(settings.heightVariation() * heightField.sample(x, z));
+        return Math.max(settings.minY() + 1, Math.min(y, settings.minY() + settings.height() - 2));
+    }
+
+    // The block at y in a column whose surface is at surfaceY, or null for air
+    private BlockState stateAt(int y, int surfaceY) {
+        if (y == settings.minY())
+            return Blocks.BEDROCK.defaultBlockState();
+        if (y < surfaceY - SUBSURFACE_DEPTH)
+            return settings.defaultBlock();
+        if (y < surfaceY)
+            return settings.subsurfaceBlock();
+        if (y == surfaceY)
+            return surfaceY >= settings.seaLevel() ? settings.surfaceBlock() : settings.subsurfaceBlock();
+        if (y <= settings.seaLevel())
+            return settings.defaultFluid();
+        return null;
+    }
+
+    @Override
+    public CompletableFuture<ChunkAccess> fillFromNoise(Executor executor, Blender blender, RandomState randomState,
+                                                        StructureManager structureManager, ChunkAccess chunk) {
+        // Cheap enough to do right here on the worker that asked for it
+        if (isInsideArena(chunk.getPos())) {
+            fill(chunk);
+        }
+        return CompletableFuture.completedFuture(chunk);
+    }
+
+    private void fill(ChunkAccess chunk) {
+        ChunkPos pos = chunk.getPos();
+        int[] surface = new int[16 * 16];
+        int lowest = Integer.MAX_VALUE;
+        int highest = Integer.MIN_VALUE;
+        for (int lz = 0; lz < 16; lz++) {
+            for (int lx = 0; lx < 16; lx++) {
+                int y = surfaceY(pos.getMinBlockX() + lx, pos.getMinBlockZ() + lz);
+                surface[lz * 16 + lx] = y;
+                lowest = Math.min(lowest, y);
+                highest = Math.max(highest, y);
+            }
+        }
+        int top = Math.max(highest, settings.seaLevel());
+        // Sections entirely below this are nothing but the default block
+        int solidBelow = lowest - SUBSURFACE_DEPTH;
+
+        LevelChunkSection[] sections = chunk.getSections();
+        for (int index = 0; index < sections.length; index++) {
+            int bottom = SectionPos.sectionToBlockCoord(chunk.getSectionYFromSectionIndex(index));
+            if (bottom > top)
+                break;
+
+            LevelChunkSection section = sections[index];
+            if (bottom > settings.minY() && bottom + 15 < solidBelow) {
+                // One single-value palette instead of 4096 writes
+                sections[index] = new LevelChunkSection(new PalettedContainer<>(Block.BLOCK_STATE_REGISTRY,
+                        settings.defaultBlock(), PalettedContainer.Strategy.SECTION_STATES), section.getBiomes());
+                continue;
+            }
+
+            for (int lz = 0; lz < 16; lz++) {
+                for (int lx = 0; lx < 16; lx++) {
+                    int surfaceY = surface[lz * 16 + lx];
+                    int columnTop = Math.min(bottom + 15, Math.max(surfaceY, settings.seaLevel()));
+                    for (int y = Math.max(bottom, settings.minY()); y <= columnTop; y++) {
+                        BlockState state = stateAt(y, surfaceY);
+                        if (state != null) {
+                            section.setBlockState(lx, y & 15, lz, state, false);
+                        }
+                    }
+                }
+            }
+        }
+
+        Heightmap oceanFloor = chunk.getOrCreateHeightmapUnprimed(Heightmap.Types.OCEAN_FLOOR_WG);
+        Heightmap worldSurface = chunk.getOrCreateHeightmapUnprimed(Heightmap.Types.WORLD_SURFACE_WG);
+        for (int lz = 0; lz < 16; lz++) {
+            for (int lx = 0; lx < 16; lx++) {
+                int surfaceY = surface[lz * 16 + lx];
+                BlockState surfaceState = stateAt(surfaceY, surfaceY);
+                oceanFloor.update(lx, surfaceY, lz, surfaceState);
+                worldSurface.update(lx, surfaceY, lz, surfaceState);
+                if (surfaceY < settings.seaLevel()) {
+                    worldSurface.update(lx, settings.seaLevel(), lz, settings.defaultFluid());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void buildSurface(WorldGenRegion region, StructureManager structureManager, RandomState randomState,
+                             ChunkAccess chunk) {
+        // The surface is placed while filling
+    }
+
+    @Override
+    public void applyCarvers(WorldGenRegion region, long seed, RandomState randomState, BiomeManager biomeManager,
+                             StructureManager structureManager, ChunkAccess chunk, GenerationStep.Carving step) {
+        // No caves in the arena
+    }
+
+    @Override
+    public void createStructures(RegistryAccess registryAccess, ChunkGeneratorStructureState structureState,
+                                 StructureManager structureManager, ChunkAccess chunk,
+                                 StructureTemplateManager templateManager) {
+        // No structures either; the arena layout is ours to place
+    }
+
+    @Override
+    public void applyBiomeDecoration(WorldGenLevel level, ChunkAccess chunk, StructureManager structureManager) {
+        if (isInsideArena(chunk.getPos())) {
+            super.applyBiomeDecoration(level, chunk, structureManager);
+        }
+    }
+
+    @Override
+    public void spawnOriginalMobs(WorldGenRegion region) {
+        ChunkPos pos = region.getCenter();
+        if (!isInsideArena(pos))
+            return;
+
+        Holder<Biome> biome = region.getBiome(pos.getWorldPosition().atY(region.getMaxBuildHeight() - 1));
+        WorldgenRandom random = new WorldgenRandom(new LegacyRandomSource(RandomSupport.generateUniqueSeed()));
+        random.setDecorationSeed(region.getSeed(), pos.getMinBlockX(), pos.getMinBlockZ());
+        NaturalSpawner.spawnMobsForChunkGeneration(region, biome, pos, random);
+    }
+
+    @Override
+    public int getGenDepth() {
+        return settings.height();
+    }
+
+    @Override
+    public int getSeaLevel() {
+        return settings.seaLevel();
+    }
+
+    @Override
+    public int getMinY() {
+        return settings.minY();
+    }
+
+    @Override
+    public int getBaseHeight(int x, int z, Heightmap.Types type, LevelHeightAccessor level, RandomState randomState) {
+        if (!isInsideArena(x, z))
+            return level.getMinBuildHeight();
+        int surfaceY = surfaceY(x, z);
+        if (surfaceY < settings.seaLevel() && type.isOpaque().test(settings.defaultFluid()))
+            return settings.seaLevel() + 1;
+        return surfaceY + 1;
+    }
+
+    @Override
+    public NoiseColumn getBaseColumn(int x, int z, LevelHeightAccessor level, RandomState randomState) {
+        BlockState[] states = new BlockState[level.getHeight()];
+        Arrays.fill(states, Blocks.AIR.defaultBlockState());
+        if (isInsideArena(x, z)) {
+            int surfaceY = surfaceY(x, z);
+            for (int i = 0; i < states.length; i++) {
+                BlockState state = stateAt(level.getMinBuildHeight() + i, surfaceY);
+                if (state != null) {
+                    states[i] = state;
+                }
+            }
+        }
+        return new NoiseColumn(level.getMinBuildHeight(), states);
+    }
+
+    @Override
+    public void addDebugScreenInfo(List<String> info, RandomState randomState, BlockPos pos) {
+        info.add("Arena seed " + seed + ", radius " + settings.arenaRadius());
+    }
+
+    /**
+     * Value noise over lattices that cover the arena, one per octave, filled once from the seed.
+     * Positions outside the arena are clamped to its edge.
+     */
+    private static final class HeightField {
+        private final int radius;
+        private final double[] cellSizes = new double[OCTAVES];
+        private final int[] sizes = new int[OCTAVES];
+        private final float[][] lattices = new float[OCTAVES][];
+
+        private HeightField(long seed, int radius, double featureSize) {
+            this.radius = radius;
+            RandomSource random = RandomSource.create(seed);
+            for (int octave = 0; octave < OCTAVES; octave++) {
+                double cellSize = Math.max(Math.max(1.0, featureSize / (1 << octave)),
+                        2.0 * radius / (MAX_LATTICE_SIZE - 2));
+                int size = (int) Math.ceil(2 * radius / cellSize) + 2;
+                float[] lattice = new float[size * size];
+                for (int i = 0; i < lattice.length; i++) {
+                    lattice[i] = random.nextFloat() * 2 - 1;
+                }
+                cellSizes[octave] = cellSize;
+                sizes[octave] = size;
+                lattices[octave] = lattice;
+            }
+        }
+
+        // Between -1 and 1
+        private float sample(int x, int z) {
+            float total = 0;
+            float amplitude = 1;
+            float norm = 0;
+            for (int octave = 0; octave < OCTAVES; octave++) {
+                int size = sizes[octave];
+                double fx = Math.min(Math.max((x + radius) / cellSizes[octave], 0), size - 1.001);
+                double fz = Math.min(Math.max((z + radius) / cellSizes[octave], 0), size - 1.001);
+                int ix = (int) fx;
+                int iz = (int) fz;
+                float tx = smooth((float) (fx - ix));
+                float tz = smooth((float) (fz - iz));
+
+                float[] lattice = lattices[octave];
+                int i = iz * size + ix;
+                float north = lattice[i] + (lattice[i + 1] - lattice[i]) * tx;
+                float south = lattice[i + size] + (lattice[i + size + 1] - lattice[i + size]) * tx;
+                total += (north + (south - north) * tz) * amplitude;
+                norm += amplitude;
+                amplitude *= 0.5f;
+            }
+            return total / norm;
+        }
+
+        private static float smooth(float t) {
+            return t * t * (3 - 2 * t);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package net.playwright.extraction_dimensions;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs {@link MatchManager.Match#evaluate} for {@link Config#parallelBookkeeping} on a fork-join pool.
+ * <p>
+ * A frame's matches are cut into index ranges, which the pool threads and the calling thread claim
+ * one at a time, so a slow match only holds up its own range. Nothing is allocated per frame: the
+ * helper tasks are created with the pool and re-armed for every frame, and the caller waits for them
+ * by spinning instead of joining, since a blocking join allocates a wait node. The caller works
+ * through ranges until none are left, so it only spins while the last ranges finish.
+ * <p>
+ * Only use it from the server thread.
+ */
+class BookkeepingPool {
+
+    // Ranges per thread, small enough that the threads finish at about the same time
+    private static final int RANGES_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final Helper[] helpers;
+    private final AtomicInteger nextRange = new AtomicInteger();
+    // What the helpers allocated while MatchManager.trackAllocations was on
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    // Set before the helpers are started, which publishes them to the pool threads
+    private MatchManager.Match[] matches;
+    private int count;
+    private int rangeSize;
+    private int ranges;
+    // The first exception a match threw this frame
+    private volatile Throwable failure;
+
+    BookkeepingPool(int threads) {
+        pool = new ForkJoinPool(threads, Worker::new, null, false);
+        helpers = new Helper[threads];
+        for (int i = 0; i < threads; i++) {
+            helpers[i] = new Helper();
+        }
+    }
+
+    /**
+     * Evaluates the first {@code count} matches and returns once all of them are done. An exception
+     * from a match doesn't stop the others; the first one is rethrown at the end.
+     */
+    void evaluate(MatchManager.Match[] matches, int count) {
+        this.matches = matches;
+        this.count = count;
+        rangeSize = Math.max(1, count / ((helpers.length + 1) * RANGES_PER_THREAD));
+        ranges = (count + rangeSize - 1) / rangeSize;
+        nextRange.set(0);
+
+        int started = Math.min(helpers.length, ranges - 1);
+        for (int i = 0; i < started; i++) {
+            helpers[i].reinitialize();
+            pool.execute(helpers[i]);
+        }
+        runRanges();
+        // isDone is only set once a helper is out of compute, so it can be re-armed next frame
+        for (int i = 0; i < started; i++) {
+            while (!helpers[i].isDone()) {
+                Thread.onSpinWait();
+            }
+        }
+        this.matches = null;
+
+        Throwable thrown = failure;
+        if (thrown != null) {
+            failure = null;
+            if (thrown instanceof RuntimeException e)
+                throw e;
+            if (thrown instanceof Error e)
+                throw e;
+            throw new IllegalStateException(thrown);
+        }
+    }
+
+    private void runRanges() {
+        MatchManager.Match[] matches = this.matches;
+        int range;
+        while ((range = nextRange.getAndIncrement()) < ranges) {
+            int end = Math.min(count, (range + 1) * rangeSize);
+            for (int i = range * rangeSize; i < end; i++) {
+                try {
+                    matches[i].evaluate();
+                } catch (Throwable t) {
+                    if (failure == null) {
+                        failure = t;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return what the pool threads allocated evaluating matches since the last call, counted while
+     *         {@link MatchManager#trackAllocations} is on
+     */
+    long takeAllocatedBytes() {
+        return allocatedBytes.getAndSet(0);
+    }
+
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    private static class Worker extends ForkJoinWorkerThread {
+        private Worker(ForkJoinPool pool) {
+            super(pool);
+        }
+
+        @Override
+        protected void onStart() {
+            super.onStart();
+            // The pool index is only assigned once the thread runs
+            setName("Extraction-Bookkeeping-" + getPoolIndex());
+            // So the worker's first journal record doesn't allocate in the middle of a frame
+            MatchJournal.prepareThread();
+        }
+    }
+
+    private class Helper extends RecursiveAction {
+        @Override
+        protected void compute() {
+            if (!MatchManager.trackAllocations) {
+                runRanges();
+                return;
+            }
+            long before = MatchManager.threadAllocatedBytes();
+            runRanges();
+            allocatedBytes.addAndGet(MatchManager.threadAllocatedBytes() - before);
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package net.playwright.extraction_dimensions;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import it.unimi.dsi.fastutil.objects.Reference2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.server.level.TicketType;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.entity.item.ItemEntity;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.EntityJoinLevelEvent;
+import net.minecraftforge.event.entity.player.PlayerInteractEvent;
+import net.minecraftforge.event.level.BlockEvent;
+import net.minecraftforge.event.level.ChunkEvent;
+import net.minecraftforge.event.level.ExplosionEvent;
+import net.minecraftforge.event.level.LevelEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Decides which chunks a match level keeps in memory.
+ * <p>
+ * Only living players who are still taking part hold chunks. A player who has died, or who has extracted
+ * but is still in the level, stops holding chunks {@link Config#residencyReleaseDelayTicks} after that,
+ * the same way a spectator doesn't hold any (applied by {@code ChunkMapMixin}). Extraction zones get a
+ * small ticket of their own while a living player is within {@link Config#zoneTicketDistance} blocks,
+ * which is released the same delay after the last one has left. Chunks nobody holds any more are then
+ * unloaded by the chunk map as usual.
+ * <p>
+ * A match level that is not saved ({@link EphemeralLevels}) would lose whatever changed in a chunk once
+ * it unloads, and generate it afresh when it loads again. So in those levels every chunk where a block
+ * was broken, placed, blown up or opened, or where an item was dropped, gets a ticket of its own until
+ * the match ends. Chunks with extraction blocks are held by {@link ExtractionSitePlacer}.
+ * <p>
+ * Match levels hold chunks with a view distance of {@link Config#matchViewDistance}. If a match has more
+ * than {@link Config#maxChunksPerMatch} chunks loaded, its view distance is lowered one step per check
+ * until it's under the cap again, and raised back once it's well below.
+ * <p>
+ * Every chunk loaded in one of this mod's levels is also given an estimate of the heap it takes up, so
+ * the resident chunks and their estimated size can be reported per match.
+ */
+@Mod.EventBusSubscriber(modid = DimensionMod.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class ChunkResidency {
+
+    private static final TicketType<ChunkPos> ZONE_TICKET = TicketType.create("extraction_zone",
+            Comparator.comparingLong(ChunkPos::toLong));
+    private static final TicketType<ChunkPos> EDITED_TICKET = TicketType.create("extraction_edited",
+            Comparator.comparingLong(ChunkPos::toLong));
+    private static final int CHECK_INTERVAL_TICKS = 20;
+    // The cap never takes the view distance below this
+    private static final int MIN_VIEW_DISTANCE = 3;
+
+    // Rough heap cost of a loaded chunk besides its block data: holder, heightmaps, tick lists, futures
+    private static final int CHUNK_OVERHEAD_BYTES = 8 * 1024;
+    // Block and sky light, kept by the light engine for sections that aren't empty
+    private static final int LIGHT_BYTES_PER_SECTION = 2 * 2048;
+    private static final int SECTION_OVERHEAD_BYTES = 128;
+    private static final int BLOCK_ENTITY_BYTES = 512;
+
+    private static final Map<ResourceKey<Level>, ResidentChunks> chunks = new HashMap<>();
+    private static final Map<ResourceKey<Level>, MatchResidency> residencies = new HashMap<>();
+    // Players that currently hold no chunks, and the match level they hold none in
+    private static final Reference2ObjectOpenHashMap<ServerPlayer, ServerLevel> released =
+            new Reference2ObjectOpenHashMap<>();
+
+    /**
+     * The loaded chunks of one of this mod's levels and their estimated size.
+     */
+    private static class ResidentChunks {
+        private final Long2IntOpenHashMap bytes = new Long2IntOpenHashMap();
+        private long totalBytes = 0;
+    }
+
+    /**
+     * The residency state of one running match.
+     */
+    public static class MatchResidency {
+        private final ServerLevel level;
+        private final MatchManager.Match match;
+        private final ResidentChunks resident;
+        // Kept from when the match was first seen, so tickets are removed with the radius they were added with
+        private final int zoneTicketRadius;
+        // Chunk of an extraction zone -> server tick its ticket is held until
+        private final Long2LongOpenHashMap zoneTickets = new Long2LongOpenHashMap();
+        // Chunks of an unsaved level that changed during the match, held until it ends
+        private final LongOpenHashSet editedChunks = new LongOpenHashSet();
+        // Players that stopped taking part -> server tick they were first seen that way
+        private final Reference2LongOpenHashMap<ServerPlayer> leftSince = new Reference2LongOpenHashMap<>();
+        private int viewDistance;
+        private int releasedPlayers = 0;
+        private long lastSeenTick;
+
+        private MatchResidency(ServerLevel level, MatchManager.Match match, int viewDistance) {
+            this.level = level;
+            this.match = match;
+            this.resident = chunks.computeIfAbsent(level.dimension(), key -> new ResidentChunks());
+            this.zoneTicketRadius = Config.zoneTicketRadius;
+            this.viewDistance = viewDistance;
+        }
+
+        private void update(long tick, int targetViewDistance) {
+            lastSeenTick = tick;
+            updatePlayers(tick);
+            updateZoneTickets(tick);
+
+            // Moves one step per check, like the tick governor, since each step changes a ring of chunks
+            int cap = Config.maxChunksPerMatch;
+            int loaded = resident.bytes.size();
+            if (cap > 0 && loaded > cap && viewDistance > MIN_VIEW_DISTANCE) {
+                viewDistance--;
+            } else if ((cap == 0 || loaded < cap * 3 / 4) && viewDistance < targetViewDistance) {
+                viewDistance++;
+            }
+            viewDistance = Math.min(viewDistance, targetViewDistance);
+            // Only does something when it changed, and undoes a view distance change to the whole server
+            level.getChunkSource().setViewDistance(viewDistance);
+        }
+
+        private void updatePlayers(long tick) {
+            releasedPlayers = 0;
+            for (ServerPlayer player : level.players()) {
+                // Players who never joined, e.g. an operator looking around, are left alone
+                boolean left = player.isDeadOrDying()
+                        || (match.hasJoined(player.getUUID()) && !match.isTakingPart(player.getUUID()));
+                if (!left) {
+                    leftSince.removeLong(player);
+                    setReleased(player, false);
+                    continue;
+                }
+
+                long since = leftSince.computeIfAbsent(player, p -> tick);
+                if (tick - since >= Config.residencyReleaseDelayTicks) {
+                    setReleased(player, true);
+                    releasedPlayers++;
+                }
+            }
+            // Players that respawned or left the level; the chunk map has already dropped them
+            leftSince.keySet().removeIf(player -> {
+                if (!player.isRemoved() && player.level() == level)
+                    return false;
+                released.remove(player, level);
+                return true;
+            });
+        }
+
+        private void setReleased(ServerPlayer player, boolean release) {
+            boolean changed = release ? released.put(player, level) != level : released.remove(player, level);
+            if (changed) {
+                // The chunk map picks up the change the next time the player moves; make that now
+                level.getChunkSource().move(player);
+            }
+        }
+
+        private void updateZoneTickets(long tick) {
+            if (match.getState() == MatchManager.Match.MatchState.PLAYING) {
+                long heldUntil = tick + Config.residencyReleaseDelayTicks;
+                long distanceSq = (long) Config.zoneTicketDistance * Config.zoneTicketDistance;
+                match.getZones().forEach(point -> {
+                    if (!isLivingPlayerNear(BlockPos.getX(point), BlockPos.getZ(point), distanceSq))
+                        return;
+                    long chunk = ChunkPos.asLong(BlockPos.getX(point) >> 4, BlockPos.getZ(point) >> 4);
+                    if (zoneTickets.put(chunk, heldUntil) == zoneTickets.defaultReturnValue()) {
+                        ChunkPos pos = new ChunkPos(chunk);
+                        level.getChunkSource().addRegionTicket(ZONE_TICKET, pos, zoneTicketRadius, pos);
+                    }
+                });
+            }
+
+            // Zones that are gone or out of everyone's reach run out without being refreshed
+            for (ObjectIterator<Long2LongMap.Entry> iterator = zoneTickets.long2LongEntrySet().fastIterator();
+                    iterator.hasNext(); ) {
+                Long2LongMap.Entry entry = iterator.next();
+                if (entry.getLongValue() < tick) {
+                    ChunkPos pos = new ChunkPos(entry.getLongKey());
+                    level.getChunkSource().removeRegionTicket(ZONE_TICKET, pos, zoneTicketRadius, pos);
+                    iterator.remove();
+                }
+            }
+        }
+
+        private void holdEdited(long chunk) {
+            if (editedChunks.add(chunk)) {
+                ChunkPos pos = new ChunkPos(chunk);
+                level.getChunkSource().addRegionTicket(EDITED_TICKET, pos, 0, pos);
+            }
+        }
+
+        private boolean isLivingPlayerNear(int x, int z, long distanceSq) {
+            for (ServerPlayer player : level.players()) {
+                if (player.isDeadOrDying() || released.get(player) == level || !match.isTakingPart(player.getUUID()))
+                    continue;
+                double dx = player.getX() - x;
+                double dz = player.getZ() - z;
+                if (dx * dx + dz * dz <= distanceSq)
+                    return true;
+            }
+            return false;
+        }
+
+        // Gives back everything this match held, once it has ended
+        private void release(int serverViewDistance) {
+            if (level.getServer().getLevel(level.dimension()) != level) {
+                // The level is gone, and with it its tickets and players
+                released.values().removeIf(releasedIn -> releasedIn == level);
+                return;
+            }
+            for (Long2LongMap.Entry entry : zoneTickets.long2LongEntrySet()) {
+                ChunkPos pos = new ChunkPos(entry.getLongKey());
+                level.getChunkSource().removeRegionTicket(ZONE_TICKET, pos, zoneTicketRadius, pos);
+            }
+            zoneTickets.clear();
+            for (LongIterator iterator = editedChunks.iterator(); iterator.hasNext(); ) {
+                ChunkPos pos = new ChunkPos(iterator.nextLong());
+                level.getChunkSource().removeRegionTicket(EDITED_TICKET, pos, 0, pos);
+            }
+            editedChunks.clear();
+            for (ServerPlayer player : leftSince.keySet()) {
+                if (!player.isRemoved() && player.level() == level) {
+                    setReleased(player, false);
+                } else {
+                    released.remove(player, level);
+                }
+            }
+            leftSince.clear();
+            level.getChunkSource().setViewDistance(serverViewDistance);
+        }
+
+        public MatchManager.Match getMatch() {
+            return match;
+        }
+
+        public int getResidentChunks() {
+            return resident.bytes.size();
+        }
+
+        public long getEstimatedBytes() {
+            return resident.totalBytes;
+        }
+
+        public int getViewDistance() {
+            return viewDistance;
+        }
+
+        public int getZoneTickets() {
+            return zoneTickets.size();
+        }
+
+        public int getEditedChunks() {
+            return editedChunks.size();
+        }
+
+        public int getReleasedPlayers() {
+            return releasedPlayers;
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END)
+            return;
+
+        MinecraftServer server = event.getServer();
+        if (server == null || server.getTickCount() % CHECK_INTERVAL_TICKS != 0)
+            return;
+
+        long tick = server.getTickCount();
+        int serverViewDistance = server.getPlayerList().getViewDistance();
+        int target = Config.matchViewDistance > 0 ? Config.matchViewDistance : serverViewDistance;
+        for (MatchManager.Match match : MatchManager.getMatches()) {
+            ServerLevel level = server.getLevel(match.getDimension());
+            if (level == null)
+                continue;
+            getResidency(level, match, target).update(tick, target);
+        }
+
+        Iterator<MatchResidency> iterator = residencies.values().iterator();
+        while (iterator.hasNext()) {
+            MatchResidency residency = iterator.next();
+            if (residency.lastSeenTick != tick) {
+                residency.release(serverViewDistance);
+                iterator.remove();
+            }
+        }
+    }
+
+    private static MatchResidency getResidency(ServerLevel level, MatchManager.Match match, int viewDistance) {
+        MatchResidency residency = residencies.get(match.getDimension());
+        if (residency == null || residency.level != level || residency.match != match) {
+            residency = new MatchResidency(level, match, viewDistance);
+            residencies.put(match.getDimension(), residency);
+        }
+        return residency;
+    }
+
+    // Keeps the chunk at the block position loaded for the rest of the match, if its level isn't saved
+    private static void markEdited(Level eventLevel, int blockX, int blockZ) {
+        if (!(eventLevel instanceof ServerLevel level) || !EphemeralLevels.isEphemeral(level))
+            return;
+        MatchManager.Match match = MatchManager.getMatch(level.dimension());
+        if (match == null || match.isEnded())
+            return;
+
+        int serverViewDistance = level.getServer().getPlayerList().getViewDistance();
+        int viewDistance = Config.matchViewDistance > 0 ? Config.matchViewDistance : serverViewDistance;
+        getResidency(level, match, viewDistance).holdEdited(ChunkPos.asLong(blockX >> 4, blockZ >> 4));
+    }
+
+    @SubscribeEvent
+    public static void onBlockBreak(BlockEvent.BreakEvent event) {
+        if (event.getLevel() instanceof Level level) {
+            markEdited(level, event.getPos().getX(), event.getPos().getZ());
+        }
+    }
+
+    @SubscribeEvent
+    public static void onBlockPlace(BlockEvent.EntityPlaceEvent event) {
+        if (event.getLevel() instanceof Level level) {
+            markEdited(level, event.getPos().getX(), event.getPos().getZ());
+        }
+    }
+
+    @SubscribeEvent
+    public static void onExplosion(ExplosionEvent.Detonate event) {
+        long last = Long.MIN_VALUE;
+        for (BlockPos pos : event.getAffectedBlocks()) {
+            // Neighbouring blocks are mostly in the same chunk
+            long chunk = ChunkPos.asLong(pos.getX() >> 4, pos.getZ() >> 4);
+            if (chunk != last) {
+                markEdited(event.getLevel(), pos.getX(), pos.getZ());
+                last = chunk;
+            }
+        }
+    }
+
+    // Containers may be emptied without a block changing
+    @SubscribeEvent
+    public static void onRightClickBlock(PlayerInteractEvent.RightClickBlock event) {
+        if (event.getLevel().getBlockEntity(event.getPos()) != null) {
+            markEdited(event.getLevel(), event.getPos().getX(), event.getPos().getZ());
+        }
+    }
+
+    @SubscribeEvent
+    public static void onEntityJoin(EntityJoinLevelEvent event) {
+        // Items loaded with their chunk aren't a change
+        if (event.getEntity() instanceof ItemEntity item && !event.loadedFromDisk()) {
+            markEdited(event.getLevel(), item.getBlockX(), item.getBlockZ());
+        }
+    }
+
+    /**
+     * Called by {@code ChunkMapMixin} whenever the chunk map of {@code level} checks whether a player
+     * holds chunks.
+     */
+    public static boolean isReleased(ServerLevel level, ServerPlayer player) {
+        return !released.isEmpty() && released.get(player) == level;
+    }
+
+    @SubscribeEvent
+    public static void onChunkLoad(ChunkEvent.Load event) {
+        if (!(event.getLevel() instanceof ServerLevel level) || !(event.getChunk() instanceof LevelChunk chunk)
+                || !level.dimension().location().getNamespace().equals(DimensionMod.MODID))
+            return;
+
+        ResidentChunks resident = chunks.computeIfAbsent(level.dimension(), key -> new ResidentChunks());
+        int bytes = estimateBytes(chunk);
+        resident.totalBytes += bytes - resident.bytes.put(chunk.getPos().toLong(), bytes);
+    }
+
+    @SubscribeEvent
+    public static void onChunkUnload(ChunkEvent.Unload event) {
+        if (!(event.getLevel() instanceof ServerLevel level))
+            return;
+
+        ResidentChunks resident = chunks.get(level.dimension());
+        if (resident != null) {
+            resident.totalBytes -= resident.bytes.remove(event.getChunk().getPos().toLong());
+        }
+    }
+
+    /**
+     * A rough estimate of the heap a loaded chunk takes up: its block and biome data at their current
+     * palette size, light for sections that have blocks, and a fixed amount for everything around them.
+     * Entities are not included.
+     */
+    static int estimateBytes(LevelChunk chunk) {
+        int bytes = CHUNK_OVERHEAD_BYTES + chunk.getBlockEntities().size() * BLOCK_ENTITY_BYTES;
+        for (LevelChunkSection section : chunk.getSections()) {
+            bytes += SECTION_OVERHEAD_BYTES + section.getBiomes().getSerializedSize();
+            if (!section.hasOnlyAir()) {
+                bytes += section.getStates().getSerializedSize() + LIGHT_BYTES_PER_SECTION;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the estimated heap taken up by the loaded chunks of a level, 0 if it's not one of ours
+     */
+    public static long getEstimatedBytes(ResourceKey<Level> dimension) {
+        ResidentChunks resident = chunks.get(dimension);
+        return resident != null ? resident.totalBytes : 0;
+    }
+
+    public static int getResidentChunks(ResourceKey<Level> dimension) {
+        ResidentChunks resident = chunks.get(dimension);
+        return resident != null ? resident.bytes.size() : 0;
+    }
+
+    public static Collection<MatchResidency> getResidencies() {
+        return residencies.values();
+    }
+
+    @SubscribeEvent
+    public static void onLevelUnload(LevelEvent.Unload event) {
+        if (event.getLevel() instanceof ServerLevel level) {
+            chunks.remove(level.dimension());
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        chunks.clear();
+        residencies.clear();
+        released.clear();
+    }
+}
@@ -7,6 +7,7 @@ import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.event.config.ModConfigEvent;
 import net.minecraftforge.registries.ForgeRegistries;
+import net.playwright.extraction_dimensions.coordinator.Coordinator;
 
 import java.util.Collections;
 import java.util.List;
@@ -28,17 +29,191 @@ public class Config {
     // a list of strings that are treated as resource locations for items
     private static final ForgeConfigSpec.ConfigValue<List<? extends String>> ITEM_STRINGS = BUILDER.comment("A list of items to log on common setup.").defineListAllowEmpty("items", List.of("minecraft:iron_ingot"), Config::validateItemName);
 
+    private static final ForgeConfigSpec.IntValue MATCH_POOL_SIZE = BUILDER.comment("How many match dimensions to keep created and ready ahead of /extraction start").defineInRange("matchPoolSize", 2, 0, 64);
+
+    private static final ForgeConfigSpec.IntValue MATCH_POOL_REFILL_INTERVAL = BUILDER.comment("Minimum number of ticks between two background pool top-ups").defineInRange("matchPoolRefillIntervalTicks", 100, 1, Integer.MAX_VALUE);
+
+    private static final ForgeConfigSpec.DoubleValue MATCH_POOL_IDLE_MSPT = BUILDER.comment("The pool is only topped up while the average tick time (ms) is below this value").defineInRange("matchPoolIdleMspt", 25.0, 0.0, 1000.0);
+
+    private static final ForgeConfigSpec.IntValue SPAWN_PREGEN_RADIUS = BUILDER.comment("Radius in chunks around each spawn point that is generated during the match warmup").defineInRange("spawnPregenRadius", 2, 0, 8);
+
+    private static final ForgeConfigSpec.IntValue MAX_WARMUP_EXTENSION = BUILDER.comment("How many seconds the warmup may be extended while spawn chunks are still generating").defineInRange("maxWarmupExtensionSeconds", 30, 0, 600);
+
+    private static final ForgeConfigSpec.IntValue SPAWN_MIN_SPACING = BUILDER.comment("Minimum distance in blocks between two player spawn points").defineInRange("spawnMinSpacing", 32, 0, 512);
+
+    private static final ForgeConfigSpec.IntValue SPAWN_EXTRACTION_DISTANCE = BUILDER.comment("Minimum distance in blocks between a spawn point and an extraction point").defineInRange("spawnExtractionDistance", 64, 0, 1024);
+
+    private static final ForgeConfigSpec.BooleanValue EPHEMERAL_MATCH_LEVELS = BUILDER.comment("Never save match dimensions to disk; their chunks and entities only live in memory").define("ephemeralMatchLevels", true);
+
+    private static final ForgeConfigSpec.IntValue TELEPORT_SPREAD_TICKS = BUILDER.comment("Ticks over which the players of one match are teleported in when it starts").defineInRange("teleportSpreadTicks", 40, 0, 1200);
+
+    private static final ForgeConfigSpec.IntValue TELEPORT_GRACE_TICKS = BUILDER.comment("Extra ticks a match-start teleport may wait for its chunks or the per-tick cap before it is forced").defineInRange("teleportGraceTicks", 100, 0, 1200);
+
+    private static final ForgeConfigSpec.IntValue MAX_TELEPORTS_PER_TICK = BUILDER.comment("Server-wide limit on match-start teleports per tick, shared by all matches").defineInRange("maxTeleportsPerTick", 4, 1, 1000);
+
+    private static final ForgeConfigSpec.IntValue MATCH_WARMUP_SECONDS = BUILDER.comment("Seconds between a match being found and its players being teleported in").defineInRange("matchWarmupSeconds", 15, 1, 600);
+
+    private static final ForgeConfigSpec.IntValue MATCH_DURATION_SECONDS = BUILDER.comment("How long a match lasts once it has started, in seconds").defineInRange("matchDurationSeconds", 30 * 60, 10, 24 * 60 * 60);
+
+    private static final ForgeConfigSpec.IntValue EXTRACTION_SECONDS = BUILDER.comment("How long a player has to survive after starting an extraction").defineInRange("extractionSeconds", 15, 1, 600);
+
+    private static final ForgeConfigSpec.IntValue EXTRACTION_ZONE_RADIUS = BUILDER.comment("How far in blocks a player may move from the extraction point while extracting").defineInRange("extractionZoneRadius", 6, 1, 64);
+
+    private static final ForgeConfigSpec.IntValue EXTRACTION_SITE_COUNT = BUILDER.comment("How many extraction blocks are placed in each match dimension when the match is created").defineInRange("extractionSiteCount", 3, 0, 64);
+
+    private static final ForgeConfigSpec.IntValue EXTRACTION_SITE_SPACING = BUILDER.comment("Minimum distance in blocks between two placed extraction blocks").defineInRange("extractionSiteSpacing", 128, 32, 1024);
+
+    private static final ForgeConfigSpec.IntValue EXTRACTION_PLACEMENTS_PER_TICK = BUILDER.comment("Most extraction blocks placed per tick and match while their chunks finish loading").defineInRange("extractionPlacementsPerTick", 2, 1, 64);
+
+    private static final ForgeConfigSpec.IntValue QUEUE_MIN_PLAYERS = BUILDER.comment("Fewest queued players a match is formed with").defineInRange("queueMinPlayers", 2, 1, 64);
+
+    private static final ForgeConfigSpec.IntValue QUEUE_MAX_PLAYERS = BUILDER.comment("Most players a match formed from the queue can hold").defineInRange("queueMaxPlayers", 8, 1, 64);
+
+    private static final ForgeConfigSpec.IntValue QUEUE_FORMATION_INTERVAL = BUILDER.comment("Ticks between two passes over the queue that form matches").defineInRange("queueFormationIntervalTicks", 40, 1, 1200);
+
+    private static final ForgeConfigSpec.DoubleValue MAX_DIMENSION_CREATIONS_PER_SECOND = BUILDER.comment("Sustained limit on how many match dimensions may be created per second, for the pool and for matches alike").defineInRange("maxDimensionCreationsPerSecond", 1.0, 0.05, 20.0);
+
+    private static final ForgeConfigSpec.BooleanValue GOVERNOR_ENABLED = BUILDER.comment("Throttle how match dimensions tick when they are idle or the server is overloaded").define("governorEnabled", true);
+
+    private static final ForgeConfigSpec.DoubleValue GOVERNOR_MSPT_THRESHOLD = BUILDER.comment("Average tick time (ms) above which match dimensions start giving up random ticks, then mob AI, then block entity ticks").defineInRange("governorMsptThreshold", 40.0, 1.0, 1000.0);
+
+    private static final ForgeConfigSpec.DoubleValue GOVERNOR_STEP_MSPT = BUILDER.comment("How much further (ms) the average tick time has to rise for each further degradation step").defineInRange("governorStepMspt", 5.0, 0.1, 1000.0);
+
+    private static final ForgeConfigSpec.IntValue GOVERNOR_IDLE_TICK_INTERVAL = BUILDER.comment("Match dimensions in warmup or without players only run a full tick once every this many ticks").defineInRange("governorIdleTickInterval", 10, 1, 200);
+
+    private static final ForgeConfigSpec.BooleanValue PARALLEL_BOOKKEEPING = BUILDER.comment("Evaluate the timers of all running matches in parallel each tick; their effects are still applied on the server thread, in match order").define("parallelBookkeeping", false);
+
+    private static final ForgeConfigSpec.IntValue BOOKKEEPING_THREADS = BUILDER.comment("Threads used for parallel match bookkeeping, 0 for one less than the number of processors. Takes effect on the next server start").defineInRange("bookkeepingThreads", 0, 0, 64);
+
+    private static final ForgeConfigSpec.BooleanValue USE_TERRAIN_SNAPSHOTS = BUILDER.comment("Fill new match dimensions from the terrain snapshot library (/extraction snapshot create) instead of generating their play area").define("useTerrainSnapshots", false);
+
+    private static final ForgeConfigSpec.IntValue SNAPSHOT_RADIUS_CHUNKS = BUILDER.comment("Radius in chunks around 0,0 that a new terrain snapshot covers").defineInRange("snapshotRadiusChunks", 34, 1, 128);
+
+    private static final ForgeConfigSpec.ConfigValue<String> MATCH_TEMPLATE = BUILDER.comment("Dimension (from a data pack's dimension folder) whose type and generator every match dimension copies, e.g. extraction_dimensions:arena_world for the lightweight arena generator").define("matchTemplate", "extraction_dimensions:iron_world", Config::validateResourceLocation);
+
+    private static final ForgeConfigSpec.BooleanValue JOURNAL_ENABLED = BUILDER.comment("Keep a journal of running matches in the world folder and pick them back up after a restart or crash").define("journalEnabled", true);
+
+    private static final ForgeConfigSpec.IntValue JOURNAL_SYNC_INTERVAL = BUILDER.comment("Milliseconds the journal writer waits after forcing a batch to disk, so more records go into the next batch").defineInRange("journalSyncIntervalMillis", 50, 0, 5000);
+
+    private static final ForgeConfigSpec.IntValue JOURNAL_COMPACTION_RECORDS = BUILDER.comment("Records appended to the journal before it is rewritten with only the running matches").defineInRange("journalCompactionRecords", 50_000, 100, Integer.MAX_VALUE);
+
+    private static final ForgeConfigSpec.IntValue STASH_MAX_HAULS = BUILDER.comment("Most extractions kept in a player's loot stash; the oldest are dropped first").defineInRange("stashMaxHauls", 100, 1, 10_000);
+
+    private static final ForgeConfigSpec.IntValue STASH_CACHE_SIZE = BUILDER.comment("How many players' loot stashes are kept in memory").defineInRange("stashCacheSize", 256, 1, 100_000);
+
+    private static final ForgeConfigSpec.IntValue STASH_FLUSH_DELAY = BUILDER.comment("Milliseconds a changed loot stash may wait before it is written, so changes are written together").defineInRange("stashFlushDelayMillis", 1000, 0, 60_000);
+
+    private static final ForgeConfigSpec.IntValue MATCH_VIEW_DISTANCE = BUILDER.comment("View distance (in chunks) players hold chunks loaded with in match dimensions, 0 for the server's view distance").defineInRange("matchViewDistance", 8, 0, 32);
+
+    private static final ForgeConfigSpec.IntValue MAX_CHUNKS_PER_MATCH = BUILDER.comment("Loaded chunks a match dimension may have before its view distance is lowered, 0 for no cap").defineInRange("maxChunksPerMatch", 2000, 0, 100_000);
+
+    private static final ForgeConfigSpec.IntValue RESIDENCY_RELEASE_DELAY = BUILDER.comment("Ticks before a dead or extracted player, or an extraction zone nobody is near, stops keeping chunks loaded").defineInRange("residencyReleaseDelayTicks", 100, 0, 6000);
+
+    private static final ForgeConfigSpec.IntValue ZONE_TICKET_DISTANCE = BUILDER.comment("Distance (in blocks) within which a living player keeps the chunks around an extraction zone loaded").defineInRange("zoneTicketDistance", 64, 0, 1024);
+
+    private static final ForgeConfigSpec.IntValue ZONE_TICKET_RADIUS = BUILDER.comment("Radius (in chunks) kept loaded around an extraction zone with a player nearby").defineInRange("zoneTicketRadius", 1, 0, 8);
+
+    private static final ForgeConfigSpec.BooleanValue RECORDER_ENABLED = BUILDER.comment("Record positions, deaths, extractions and phase changes of every match to a file in the world folder, see /extraction recording").define("recorderEnabled", true);
+
+    private static final ForgeConfigSpec.IntValue RECORDER_SAMPLE_INTERVAL = BUILDER.comment("Ticks between recorded player positions, 0 to record no positions").defineInRange("recorderSampleIntervalTicks", 20, 0, 1200);
+
+    private static final ForgeConfigSpec.IntValue RECORDER_BUFFER_RECORDS = BUILDER.comment("Records each match can buffer off-heap before they are written; rounded up to a power of two. Records are dropped while the buffer is full").defineInRange("recorderBufferRecords", 16384, 64, 1 << 22);
+
+    private static final ForgeConfigSpec.ConfigValue<String> COORDINATOR_MODE = BUILDER.comment("standalone to run matches on this server, lobby to queue players and hand their matches to match hosts, or host to run matches a lobby assigns. A lobby should set matchPoolSize to 0").define("coordinatorMode", "standalone", Config::validateCoordinatorMode);
+
+    private static final ForgeConfigSpec.ConfigValue<String> COORDINATOR_ADDRESS = BUILDER.comment("Where the lobby listens for match hosts, as host:port or unix:/path/to/socket").define("coordinatorAddress", "127.0.0.1:25590");
+
+    private static final ForgeConfigSpec.ConfigValue<String> COORDINATOR_SECRET = BUILDER.comment("Shared secret a match host proves it knows when it connects to the lobby; set the same value on the lobby and every host. Left empty, anyone who can reach coordinatorAddress can act as a match host, so only then keep it on loopback, a Unix socket or a firewalled network").define("coordinatorSecret", "");
+
+    private static final ForgeConfigSpec.ConfigValue<String> HOST_NAME = BUILDER.comment("Name a match host reports to the lobby, e.g. its server name behind the proxy; empty for host-<port>").define("hostName", "");
+
+    private static final ForgeConfigSpec.ConfigValue<String> HOST_ADDRESS = BUILDER.comment("Address players connect to this match host on, shown to them by the message player transfer").define("hostAddress", "");
+
+    private static final ForgeConfigSpec.ConfigValue<String> LOBBY_SERVER_NAME = BUILDER.comment("Server name of the lobby behind the proxy, where the proxy player transfer sends players back to").define("lobbyServerName", "lobby");
+
+    private static final ForgeConfigSpec.ConfigValue<String> PLAYER_TRANSFER = BUILDER.comment("How players are moved between the lobby and match hosts: message to tell them where to connect, or proxy to ask a BungeeCord-compatible proxy to move them").define("playerTransfer", "message", Config::validatePlayerTransfer);
+
+    private static final ForgeConfigSpec.IntValue HEARTBEAT_INTERVAL = BUILDER.comment("Milliseconds between two heartbeats a match host sends the lobby").defineInRange("heartbeatIntervalMillis", 1000, 100, 60_000);
+
+    private static final ForgeConfigSpec.IntValue HOST_TIMEOUT = BUILDER.comment("Milliseconds without a heartbeat after which the lobby drops a match host, and an assignment without an answer is put back in the queue").defineInRange("hostTimeoutMillis", 5000, 500, 600_000);
+
     static final ForgeConfigSpec SPEC = BUILDER.build();
 
     public static boolean logDirtBlock;
     public static int magicNumber;
     public static String magicNumberIntroduction;
     public static Set<Item> items;
+    public static int matchPoolSize;
+    public static int matchPoolRefillIntervalTicks;
+    public static double matchPoolIdleMspt;
+    public static int spawnPregenRadius;
+    public static int maxWarmupExtensionSeconds;
+    public static int spawnMinSpacing;
+    public static int spawnExtractionDistance;
+    public static boolean ephemeralMatchLevels;
+    public static int teleportSpreadTicks;
+    public static int teleportGraceTicks;
+    public static int maxTeleportsPerTick;
+    public static int matchWarmupSeconds;
+    public static int matchDurationSeconds;
+    public static int extractionSeconds;
+    public static int extractionZoneRadius;
+    public static int extractionSiteCount;
+    public static int extractionSiteSpacing;
+    public static int extractionPlacementsPerTick;
+    public static int queueMinPlayers;
+    public static int queueMaxPlayers;
+    public static int queueFormationIntervalTicks;
+    public static double maxDimensionCreationsPerSecond;
+    public static boolean governorEnabled;
+    public static double governorMsptThreshold;
+    public static double governorStepMspt;
+    public static int governorIdleTickInterval;
+    public static boolean parallelBookkeeping;
+    public static int bookkeepingThreads;
+    public static boolean useTerrainSnapshots;
+    public static int snapshotRadiusChunks;
+    public static ResourceLocation matchTemplate;
+    public static boolean journalEnabled;
+    public static int journalSyncIntervalMillis;
+    public static int journalCompactionRecords;
+    public static int stashMaxHauls;
+    public static int stashCacheSize;
+    public static int stashFlushDelayMillis;
+    public static int matchViewDistance;
+    public static int maxChunksPerMatch;
+    public static int residencyReleaseDelayTicks;
+    public static int zoneTicketDistance;
+    public static int zoneTicketRadius;
+    public static boolean recorderEnabled;
+    public static int recorderSampleIntervalTicks;
+    public static int recorderBufferRecords;
+    public static Coordinator.Mode coordinatorMode;
+    public static String coordinatorAddress;
+    public static String coordinatorSecret;
+    public static String hostName;
+    public static String hostAddress;
+    public static String lobbyServerName;
+    public static String playerTransfer;
+    public static int heartbeatIntervalMillis;
+    public static int hostTimeoutMillis;
 
     private static boolean validateItemName(final Object obj) {
         return obj instanceof final String itemName && ForgeRegistries.ITEMS.containsKey(new ResourceLocation(itemName));
     }
 
+    private static boolean validateResourceLocation(final Object obj) {
+        return obj instanceof final String location && ResourceLocation.isValidResourceLocation(location);
+    }
+
+    private static boolean validateCoordinatorMode(final Object obj) {
+        return obj instanceof final String mode && Coordinator.Mode.parse(mode) != null;
+    }
+
+    private static boolean validatePlayerTransfer(final Object obj) {
+        return obj instanceof final String transfer && (transfer.equals("message") || transfer.equals("proxy"));
+    }
+
     @SubscribeEvent
     static void onLoad(final ModConfigEvent event) {
         logDirtBlock = LOG_DIRT_BLOCK.get();
@@ -47,5 +222,60 @@ public class Config {
 
         // convert the list of strings into a set of items
         items = ITEM_STRINGS.get().stream().map(itemName -> ForgeRegistries.ITEMS.getValue(new ResourceLocation(itemName))).collect(Collectors.toSet());
+
+        matchPoolSize = MATCH_POOL_SIZE.get();
+        matchPoolRefillIntervalTicks = MATCH_POOL_REFILL_INTERVAL.get();
+        matchPoolIdleMspt = MATCH_POOL_IDLE_MSPT.get();
+        spawnPregenRadius = SPAWN_PREGEN_RADIUS.get();
+        maxWarmupExtensionSeconds = MAX_WARMUP_EXTENSION.get();
+        spawnMinSpacing = SPAWN_MIN_SPACING.get();
+        spawnExtractionDistance = SPAWN_EXTRACTION_DISTANCE.get();
+        ephemeralMatchLevels = EPHEMERAL_MATCH_LEVELS.get();
+        teleportSpreadTicks = TELEPORT_SPREAD_TICKS.get();
+        teleportGraceTicks = TELEPORT_GRACE_TICKS.get();
+        maxTeleportsPerTick = MAX_TELEPORTS_PER_TICK.get();
+        matchWarmupSeconds = MATCH_WARMUP_SECONDS.get();
+        matchDurationSeconds = MATCH_DURATION_SECONDS.get();
+        extractionSeconds = EXTRACTION_SECONDS.get();
+        extractionZoneRadius = EXTRACTION_ZONE_RADIUS.get();
+        extractionSiteCount = EXTRACTION_SITE_COUNT.get();
+        extractionSiteSpacing = EXTRACTION_SITE_SPACING.get();
+        extractionPlacementsPerTick = EXTRACTION_PLACEMENTS_PER_TICK.get();
+        queueMinPlayers = QUEUE_MIN_PLAYERS.get();
+        queueMaxPlayers = Math.max(queueMinPlayers, QUEUE_MAX_PLAYERS.get());
+        queueFormationIntervalTicks = QUEUE_FORMATION_INTERVAL.get();
+        maxDimensionCreationsPerSecond = MAX_DIMENSION_CREATIONS_PER_SECOND.get();
+        governorEnabled = GOVERNOR_ENABLED.get();
+        governorMsptThreshold = GOVERNOR_MSPT_THRESHOLD.get();
+        governorStepMspt = GOVERNOR_STEP_MSPT.get();
+        governorIdleTickInterval = GOVERNOR_IDLE_TICK_INTERVAL.get();
+        parallelBookkeeping = PARALLEL_BOOKKEEPING.get();
+        bookkeepingThreads = BOOKKEEPING_THREADS.get();
+        useTerrainSnapshots = USE_TERRAIN_SNAPSHOTS.get();
+        snapshotRadiusChunks = SNAPSHOT_RADIUS_CHUNKS.get();
+        matchTemplate = new ResourceLocation(MATCH_TEMPLATE.get());
+        journalEnabled = JOURNAL_ENABLED.get();
+        journalSyncIntervalMillis = JOURNAL_SYNC_INTERVAL.get();
+        journalCompactionRecords = JOURNAL_COMPACTION_RECORDS.get();
+        stashMaxHauls = STASH_MAX_HAULS.get();
+        stashCacheSize = STASH_CACHE_SIZE.get();
+        stashFlushDelayMillis = STASH_FLUSH_DELAY.get();
+        matchViewDistance = MATCH_VIEW_DISTANCE.get();
+        maxChunksPerMatch = MAX_CHUNKS_PER_MATCH.get();
+        residencyReleaseDelayTicks = RESIDENCY_RELEASE_DELAY.get();
+        zoneTicketDistance = ZONE_TICKET_DISTANCE.get();
+        zoneTicketRadius = ZONE_TICKET_RADIUS.get();
+        recorderEnabled = RECORDER_ENABLED.get();
+        recorderSampleIntervalTicks = RECORDER_SAMPLE_INTERVAL.get();
+        recorderBufferRecords = RECORDER_BUFFER_RECORDS.get();
+        coordinatorMode = Coordinator.Mode.parse(COORDINATOR_MODE.get());
+        coordinatorAddress = COORDINATOR_ADDRESS.get();
+        coordinatorSecret = COORDINATOR_SECRET.get();
+        hostName = HOST_NAME.get();
+        hostAddress = HOST_ADDRESS.get();
+        lobbyServerName = LOBBY_SERVER_NAME.get();
+        playerTransfer = PLAYER_TRANSFER.get();
+        heartbeatIntervalMillis = HEARTBEAT_INTERVAL.get();
+        hostTimeoutMillis = HOST_TIMEOUT.get();
     }
 }
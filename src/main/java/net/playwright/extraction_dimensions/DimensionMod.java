@@ -1,6 +1,7 @@
 package net.playwright.extraction_dimensions;
 
 import com.mojang.logging.LogUtils;
+import com.mojang.serialization.Codec;
 import net.minecraft.client.Minecraft;
 import net.minecraft.commands.Commands;
 import net.minecraft.core.registries.Registries;
@@ -12,6 +13,7 @@ import net.minecraft.world.item.Item;
 import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.state.BlockBehaviour;
+import net.minecraft.world.level.chunk.ChunkGenerator;
 import net.minecraft.world.level.material.MapColor;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.common.MinecraftForge;
@@ -50,6 +52,14 @@ public class DimensionMod {
     public static final DeferredRegister<CreativeModeTab> CREATIVE_MODE_TABS = DeferredRegister
             .create(Registries.CREATIVE_MODE_TAB, MODID);
 
+    // Chunk generator types that dimension JSON files can refer to
+    public static final DeferredRegister<Codec<? extends ChunkGenerator>> CHUNK_GENERATORS = DeferredRegister
+            .create(Registries.CHUNK_GENERATOR, MODID);
+
+    // "type": "extraction_dimensions:arena" in a dimension's generator
+    public static final RegistryObject<Codec<ArenaChunkGenerator>> ARENA_GENERATOR = CHUNK_GENERATORS.register("arena",
+            () -> ArenaChunkGenerator.CODEC);
+
     // Creates a new Block with the id "extraction_dimensions:example_block",
     // combining the namespace and path
     public static final RegistryObject<Block> EXAMPLE_BLOCK = BLOCKS.register("example_block",
@@ -95,6 +105,7 @@ public class DimensionMod {
         ITEMS.register(modEventBus);
         // Register the Deferred Register to the mod event bus so tabs get registered
         CREATIVE_MODE_TABS.register(modEventBus);
+        CHUNK_GENERATORS.register(modEventBus);
 
         // Register ourselves for server and other game events we are interested in
         MinecraftForge.EVENT_BUS.register(this);
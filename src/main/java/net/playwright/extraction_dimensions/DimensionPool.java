@@ -0,0 +1,153 @@
+package net.playwright.extraction_dimensions;
+
+import commoble.infiniverse.api.InfiniverseAPI;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Keeps a small pool of freshly seeded match dimensions so that starting a match does not have to
+ * build a level (and run the generator codec round trip) inside the command that starts it.
+ * <p>
+ * The pool is topped up one level at a time from the server tick, and only while the server has
+ * tick time to spare. All level creations, pooled or not, share a rate limit
+ * ({@link Config#maxDimensionCreationsPerSecond}). Everything here runs on the server thread.
+ */
+@Mod.EventBusSubscriber(modid = DimensionMod.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class DimensionPool {
+
+    private static final Deque<ServerLevel> readyLevels = new ArrayDeque<>();
+    private static int ticksSinceRefill = 0;
+    // Token bucket for level creations; on-demand creations may take it negative, which holds back
+    // the next ones until it has recovered
+    private static double creationTokens = 1.0;
+    // The next pooled level, waiting for its terrain snapshot to be copied in
+    private static ResourceKey<Level> preparingKey;
+    private static CompletableFuture<Void> preparing;
+    private static long hits = 0;
+    private static long misses = 0;
+
+    /**
+     * Takes a ready level from the pool, or creates one on the spot if the pool is empty.
+     *
+     * @return the level, or null if it could not be created
+     */
+    public static ServerLevel acquire(MinecraftServer server) {
+        ServerLevel level;
+        while ((level = readyLevels.pollFirst()) != null) {
+            // A pooled level may have been removed behind our back (e.g. by another mod)
+            if (server.getLevel(level.dimension()) == level) {
+                hits++;
+                return level;
+            }
+        }
+
+        misses++;
+        // Nothing ready. Copying a snapshot in would block this tick for longer than generating the
+        // area around the spawns does, so this level generates all of its terrain.
+        creationTokens -= 1.0;
+        return createLevel(server, MatchManager.newMatchKey());
+    }
+
+    /**
+     * @return true if {@link #acquire} can be served from the pool or without going over the creation rate
+     */
+    public static boolean canAcquire() {
+        return !readyLevels.isEmpty() || creationTokens >= 1.0;
+    }
+
+    /**
+     * Creates a match level without going through the pool or its rate limit; {@link #acquire} and the
+     * pool refill charge the limit themselves. Match recovery uses this directly, so levels brought back
+     * after a restart don't hold back new matches.
+     */
+    static ServerLevel createLevel(MinecraftServer server, ResourceKey<Level> dimensionKey) {
+        // Mark before creation so nothing written while the level loads reaches the disk either
+        if (Config.ephemeralMatchLevels) {
+            EphemeralLevels.mark(dimensionKey);
+        }
+        // A level filled from a snapshot has to generate the rest of its terrain with the snapshot's seed
+        OptionalLong seed = TerrainSnapshots.getSeed(dimensionKey);
+        InfiniverseAPI.get().getOrCreateLevel(server, dimensionKey, () -> seed.isPresent()
+                ? TemporaryDimensionHelper.createLevel(server, seed.getAsLong())
+                : TemporaryDimensionHelper.createLevel(server));
+
+        ServerLevel level = server.getLevel(dimensionKey);
+        if (level == null) {
+            DimensionMod.LOGGER.error("Failed to create dimension " + dimensionKey.location());
+        } else {
+            ArenaChunkGenerator.applyWorldBorder(level);
+        }
+        return level;
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END)
+            return;
+
+        MinecraftServer server = event.getServer();
+        if (server == null)
+            return;
+
+        // The bucket holds at most one second's worth of creations
+        double rate = Config.maxDimensionCreationsPerSecond;
+        creationTokens = Math.min(Math.max(1.0, rate), creationTokens + rate / 20.0);
+
+        if (preparing != null) {
+            if (!preparing.isDone())
+                return;
+            ServerLevel level = createLevel(server, preparingKey);
+            preparing = null;
+            preparingKey = null;
+            if (level != null) {
+                readyLevels.addLast(level);
+            }
+            return;
+        }
+
+        // Only one level per refill interval, so the creation cost is spread over many ticks
+        if (readyLevels.size() >= Config.matchPoolSize || ++ticksSinceRefill < Config.matchPoolRefillIntervalTicks)
+            return;
+        if (server.getAverageTickTime() > Config.matchPoolIdleMspt || creationTokens < 1.0)
+            return;
+
+        ticksSinceRefill = 0;
+        creationTokens -= 1.0;
+        // The level is created on a later tick, once its snapshot files are in place
+        preparingKey = MatchManager.newMatchKey();
+        preparing = TerrainSnapshots.prepareAsync(server, preparingKey);
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        readyLevels.clear();
+        ticksSinceRefill = 0;
+        creationTokens = 1.0;
+        // A folder that was being prepared is removed by the startup sweep
+        preparing = null;
+        preparingKey = null;
+    }
+
+    public static int size() {
+        return readyLevels.size();
+    }
+
+    public static long getHits() {
+        return hits;
+    }
+
+    public static long getMisses() {
+        return misses;
+    }
+}
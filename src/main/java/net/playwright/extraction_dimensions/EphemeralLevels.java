@@ -0,0 +1,45 @@
+package net.playwright.extraction_dimensions;
+
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks levels whose chunks, entities and level data are never written to disk.
+ * <p>
+ * Match dimensions are thrown away when the match ends, so saving them is wasted I/O. The mixins in
+ * {@code net.playwright.extraction_dimensions.mixin} check this set before every save path.
+ */
+@Mod.EventBusSubscriber(modid = DimensionMod.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class EphemeralLevels {
+
+    // Read from chunk and entity storage, which is not always the server thread
+    private static final Set<ResourceKey<Level>> ephemeral = ConcurrentHashMap.newKeySet();
+
+    public static void mark(ResourceKey<Level> dimension) {
+        ephemeral.add(dimension);
+    }
+
+    public static boolean isEphemeral(Level level) {
+        return !ephemeral.isEmpty() && ephemeral.contains(level.dimension());
+    }
+
+    /**
+     * Forgets a level once it has been closed. Not on {@code LevelEvent.Unload},
+     * which fires before {@code ServerLevel.close()} runs its final save and entity flush.
+     */
+    public static void unmark(ResourceKey<Level> dimension) {
+        ephemeral.remove(dimension);
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        // Every level has been closed by now
+        ephemeral.clear();
+    }
+}
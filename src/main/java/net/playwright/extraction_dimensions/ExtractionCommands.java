@@ -1,27 +1,92 @@
 package net.playwright.extraction_dimensions;
 
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import it.unimi.dsi.fastutil.objects.Object2IntLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import net.minecraft.Util;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
+import net.minecraft.commands.SharedSuggestionProvider;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
 import net.minecraft.network.chat.Component;
+import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.ChunkPos;
 import net.minecraftforge.event.RegisterCommandsEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
+import net.playwright.extraction_dimensions.coordinator.Coordinator;
+import net.playwright.extraction_dimensions.coordinator.LobbyServer;
+import net.playwright.extraction_dimensions.coordinator.MatchHostClient;
+import net.playwright.extraction_dimensions.metrics.MatchMetrics;
+import net.playwright.extraction_dimensions.metrics.RollingHistogram;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 @Mod.EventBusSubscriber(modid = DimensionMod.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
 public class ExtractionCommands {
 
+    // Item lines shown by /extraction stash
+    private static final int STASH_LINES = 20;
+    private static final int RECORDING_LINES = 10;
+    private static final int RECORDING_CELLS = 5;
+
     @SubscribeEvent
     public static void onRegisterCommands(RegisterCommandsEvent event) {
         CommandDispatcher<CommandSourceStack> dispatcher = event.getDispatcher();
 
         dispatcher.register(Commands.literal("extraction")
                 .then(Commands.literal("start")
-                        .executes(ExtractionCommands::startMatch)));
+                        .executes(ExtractionCommands::startMatch))
+                .then(Commands.literal("queue")
+                        .executes(ExtractionCommands::joinQueue))
+                .then(Commands.literal("leave")
+                        .executes(ExtractionCommands::leaveQueue))
+                .then(Commands.literal("nearest")
+                        .executes(ExtractionCommands::nearestExtraction))
+                .then(Commands.literal("stash")
+                        .executes(ExtractionCommands::showStash))
+                .then(Commands.literal("governor")
+                        .executes(ExtractionCommands::governorStatus))
+                .then(Commands.literal("residency")
+                        .executes(ExtractionCommands::residencyStatus))
+                .then(Commands.literal("hosts")
+                        .executes(ExtractionCommands::hostStatus))
+                .then(Commands.literal("recording")
+                        .executes(ExtractionCommands::listRecordings)
+                        .then(Commands.argument("name", StringArgumentType.word())
+                                .suggests((context, builder) -> SharedSuggestionProvider.suggest(
+                                        recordingNames(RECORDING_LINES), builder))
+                                .executes(ExtractionCommands::summarizeRecording)))
+                .then(Commands.literal("snapshot")
+                        .executes(ExtractionCommands::snapshotStatus)
+                        .then(Commands.literal("create")
+                                .requires(source -> source.hasPermission(2))
+                                .executes(ExtractionCommands::createSnapshot)))
+                .then(Commands.literal("pool")
+                        .executes(ExtractionCommands::poolStats))
+                .then(Commands.literal("stats")
+                        .executes(ExtractionCommands::allMatchStats)
+                        .then(Commands.argument("match", StringArgumentType.word())
+                                .suggests((context, builder) -> SharedSuggestionProvider.suggest(
+                                        MatchManager.getMatches().stream().map(MatchManager.Match::getId), builder))
+                                .executes(ExtractionCommands::matchStats))));
     }
 
     private static int startMatch(CommandContext<CommandSourceStack> context) {
@@ -33,8 +98,375 @@ public class ExtractionCommands {
             return 0;
         }
 
+        if (!Coordinator.startMatch(source.getServer(), players)) {
+            source.sendFailure(Component.literal("Could not start a match; no dimension or match host is available."));
+            return 0;
+        }
         source.sendSuccess(() -> Component.literal("Starting match with " + players.size() + " players..."), true);
-        MatchManager.startMatch(source.getServer(), players);
         return 1;
     }
+
+    private static int joinQueue(CommandContext<CommandSourceStack> context) throws CommandSyntaxException {
+        ServerPlayer player = context.getSource().getPlayerOrException();
+        if (!MatchQueue.join(player)) {
+            context.getSource().sendFailure(Component.literal("You are already queued or in a match."));
+            return 0;
+        }
+
+        context.getSource().sendSuccess(() -> Component.literal("Joined the match queue (" + MatchQueue.size()
+                + " waiting)."), false);
+        return 1;
+    }
+
+    private static int leaveQueue(CommandContext<CommandSourceStack> context) throws CommandSyntaxException {
+        ServerPlayer player = context.getSource().getPlayerOrException();
+        if (!MatchQueue.leave(player)) {
+            context.getSource().sendFailure(Component.literal("You are not in the match queue."));
+            return 0;
+        }
+
+        context.getSource().sendSuccess(() -> Component.literal("Left the match queue."), false);
+        return 1;
+    }
+
+    private static int nearestExtraction(CommandContext<CommandSourceStack> context) throws CommandSyntaxException {
+        ServerPlayer player = context.getSource().getPlayerOrException();
+        MatchManager.Match match = MatchManager.getMatch(player.level().dimension());
+        BlockPos nearest = match != null ? match.findNearestExtraction(player.blockPosition()) : null;
+        if (nearest == null) {
+            context.getSource().sendFailure(Component.literal("No known extraction point nearby."));
+            return 0;
+        }
+
+        int dx = nearest.getX() - player.getBlockX();
+        int dz = nearest.getZ() - player.getBlockZ();
+        int distance = (int) Math.sqrt((double) dx * dx + (double) dz * dz);
+        context.getSource().sendSuccess(() -> Component.literal("Nearest extraction point: " + distance + " blocks "
+                + Direction.getNearest(dx, 0, dz).getName() + ", at height " + nearest.getY() + "."), false);
+        return 1;
+    }
+
+    private static int snapshotStatus(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        float progress = TerrainSnapshots.getBuildProgress();
+        source.sendSuccess(() -> Component.literal("Terrain snapshots: " + TerrainSnapshots.size()
+                + (Config.useTerrainSnapshots ? " (in use)" : " (not in use)")
+                + (progress >= 0 ? ", building one (" + (int) (progress * 100) + "%)" : "")), false);
+        source.sendSuccess(() -> Component.literal("  Time to ready, generated: "
+                + TerrainSnapshots.describeTimeToReady(false)), false);
+        source.sendSuccess(() -> Component.literal("  Time to ready, from snapshot: "
+                + TerrainSnapshots.describeTimeToReady(true)), false);
+        return TerrainSnapshots.size();
+    }
+
+    private static int createSnapshot(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        if (!TerrainSnapshots.startBuild(source.getServer())) {
+            source.sendFailure(Component.literal("Could not start a terrain snapshot; one may already be building."));
+            return 0;
+        }
+
+        source.sendSuccess(() -> Component.literal("Building a terrain snapshot, see /extraction snapshot for progress."), true);
+        return 1;
+    }
+
+    private static int poolStats(CommandContext<CommandSourceStack> context) {
+        long hits = DimensionPool.getHits();
+        long misses = DimensionPool.getMisses();
+        context.getSource().sendSuccess(() -> Component.literal("Match pool: " + DimensionPool.size() + " ready, "
+                + hits + " hits, " + misses + " misses"), false);
+        return DimensionPool.size();
+    }
+
+    private static int showStash(CommandContext<CommandSourceStack> context) throws CommandSyntaxException {
+        CommandSourceStack source = context.getSource();
+        ServerPlayer player = source.getPlayerOrException();
+        // The stash is read on its own thread; the items are turned back into stacks here
+        LootStash.get(player.getUUID()).thenAcceptAsync(stash -> {
+            ListTag hauls = stash.getList("hauls", Tag.TAG_COMPOUND);
+            if (hauls.isEmpty()) {
+                source.sendSuccess(() -> Component.literal("Your stash is empty. Extract from a match to fill it."), false);
+                return;
+            }
+
+            Object2IntLinkedOpenHashMap<Item> totals = new Object2IntLinkedOpenHashMap<>();
+            for (int i = 0; i < hauls.size(); i++) {
+                ListTag items = hauls.getCompound(i).getList("items", Tag.TAG_COMPOUND);
+                for (int j = 0; j < items.size(); j++) {
+                    ItemStack stack = ItemStack.of(items.getCompound(j));
+                    if (!stack.isEmpty()) {
+                        totals.addTo(stack.getItem(), stack.getCount());
+                    }
+                }
+            }
+
+            source.sendSuccess(() -> Component.literal("Your stash, from " + hauls.size() + " extractions:"), false);
+            int shown = 0;
+            for (Object2IntMap.Entry<Item> entry : totals.object2IntEntrySet()) {
+                if (shown++ == STASH_LINES) {
+                    int more = totals.size() - STASH_LINES;
+                    source.sendSuccess(() -> Component.literal("  ...and " + more + " more kinds of items"), false);
+                    break;
+                }
+                Component line = Component.literal("  " + entry.getIntValue() + " x ").append(entry.getKey().getDescription());
+                source.sendSuccess(() -> line, false);
+            }
+        }, source.getServer());
+        return 1;
+    }
+
+    private static int governorStatus(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        if (!Config.governorEnabled) {
+            source.sendSuccess(() -> Component.literal("Tick governor is disabled."), false);
+            return 0;
+        }
+
+        double mspt = source.getServer().getAverageTickTime();
+        source.sendSuccess(() -> Component.literal("Tick governor: " + TickGovernor.getStage() + " at "
+                + String.format("%.2f", mspt) + "ms (threshold " + Config.governorMsptThreshold + "ms, step "
+                + Config.governorStepMspt + "ms)"), false);
+        for (TickGovernor.LevelThrottle throttle : TickGovernor.getThrottles()) {
+            MatchManager.Match match = throttle.getMatch();
+            String decision = throttle.isIdle()
+                    ? "idle, full tick every " + Config.governorIdleTickInterval + " ticks"
+                    : "active, " + TickGovernor.getStage();
+            source.sendSuccess(() -> Component.literal("  " + match.getId() + " [" + match.getState() + "] "
+                    + decision + ", " + throttle.getSkippedTicks() + " ticks skipped"), false);
+        }
+        return TickGovernor.getThrottles().size();
+    }
+
+    private static int residencyStatus(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        Collection<ChunkResidency.MatchResidency> residencies = ChunkResidency.getResidencies();
+        if (residencies.isEmpty()) {
+            source.sendSuccess(() -> Component.literal("No running matches."), false);
+            return 0;
+        }
+
+        int totalChunks = 0;
+        long totalBytes = 0;
+        for (ChunkResidency.MatchResidency residency : residencies) {
+            totalChunks += residency.getResidentChunks();
+            totalBytes += residency.getEstimatedBytes();
+        }
+        // Only the chunks are counted, so this is an upper bound on how many matches fit
+        long perMatch = totalBytes / residencies.size();
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        String fits = perMatch > 0 ? ", so the " + megabytes(maxHeap) + " heap fits at most " + maxHeap / perMatch
+                + " matches like these" : "";
+        int chunks = totalChunks;
+        long bytes = totalBytes;
+        source.sendSuccess(() -> Component.literal("Chunk residency: " + chunks + " chunks, ~" + megabytes(bytes)
+                + " in " + residencies.size() + " matches (cap " + Config.maxChunksPerMatch + " each)" + fits), false);
+
+        for (ChunkResidency.MatchResidency residency : residencies) {
+            MatchManager.Match match = residency.getMatch();
+            source.sendSuccess(() -> Component.literal("  " + match.getId() + " [" + match.getState() + "] "
+                    + residency.getResidentChunks() + " chunks, ~" + megabytes(residency.getEstimatedBytes())
+                    + ", view distance " + residency.getViewDistance() + ", " + residency.getZoneTickets()
+                    + " zone tickets, " + residency.getEditedChunks() + " edited chunks held, "
+                    + residency.getReleasedPlayers() + " players released"), false);
+        }
+        return residencies.size();
+    }
+
+    private static int hostStatus(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        MatchHostClient host = Coordinator.getHost();
+        if (host != null) {
+            source.sendSuccess(() -> Component.literal("Match host " + host.getName() + ", "
+                    + (host.isConnected() ? "connected to" : "not connected to") + " the lobby at " + host.getAddress()
+                    + ", running " + host.getAssignedMatches() + " of its matches."), false);
+            return 1;
+        }
+        LobbyServer lobby = Coordinator.getLobby();
+        if (lobby == null) {
+            source.sendSuccess(() -> Component.literal("This server runs its own matches (coordinator mode standalone)."), false);
+            return 0;
+        }
+
+        Collection<LobbyServer.HostInfo> hosts = lobby.getHosts();
+        source.sendSuccess(() -> Component.literal("Lobby: " + hosts.size() + " match hosts, " + MatchQueue.size()
+                + " players queued, " + lobby.getAwayCount() + " in matches"), false);
+        for (LobbyServer.HostInfo info : hosts) {
+            String status = !info.isReady() ? "connecting" : info.getMatches() + " matches, " + info.getPlayers()
+                    + " players, " + String.format("%.1f", info.getMspt()) + "ms/tick"
+                    + (info.isOverloaded() ? " (overloaded)" : "") + (info.isAccepting() ? "" : ", not taking matches")
+                    + ", heartbeat " + info.getMillisSinceHeartbeat() + "ms ago";
+            source.sendSuccess(() -> Component.literal("  " + info.getName() + ": " + status), false);
+        }
+        for (LobbyServer.Result result : lobby.getResults()) {
+            source.sendSuccess(() -> Component.literal("  " + result.matchId() + " on " + result.host() + ": "
+                    + result.extracted() + " of " + result.players() + " extracted in " + formatTicks(result.ticks())), false);
+        }
+        return hosts.size();
+    }
+
+    private static int listRecordings(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        CompletableFuture.supplyAsync(() -> recordingNames(RECORDING_LINES), Util.backgroundExecutor())
+                .thenAcceptAsync(names -> {
+                    if (names.isEmpty()) {
+                        source.sendSuccess(() -> Component.literal("No match recordings yet."), false);
+                        return;
+                    }
+                    source.sendSuccess(() -> Component.literal("Latest match recordings, see /extraction recording <name>:"), false);
+                    for (String name : names) {
+                        source.sendSuccess(() -> Component.literal("  " + name), false);
+                    }
+                }, source.getServer());
+        return 1;
+    }
+
+    // Newest first
+    private static List<String> recordingNames(int limit) {
+        Path directory = MatchRecorder.getDirectory();
+        if (directory == null || !Files.isDirectory(directory))
+            return List.of();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(MatchRecorder.EXTENSION))
+                    .map(name -> name.substring(0, name.length() - MatchRecorder.EXTENSION.length()))
+                    .sorted(Comparator.comparingLong(ExtractionCommands::recordingTime).reversed())
+                    .limit(limit)
+                    .toList();
+        } catch (IOException e) {
+            DimensionMod.LOGGER.error("Failed to list match recordings", e);
+            return List.of();
+        }
+    }
+
+    // Recordings are named <match id>-<millis>
+    private static long recordingTime(String name) {
+        try {
+            return Long.parseLong(name.substring(name.lastIndexOf('-') + 1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static int summarizeRecording(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        String name = StringArgumentType.getString(context, "name");
+        Path directory = MatchRecorder.getDirectory();
+        Path path = directory != null ? directory.resolve(name + MatchRecorder.EXTENSION) : null;
+        if (path == null || !path.getParent().equals(directory) || !Files.isRegularFile(path)) {
+            source.sendFailure(Component.literal("No match recording " + name));
+            return 0;
+        }
+
+        // The file is read block by block on a background thread
+        CompletableFuture.supplyAsync(() -> {
+            try (MatchRecording recording = MatchRecording.open(path)) {
+                return summaryLines(recording, recording.summarize());
+            } catch (IOException e) {
+                DimensionMod.LOGGER.error("Failed to read match recording " + path, e);
+                return List.of("Could not read " + name + ": " + e.getMessage());
+            }
+        }, Util.backgroundExecutor()).thenAcceptAsync(lines -> {
+            for (String line : lines) {
+                source.sendSuccess(() -> Component.literal(line), false);
+            }
+        }, source.getServer());
+        return 1;
+    }
+
+    private static List<String> summaryLines(MatchRecording recording, MatchRecording.Summary summary) {
+        List<String> lines = new ArrayList<>();
+        String status = !recording.isComplete() ? ", unfinished file" : !summary.hasEnded() ? ", stopped with the server" : "";
+        lines.add(recording.getMatchId() + ": " + summary.getPlayers().size() + " players, "
+                + formatTicks(summary.getDurationTicks()) + " (" + formatTicks(summary.getPlayingTicks()) + " of play), "
+                + summary.getRecords() + " records, " + recording.getDropped() + " dropped" + status);
+        String times = summary.getExtractionsCompleted() == 0 ? "" : "; took " + formatTicks(summary.getExtractionTicks(0))
+                + " to " + formatTicks(summary.getExtractionTicks(1)) + ", median " + formatTicks(summary.getExtractionTicks(0.5));
+        lines.add("  extractions: " + summary.getExtractionsCompleted() + " completed, "
+                + summary.getExtractionsCancelled() + " cancelled of " + summary.getExtractionsStarted() + " started" + times);
+        lines.add("  deaths: " + summary.getDeaths());
+
+        if (summary.getPositionSamples() > 0) {
+            lines.add("  busiest areas, from " + summary.getPositionSamples() + " position samples every "
+                    + formatTicks(recording.getSampleIntervalTicks()) + ":");
+            for (long cell : summary.getBusiestCells(RECORDING_CELLS)) {
+                int share = (int) (100L * summary.getSamplesIn(cell) / summary.getPositionSamples());
+                lines.add("    " + formatCell(cell) + ": " + share + "%");
+            }
+        }
+        if (summary.getDeaths() > 0) {
+            lines.add("  deadliest areas:");
+            for (long cell : summary.getDeadliestCells(RECORDING_CELLS)) {
+                lines.add("    " + formatCell(cell) + ": " + summary.getDeathsIn(cell) + " deaths");
+            }
+        }
+        return lines;
+    }
+
+    private static String formatCell(long cell) {
+        int x = ChunkPos.getX(cell) * MatchRecording.HEATMAP_CELL;
+        int z = ChunkPos.getZ(cell) * MatchRecording.HEATMAP_CELL;
+        return "x " + x + ".." + (x + MatchRecording.HEATMAP_CELL) + ", z " + z + ".." + (z + MatchRecording.HEATMAP_CELL);
+    }
+
+    private static String formatTicks(int ticks) {
+        int seconds = ticks / 20;
+        return seconds >= 60 ? seconds / 60 + "m " + seconds % 60 + "s" : String.format("%.1fs", ticks / 20.0);
+    }
+
+    private static int allMatchStats(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        Collection<MatchManager.Match> matches = MatchManager.getMatches();
+        if (matches.isEmpty()) {
+            source.sendSuccess(() -> Component.literal("No running matches."), false);
+            return 0;
+        }
+
+        for (MatchManager.Match match : matches) {
+            RollingHistogram levelTick = match.getMetrics().getLevelTickNanos();
+            source.sendSuccess(() -> Component.literal(match.getId() + " [" + match.getState() + "] "
+                    + match.getPlayerCount() + " players, tick p50 " + millis(levelTick.percentile(0.5))
+                    + " p99 " + millis(levelTick.percentile(0.99))), false);
+        }
+        return matches.size();
+    }
+
+    private static int matchStats(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        String matchId = StringArgumentType.getString(context, "match");
+        MatchManager.Match match = MatchManager.getMatch(matchId);
+        ServerLevel level = match != null ? source.getServer().getLevel(match.getDimension()) : null;
+        if (level == null) {
+            source.sendFailure(Component.literal("No running match " + matchId));
+            return 0;
+        }
+
+        MatchMetrics metrics = match.getMetrics();
+        RollingHistogram levelTick = metrics.getLevelTickNanos();
+        RollingHistogram bookkeeping = metrics.getBookkeepingNanos();
+        long now = MatchManager.currentTick();
+        int chunks = level.getChunkSource().getLoadedChunksCount();
+        long chunkBytes = ChunkResidency.getEstimatedBytes(level.dimension());
+        int entities = MatchMetrics.countEntities(level);
+
+        source.sendSuccess(() -> Component.literal(match.getId() + " [" + match.getState() + "]"), false);
+        source.sendSuccess(() -> Component.literal("  level tick p50 " + millis(levelTick.percentile(0.5))
+                + " p99 " + millis(levelTick.percentile(0.99)) + " over " + levelTick.size() + " ticks"), false);
+        source.sendSuccess(() -> Component.literal("  bookkeeping p50 " + millis(bookkeeping.percentile(0.5))
+                + " p99 " + millis(bookkeeping.percentile(0.99))), false);
+        source.sendSuccess(() -> Component.literal("  " + match.getPlayerCount() + " players, " + chunks
+                + " chunks (~" + megabytes(chunkBytes) + "), " + entities + " entities"), false);
+        for (MatchManager.Match.MatchState state : MatchManager.Match.MatchState.values()) {
+            long ticks = metrics.getTicksInState(state, now);
+            source.sendSuccess(() -> Component.literal("  " + state + ": " + String.format("%.1f", ticks / 20.0) + "s"), false);
+        }
+        return 1;
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2fms", nanos / 1_000_000.0);
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
 }
@@ -0,0 +1,187 @@
+package net.playwright.extraction_dimensions;
+
+import net.minecraft.Util;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerChunkCache;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.TicketType;
+import net.minecraft.util.RandomSource;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.LevelHeightAccessor;
+import net.minecraft.world.level.chunk.ChunkGenerator;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.level.levelgen.RandomState;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Chooses where a match's extraction blocks go and places them once the ground there exists.
+ * <p>
+ * Sites are picked off-thread from a seed: random columns across the play area, at least
+ * {@link Config#extractionSiteSpacing} blocks apart and {@link Config#spawnExtractionDistance} blocks
+ * from every spawn area, skipping columns the generator says are under water. The generator's height
+ * estimate is all that is read, so no chunk has to exist for this.
+ * <p>
+ * Each site's chunk is then requested with a region ticket and generated by the chunk workers, and
+ * keeps that ticket until the match releases the placer. A match level is usually not saved, so an
+ * extraction block whose chunk unloaded would be gone when it loads again. The
+ * blocks are placed from the server thread a few per tick, only into chunks that are already loaded,
+ * on top of the ground that was actually generated. A site under a tree is moved to the nearest column
+ * of its chunk that is open to the sky, so the block never ends up inside or beneath a canopy.
+ */
+public class ExtractionSitePlacer {
+
+    private static final TicketType<ChunkPos> SITE_TICKET = TicketType.create("extraction_site",
+            Comparator.comparingLong(ChunkPos::toLong));
+    // Random columns tried per wanted site before settling for fewer sites
+    private static final int ATTEMPTS_PER_SITE = 64;
+
+    private final ServerLevel level;
+    private final CompletableFuture<List<BlockPos>> sites;
+    private final List<BlockPos> pending = new ArrayList<>();
+    private boolean ticketsHeld = false;
+    private int placed = 0;
+
+    /**
+     * Starts choosing {@code count} sites in the background.
+     */
+    public ExtractionSitePlacer(ServerLevel level, List<BlockPos> spawns, int count, long seed) {
+        this.level = level;
+
+        ChunkGenerator generator = level.getChunkSource().getGenerator();
+        RandomState randomState = level.getChunkSource().randomState();
+        // A plain copy of the level's bounds, so the worker thread doesn't touch the level
+        LevelHeightAccessor bounds = LevelHeightAccessor.create(level.getMinBuildHeight(), level.getHeight());
+        int range = SpawnPregenerator.getPlayRange(level, 16);
+        int spacing = Config.extractionSiteSpacing;
+        int spawnDistance = Config.spawnExtractionDistance;
+        this.sites = CompletableFuture.supplyAsync(
+                () -> chooseSites(generator, randomState, bounds, spawns, count, spacing, spawnDistance, range, seed),
+                Util.backgroundExecutor());
+    }
+
+    private static List<BlockPos> chooseSites(ChunkGenerator generator, RandomState randomState,
+                                              LevelHeightAccessor bounds, List<BlockPos> spawns, int count,
+                                              int spacing, int spawnDistance, int range, long seed) {
+        RandomSource random = RandomSource.create(seed);
+        long spacingSq = (long) spacing * spacing;
+        long spawnDistanceSq = (long) spawnDistance * spawnDistance;
+        List<BlockPos> chosen = new ArrayList<>(count);
+
+        for (int attempt = 0; attempt < count * ATTEMPTS_PER_SITE && chosen.size() < count; attempt++) {
+            int x = random.nextInt(range * 2) - range;
+            int z = random.nextInt(range * 2) - range;
+            if (SpawnPointIndex.isNear(x, z, spawns, spawnDistanceSq) || SpawnPointIndex.isNear(x, z, chosen, spacingSq))
+                continue;
+
+            // Before features, the only thing between the ocean floor and the surface is fluid
+            int floor = generator.getBaseHeight(x, z, Heightmap.Types.OCEAN_FLOOR_WG, bounds, randomState);
+            int surface = generator.getBaseHeight(x, z, Heightmap.Types.WORLD_SURFACE_WG, bounds, randomState);
+            if (floor <= bounds.getMinBuildHeight() || surface != floor)
+                continue;
+
+            chosen.add(new BlockPos(x, floor, z));
+        }
+
+        if (chosen.size() < count) {
+            DimensionMod.LOGGER.warn("Only found {} of {} extraction sites", chosen.size(), count);
+        }
+        return chosen;
+    }
+
+    /**
+     * @return the chosen sites once they are known; the y coordinates are the generator's estimate
+     */
+    public CompletableFuture<List<BlockPos>> getSites() {
+        return sites;
+    }
+
+    /**
+     * Places up to {@code budget} extraction blocks whose chunks have loaded. Must be called on the
+     * server thread.
+     *
+     * @return true once every site has its block
+     */
+    public boolean placeLoaded(int budget) {
+        if (!ticketsHeld) {
+            List<BlockPos> chosen = sites.getNow(null);
+            if (chosen == null)
+                return false;
+            pending.addAll(chosen);
+            ServerChunkCache chunkSource = level.getChunkSource();
+            for (BlockPos site : chosen) {
+                ChunkPos pos = new ChunkPos(site);
+                chunkSource.addRegionTicket(SITE_TICKET, pos, 0, pos);
+            }
+            ticketsHeld = true;
+        }
+
+        ServerChunkCache chunkSource = level.getChunkSource();
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        for (int i = pending.size() - 1; i >= 0 && budget > 0; i--) {
+            BlockPos site = pending.get(i);
+            LevelChunk chunk = chunkSource.getChunkNow(site.getX() >> 4, site.getZ() >> 4);
+            if (chunk == null)
+                continue;
+
+            // The block's onPlace hook adds it to the match's extraction index
+            level.setBlock(findOpenGround(chunk, site, pos), DimensionMod.EXTRACTION_BLOCK.get().defaultBlockState(), 3);
+            pending.set(i, pending.get(pending.size() - 1));
+            pending.remove(pending.size() - 1);
+            placed++;
+            budget--;
+        }
+        return pending.isEmpty();
+    }
+
+    /**
+     * Finds the spot above the ground nearest to the site that nothing blocks from the sky. Leaves are
+     * the only difference between the two motion-blocking heightmaps, so a column where they agree has
+     * no canopy over its ground. If the whole chunk is covered, the block goes on top of the canopy.
+     */
+    private static BlockPos findOpenGround(LevelChunk chunk, BlockPos site, BlockPos.MutableBlockPos pos) {
+        int siteX = site.getX() & 15;
+        int siteZ = site.getZ() & 15;
+        int bestX = siteX;
+        int bestZ = siteZ;
+        int bestDistanceSq = Integer.MAX_VALUE;
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                int distanceSq = (x - siteX) * (x - siteX) + (z - siteZ) * (z - siteZ);
+                if (distanceSq >= bestDistanceSq)
+                    continue;
+                if (chunk.getHeight(Heightmap.Types.MOTION_BLOCKING, x, z)
+                        == chunk.getHeight(Heightmap.Types.MOTION_BLOCKING_NO_LEAVES, x, z)) {
+                    bestX = x;
+                    bestZ = z;
+                    bestDistanceSq = distanceSq;
+                }
+            }
+        }
+        int y = chunk.getHeight(Heightmap.Types.MOTION_BLOCKING, bestX, bestZ) + 1;
+        return pos.set(chunk.getPos().getMinBlockX() + bestX, y, chunk.getPos().getMinBlockZ() + bestZ);
+    }
+
+    public int getPlacedCount() {
+        return placed;
+    }
+
+    /**
+     * Drops the tickets of all sites, placed or not. Call it once the match has ended.
+     */
+    public void release() {
+        if (!ticketsHeld)
+            return;
+        ticketsHeld = false;
+        ServerChunkCache chunkSource = level.getChunkSource();
+        for (BlockPos site : sites.join()) {
+            ChunkPos pos = new ChunkPos(site);
+            chunkSource.removeRegionTicket(SITE_TICKET, pos, 0, pos);
+        }
+        pending.clear();
+    }
+}
@@ -0,0 +1,181 @@
+package net.playwright.extraction_dimensions;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+
+/**
+ * The extraction points of one match, bucketed into a grid of {@link #CELL_SIZE} block cells.
+ * <p>
+ * Kept up to date from extraction blocks being placed and removed, from chunks that are loaded with
+ * extraction blocks in them, and from points the match places itself. Lookups never touch the world:
+ * checking a point is a hash lookup, and finding the nearest point only looks at the cells around
+ * the query.
+ * <p>
+ * Not thread safe. Writes only happen on the server thread, outside the bookkeeping frames: from block
+ * and chunk events, and from commands applied after the frame's bookkeeping has finished. Reads are
+ * therefore safe from the match's bookkeeping task during a frame, even when it runs off the server
+ * thread.
+ */
+public class ExtractionZoneIndex {
+
+    private static final int CELL_SIZE = 32;
+    // Below this many points a straight scan is cheaper than walking rings of cells
+    private static final int LINEAR_SCAN_LIMIT = 64;
+
+    private final LongOpenHashSet points = new LongOpenHashSet();
+    private final Long2ObjectOpenHashMap<LongArrayList> cells = new Long2ObjectOpenHashMap<>();
+    // Bounds of the occupied cells, so a nearest search knows when to give up
+    private int minCellX = Integer.MAX_VALUE;
+    private int minCellZ = Integer.MAX_VALUE;
+    private int maxCellX = Integer.MIN_VALUE;
+    private int maxCellZ = Integer.MIN_VALUE;
+
+    /**
+     * @return false if the point was already indexed
+     */
+    public boolean add(BlockPos pos) {
+        long packed = pos.asLong();
+        if (!points.add(packed))
+            return false;
+
+        int cellX = Math.floorDiv(pos.getX(), CELL_SIZE);
+        int cellZ = Math.floorDiv(pos.getZ(), CELL_SIZE);
+        cells.computeIfAbsent(ChunkPos.asLong(cellX, cellZ), k -> new LongArrayList()).add(packed);
+        minCellX = Math.min(minCellX, cellX);
+        minCellZ = Math.min(minCellZ, cellZ);
+        maxCellX = Math.max(maxCellX, cellX);
+        maxCellZ = Math.max(maxCellZ, cellZ);
+        return true;
+    }
+
+    /**
+     * @return false if the point was not indexed
+     */
+    public boolean remove(BlockPos pos) {
+        long packed = pos.asLong();
+        if (!points.remove(packed))
+            return false;
+
+        // Bounds are left as they are; they only limit how far a search may look
+        long cellKey = ChunkPos.asLong(Math.floorDiv(pos.getX(), CELL_SIZE), Math.floorDiv(pos.getZ(), CELL_SIZE));
+        LongArrayList cell = cells.get(cellKey);
+        cell.rem(packed);
+        if (cell.isEmpty()) {
+            cells.remove(cellKey);
+        }
+        return true;
+    }
+
+    public boolean contains(BlockPos pos) {
+        return points.contains(pos.asLong());
+    }
+
+    public int size() {
+        return points.size();
+    }
+
+    /**
+     * Passes every point, packed as by {@link BlockPos#asLong()}, to {@code action}.
+     */
+    public void forEach(LongConsumer action) {
+        points.forEach(action);
+    }
+
+    /**
+     * Indexes every block of a freshly loaded chunk that matches {@code isExtraction}. Sections whose
+     * palette can't contain such a block are skipped without reading them.
+     */
+    public void addFromChunk(LevelChunk chunk, Predicate<BlockState> isExtraction) {
+        LevelChunkSection[] sections = chunk.getSections();
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        for (int index = 0; index < sections.length; index++) {
+            LevelChunkSection section = sections[index];
+            if (section.hasOnlyAir() || !section.maybeHas(isExtraction))
+                continue;
+
+            int bottom = chunk.getSectionYFromSectionIndex(index) << 4;
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    for (int x = 0; x < 16; x++) {
+                        if (isExtraction.test(section.getBlockState(x, y, z))) {
+                            add(pos.set(chunk.getPos().getMinBlockX() + x, bottom + y, chunk.getPos().getMinBlockZ() + z));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the point closest to x, y, z, or null if there is none
+     */
+    public BlockPos nearest(int x, int y, int z) {
+        if (points.isEmpty())
+            return null;
+        if (points.size() <= LINEAR_SCAN_LIMIT)
+            return nearestByScan(x, y, z);
+
+        int cellX = Math.floorDiv(x, CELL_SIZE);
+        int cellZ = Math.floorDiv(z, CELL_SIZE);
+        int maxRing = Math.max(Math.max(Math.abs(cellX - minCellX), Math.abs(cellX - maxCellX)),
+                Math.max(Math.abs(cellZ - minCellZ), Math.abs(cellZ - maxCellZ)));
+
+        long best = 0;
+        long bestDistanceSq = Long.MAX_VALUE;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            for (int dx = -ring; dx <= ring; dx++) {
+                // Only the outline of the ring; the inside was searched by the smaller rings
+                int step = (dx == -ring || dx == ring) ? 1 : ring * 2;
+                for (int dz = -ring; dz <= ring; dz += step) {
+                    LongArrayList cell = cells.get(ChunkPos.asLong(cellX + dx, cellZ + dz));
+                    if (cell == null)
+                        continue;
+                    for (int i = 0; i < cell.size(); i++) {
+                        long point = cell.getLong(i);
+                        long distanceSq = distanceSq(point, x, y, z);
+                        if (distanceSq < bestDistanceSq) {
+                            bestDistanceSq = distanceSq;
+                            best = point;
+                        }
+                    }
+                }
+            }
+            // Anything in the next ring is at least this far away horizontally
+            long reach = (long) ring * CELL_SIZE;
+            if (bestDistanceSq <= reach * reach)
+                break;
+        }
+        return bestDistanceSq == Long.MAX_VALUE ? null : BlockPos.of(best);
+    }
+
+    private BlockPos nearestByScan(int x, int y, int z) {
+        long best = 0;
+        long bestDistanceSq = Long.MAX_VALUE;
+        for (LongIterator iterator = points.iterator(); iterator.hasNext(); ) {
+            long point = iterator.nextLong();
+            long distanceSq = distanceSq(point, x, y, z);
+            if (distanceSq < bestDistanceSq) {
+                bestDistanceSq = distanceSq;
+                best = point;
+            }
+        }
+        return BlockPos.of(best);
+    }
+
+    private static long distanceSq(long point, int x, int y, int z) {
+        long dx = BlockPos.getX(point) - x;
+        long dy = BlockPos.getY(point) - y;
+        long dz = BlockPos.getZ(point) - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+}
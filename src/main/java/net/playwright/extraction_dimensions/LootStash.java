@@ -0,0 +1,239 @@
+package net.playwright.extraction_dimensions;
+
+import com.mojang.serialization.Dynamic;
+import net.minecraft.SharedConstants;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.nbt.Tag;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.util.datafix.DataFixers;
+import net.minecraft.util.datafix.fixes.References;
+import net.minecraft.world.level.storage.LevelResource;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.event.server.ServerStartingEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What each player has carried out of their matches.
+ * <p>
+ * On extraction the player's inventory is copied to NBT on the server thread and handed to the stash
+ * thread, which adds it to the player's stash as one haul. Stashes are gzipped NBT in a
+ * {@link StashStore} under the world folder. Changed stashes are written together, at most
+ * {@link Config#stashFlushDelayMillis} after the first change, with one fsync per batch. A write that
+ * fails is tried again, waiting twice as long after each failure in a row, up to a minute.
+ * <p>
+ * Every haul records the data version its items were saved with, and items from an older version are
+ * run through the game's data fixers when the stash is read back.
+ * <p>
+ * Reads go through an LRU cache of {@link Config#stashCacheSize} stashes, which is warmed when a
+ * player logs in. The cache, the store and the pending writes are only touched from the stash thread.
+ */
+@Mod.EventBusSubscriber(modid = DimensionMod.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class LootStash {
+
+    private static ScheduledThreadPoolExecutor executor;
+    private static StashStore store;
+    private static final Map<UUID, CompoundTag> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, CompoundTag> eldest) {
+            return size() > Config.stashCacheSize;
+        }
+    };
+    // Stashes changed since the last write; these are always served from here, never from the store
+    private static final Map<UUID, CompoundTag> dirty = new HashMap<>();
+    private static boolean flushScheduled = false;
+    // Wait before retrying a failed write, 0 after a successful one
+    private static long retryDelayMillis = 0;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60_000;
+
+    @SubscribeEvent
+    public static void onServerStarting(ServerStartingEvent event) {
+        Path path = event.getServer().getWorldPath(LevelResource.ROOT).resolve("extraction_stash").resolve("stash.db");
+        executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "Extraction-Stash");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // The flush queued on stop covers whatever a delayed flush would have written
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        executor.execute(() -> {
+            try {
+                store = StashStore.open(path);
+            } catch (IOException e) {
+                DimensionMod.LOGGER.error("Failed to open the loot stash store; stashes will not be saved", e);
+            }
+        });
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        if (executor == null)
+            return;
+
+        executor.execute(() -> {
+            flush();
+            if (store != null) {
+                try {
+                    store.close();
+                } catch (IOException e) {
+                    DimensionMod.LOGGER.error("Failed to close the loot stash store", e);
+                }
+                store = null;
+            }
+            cache.clear();
+            dirty.clear();
+            retryDelayMillis = 0;
+        });
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                DimensionMod.LOGGER.warn("Loot stash did not finish writing in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedIn(PlayerEvent.PlayerLoggedInEvent event) {
+        if (executor != null) {
+            UUID id = event.getEntity().getUUID();
+            executor.execute(() -> load(id));
+        }
+    }
+
+    /**
+     * Adds what the player is carrying to their stash. Only the copy of the inventory happens on the
+     * calling thread.
+     */
+    public static void deposit(ServerPlayer player, String matchId) {
+        if (executor == null)
+            return;
+
+        CompoundTag haul = new CompoundTag();
+        haul.putString("match", matchId);
+        haul.putLong("time", System.currentTimeMillis());
+        haul.putInt("DataVersion", SharedConstants.getCurrentVersion().getDataVersion().getVersion());
+        haul.put("items", player.getInventory().save(new ListTag()));
+        UUID id = player.getUUID();
+        executor.execute(() -> addHaul(id, haul));
+    }
+
+    /**
+     * @return a copy of the player's stash; completes on the stash thread
+     */
+    public static CompletableFuture<CompoundTag> get(UUID id) {
+        if (executor == null)
+            return CompletableFuture.completedFuture(new CompoundTag());
+        return CompletableFuture.supplyAsync(() -> load(id).copy(), executor);
+    }
+
+    private static void addHaul(UUID id, CompoundTag haul) {
+        CompoundTag stash = load(id);
+        ListTag hauls = stash.getList("hauls", Tag.TAG_COMPOUND);
+        hauls.add(haul);
+        // Oldest hauls go first
+        while (hauls.size() > Config.stashMaxHauls) {
+            hauls.remove(0);
+        }
+        stash.put("hauls", hauls);
+        dirty.put(id, stash);
+
+        if (!flushScheduled) {
+            flushScheduled = true;
+            executor.schedule(LootStash::flush, Config.stashFlushDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Read-through: pending writes, then the cache, then the store
+    private static CompoundTag load(UUID id) {
+        CompoundTag stash = dirty.get(id);
+        if (stash == null) {
+            stash = cache.get(id);
+        }
+        if (stash == null) {
+            stash = new CompoundTag();
+            try {
+                byte[] stored = store != null ? store.get(id) : null;
+                if (stored != null) {
+                    stash = NbtIo.readCompressed(new ByteArrayInputStream(stored));
+                    upgradeItems(stash);
+                }
+            } catch (IOException e) {
+                DimensionMod.LOGGER.error("Failed to read the loot stash of " + id, e);
+            }
+        }
+        cache.put(id, stash);
+        return stash;
+    }
+
+    // Brings hauls saved by an older game version up to the current one; the stored copy is only
+    // rewritten with the stash's next haul
+    private static void upgradeItems(CompoundTag stash) {
+        int current = SharedConstants.getCurrentVersion().getDataVersion().getVersion();
+        ListTag hauls = stash.getList("hauls", Tag.TAG_COMPOUND);
+        for (int i = 0; i < hauls.size(); i++) {
+            CompoundTag haul = hauls.getCompound(i);
+            // Hauls from before versions were recorded were all saved by the version this mod shipped for
+            int version = haul.contains("DataVersion", Tag.TAG_ANY_NUMERIC) ? haul.getInt("DataVersion") : current;
+            if (version >= current)
+                continue;
+
+            ListTag items = haul.getList("items", Tag.TAG_COMPOUND);
+            ListTag upgraded = new ListTag();
+            for (int j = 0; j < items.size(); j++) {
+                upgraded.add(DataFixers.getDataFixer().update(References.ITEM_STACK,
+                        new Dynamic<>(NbtOps.INSTANCE, items.getCompound(j)), version, current).getValue());
+            }
+            haul.put("items", upgraded);
+            haul.putInt("DataVersion", current);
+        }
+    }
+
+    private static void flush() {
+        flushScheduled = false;
+        if (dirty.isEmpty() || store == null)
+            return;
+
+        Map<UUID, byte[]> values = new HashMap<>(dirty.size());
+        try {
+            for (Map.Entry<UUID, CompoundTag> entry : dirty.entrySet()) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                NbtIo.writeCompressed(entry.getValue(), bytes);
+                values.put(entry.getKey(), bytes.toByteArray());
+            }
+            store.putAll(values);
+            dirty.clear();
+            retryDelayMillis = 0;
+        } catch (IOException e) {
+            // Left dirty; new hauls join the retry instead of scheduling their own flush
+            retryDelayMillis = Math.min(MAX_RETRY_DELAY_MILLIS,
+                    retryDelayMillis == 0 ? Math.max(1000, Config.stashFlushDelayMillis) : retryDelayMillis * 2);
+            DimensionMod.LOGGER.error("Failed to write " + values.size() + " loot stashes, trying again in "
+                    + retryDelayMillis + " ms", e);
+            // When stopping, this was the last flush; there is nothing left to retry it
+            ScheduledThreadPoolExecutor current = executor;
+            if (current != null && !current.isShutdown()) {
+                flushScheduled = true;
+                current.schedule(LootStash::flush, retryDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package net.playwright.extraction_dimensions;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The world-changing actions of one match, collected while its bookkeeping runs and applied afterwards
+ * on the server thread.
+ * <p>
+ * While {@link #begin()} is in effect, {@link #submit} only records the action; {@link #apply()} then
+ * runs them in the order they were submitted. Outside of that window actions run straight away, so
+ * code reached from events on the server thread behaves as before. Each action carries a kind, and
+ * the number applied per kind is kept for stats. For comparing bookkeeping modes, {@link #keepHistory}
+ * also records every applied action with the player slot and target it was submitted with.
+ */
+public class MatchCommandBuffer {
+
+    public static final String TELEPORT = "teleport";
+    public static final String EXTRACT = "extract";
+    public static final String KILL = "kill";
+    public static final String RELEASE = "release";
+    public static final String END = "end";
+    // Work that reads or changes chunks and has to happen on the server thread as a whole
+    public static final String SERVER_THREAD = "server_thread";
+
+    // Read when a command is applied; only for tests, which turn it on before starting their matches
+    public static boolean keepHistory = false;
+
+    /**
+     * An applied action as it was submitted.
+     *
+     * @param slot   the player slot it was for, or -1 for the whole match
+     * @param target what it was for besides the player, e.g. when a teleport lets them go, or null
+     */
+    public record Applied(String kind, int slot, Object target) {
+    }
+
+    private final List<String> kinds = new ArrayList<>();
+    private final IntArrayList slots = new IntArrayList();
+    private final List<Object> targets = new ArrayList<>();
+    private final List<Runnable> actions = new ArrayList<>();
+    private final Object2IntOpenHashMap<String> appliedCounts = new Object2IntOpenHashMap<>();
+    private final List<Applied> history = new ArrayList<>();
+    private boolean deferring = false;
+
+    /**
+     * Starts collecting actions instead of running them.
+     */
+    void begin() {
+        deferring = true;
+    }
+
+    /**
+     * Runs {@code action} now, or records it for {@link #apply()} while collecting.
+     */
+    void submit(String kind, Runnable action) {
+        submit(kind, -1, null, action);
+    }
+
+    /**
+     * Like {@link #submit(String, Runnable)}, for an action on one player.
+     */
+    void submit(String kind, int slot, Object target, Runnable action) {
+        if (deferring) {
+            kinds.add(kind);
+            slots.add(slot);
+            targets.add(target);
+            actions.add(action);
+        } else {
+            run(kind, slot, target, action);
+        }
+    }
+
+    /**
+     * Stops collecting and runs everything that was collected, in order. Server thread only.
+     */
+    void apply() {
+        deferring = false;
+        // Actions submitted from here on run immediately, so the lists don't change while we walk them
+        for (int i = 0; i < actions.size(); i++) {
+            run(kinds.get(i), slots.getInt(i), targets.get(i), actions.get(i));
+        }
+        kinds.clear();
+        slots.clear();
+        targets.clear();
+        actions.clear();
+    }
+
+    private void run(String kind, int slot, Object target, Runnable action) {
+        try {
+            action.run();
+        } catch (Exception e) {
+            DimensionMod.LOGGER.error("Match command '" + kind + "' failed", e);
+        }
+        appliedCounts.addTo(kind, 1);
+        if (keepHistory) {
+            history.add(new Applied(kind, slot, target));
+        }
+    }
+
+    public int size() {
+        return actions.size();
+    }
+
+    public Object2IntMap<String> getAppliedCounts() {
+        return appliedCounts;
+    }
+
+    /**
+     * @return the applied actions in the order they ran, if {@link #keepHistory} was on
+     */
+    public List<Applied> getHistory() {
+        return history;
+    }
+}
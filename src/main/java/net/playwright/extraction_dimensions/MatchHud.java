@@ -0,0 +1,310 @@
+package net.playwright.extraction_dimensions;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.network.protocol.game.ClientGamePacketListener;
+import net.minecraft.network.protocol.game.ClientboundBossEventPacket;
+import net.minecraft.network.protocol.game.ClientboundBundlePacket;
+import net.minecraft.network.protocol.game.ClientboundSystemChatPacket;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.util.Mth;
+import net.minecraft.world.BossEvent;
+import net.playwright.extraction_dimensions.metrics.MatchMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * What a match shows its players besides the world: a boss bar with the match timer, shared by
+ * everyone still in the match, an extraction bar per extracting player, and chat messages.
+ * <p>
+ * Bars only count as changed when the text they show changes; the timer counts down in whole minutes,
+ * then in steps of five seconds and only then in seconds, and its fill moves with the text. Changes
+ * and messages are collected until {@link #flush}, which runs once per tick on the server thread and
+ * sends each player everything for them as a single bundle.
+ * <p>
+ * The setters may be called from the match's bookkeeping, on or off the server thread, but never at
+ * the same time as {@link #flush}. Neither they nor a flush allocate anything unless there is
+ * something new to send: the timer's texts are built once per phase, and the packet lists are kept
+ * from flush to flush.
+ */
+public class MatchHud {
+
+    private final MatchMetrics metrics;
+    private final Bar timer = new Bar(BossEvent.BossBarColor.YELLOW);
+    // By slot; created on the slot's first extraction
+    private Bar[] extractionBars = new Bar[8];
+    // Seconds and prefix the timer currently shows
+    private int timerShown = -1;
+    private String timerPrefix = "";
+    // Every text the timer can show with timerPrefix, by labelIndex
+    private Component[] timerLabels = new Component[0];
+    private final List<ServerPlayer> messageRecipients = new ArrayList<>();
+    private final List<Component> messages = new ArrayList<>();
+
+    // Reused by flush: a packet list for every player that has been sent anything, emptied after each send
+    private final List<ServerPlayer> recipients = new ArrayList<>();
+    private final List<List<Packet<ClientGamePacketListener>>> pending = new ArrayList<>();
+    private final Reference2IntOpenHashMap<ServerPlayer> recipientIndex = new Reference2IntOpenHashMap<>();
+    // The players a bar is being synced for, as a set to look them up and as a list to go through them
+    private final ReferenceOpenHashSet<ServerPlayer> audience = new ReferenceOpenHashSet<>();
+    private final List<ServerPlayer> audienceList = new ArrayList<>();
+
+    public MatchHud(MatchMetrics metrics) {
+        this.metrics = metrics;
+        recipientIndex.defaultReturnValue(-1);
+    }
+
+    /**
+     * Shows {@code prefix} followed by the time left, e.g. "Time left: 12 min".
+     */
+    void setTimer(String prefix, long ticksLeft, int totalTicks) {
+        int seconds = (int) Math.max(0, (ticksLeft + 19) / 20);
+        // Round up, so the bar never reads 0 while there's time left
+        int shown = seconds > 60 ? (seconds + 59) / 60 * 60 : seconds > 5 ? (seconds + 4) / 5 * 5 : seconds;
+        timer.requested = true;
+        timer.visible = true;
+        if (shown == timerShown && prefix.equals(timerPrefix))
+            return;
+
+        if (!prefix.equals(timerPrefix)) {
+            timerLabels = buildLabels(prefix, totalTicks);
+        }
+        timerShown = shown;
+        timerPrefix = prefix;
+        int index = labelIndex(shown);
+        // Only more time left than the phase has, e.g. after a restart, misses the built texts
+        Component label = index < timerLabels.length ? timerLabels[index] : Component.literal(prefix + formatTime(shown));
+        timer.update(label, Mth.clamp(shown * 20f / Math.max(1, totalTicks), 0f, 1f));
+    }
+
+    private static Component[] buildLabels(String prefix, int totalTicks) {
+        int maxSeconds = (Math.max(0, totalTicks) + 19) / 20;
+        Component[] labels = new Component[labelIndex(Math.max(60, (maxSeconds + 59) / 60 * 60)) + 1];
+        for (int shown = 0; shown <= 60; shown += shown < 5 ? 1 : 5) {
+            labels[labelIndex(shown)] = Component.literal(prefix + formatTime(shown));
+        }
+        for (int shown = 120; labelIndex(shown) < labels.length; shown += 60) {
+            labels[labelIndex(shown)] = Component.literal(prefix + formatTime(shown));
+        }
+        return labels;
+    }
+
+    // Up to a minute the timer shows seconds, then whole minutes
+    private static int labelIndex(int shown) {
+        return shown <= 60 ? shown : 59 + shown / 60;
+    }
+
+    private static String formatTime(int shown) {
+        return shown >= 60 ? shown / 60 + " min" : shown + "s";
+    }
+
+    /**
+     * Shows a label on the timer instead of a time, e.g. while the warmup is held up.
+     */
+    void setTimerLabel(Component label) {
+        timer.requested = true;
+        timer.visible = true;
+        timerShown = -1;
+        timer.update(label, 0f);
+    }
+
+    void setExtraction(int slot, Component label, float progress) {
+        if (slot >= extractionBars.length) {
+            extractionBars = Arrays.copyOf(extractionBars, Math.max(slot + 1, extractionBars.length * 2));
+        }
+        Bar bar = extractionBars[slot];
+        if (bar == null) {
+            bar = extractionBars[slot] = new Bar(BossEvent.BossBarColor.GREEN);
+        }
+        bar.requested = true;
+        bar.visible = true;
+        bar.update(label, progress);
+    }
+
+    void clearExtraction(int slot) {
+        Bar bar = slot < extractionBars.length ? extractionBars[slot] : null;
+        if (bar != null) {
+            bar.visible = false;
+        }
+    }
+
+    /**
+     * Queues a chat message for the next flush.
+     */
+    void message(ServerPlayer player, Component message) {
+        messageRecipients.add(player);
+        messages.add(message);
+    }
+
+    /**
+     * Sends what changed since the last flush. The timer goes to every player still in the match, an
+     * extraction bar to the player in its slot. Server thread only.
+     */
+    void flush(ServerPlayer[] handles, boolean[] inMatch, int playerCount) {
+        for (int i = 0; i < messages.size(); i++) {
+            ServerPlayer player = messageRecipients.get(i);
+            if (!player.hasDisconnected()) {
+                queue(player, new ClientboundSystemChatPacket(messages.get(i), false));
+            }
+        }
+        int updates = messages.size();
+        messageRecipients.clear();
+        messages.clear();
+
+        clearAudience();
+        for (int slot = 0; slot < playerCount; slot++) {
+            ServerPlayer player = handles[slot];
+            if (inMatch[slot] && player != null && !player.hasDisconnected()) {
+                addToAudience(player);
+            }
+        }
+        updates += sync(timer);
+
+        for (int slot = 0; slot < extractionBars.length; slot++) {
+            Bar bar = extractionBars[slot];
+            if (bar == null)
+                continue;
+            clearAudience();
+            ServerPlayer player = slot < playerCount ? handles[slot] : null;
+            if (player != null && inMatch[slot] && !player.hasDisconnected()) {
+                addToAudience(player);
+            }
+            updates += sync(bar);
+        }
+
+        int packets = 0;
+        int sends = 0;
+        for (int i = recipients.size() - 1; i >= 0; i--) {
+            ServerPlayer player = recipients.get(i);
+            List<Packet<ClientGamePacketListener>> queued = pending.get(i);
+            if (!queued.isEmpty()) {
+                // A bundle holds on to its list until the connection has encoded it, so it gets a copy
+                player.connection.send(queued.size() == 1 ? queued.get(0) : new ClientboundBundlePacket(List.copyOf(queued)));
+                packets += queued.size();
+                sends++;
+                queued.clear();
+            }
+            if (player.hasDisconnected()) {
+                removeRecipient(i);
+            }
+        }
+        if (updates > 0 || packets > 0) {
+            metrics.hudFlushed(updates, packets, sends);
+        }
+    }
+
+    private void clearAudience() {
+        audience.clear();
+        audienceList.clear();
+    }
+
+    private void addToAudience(ServerPlayer player) {
+        if (audience.add(player)) {
+            audienceList.add(player);
+        }
+    }
+
+    // Brings the bar's viewers in line with the audience; returns how many players were meant to get an update
+    private int sync(Bar bar) {
+        for (int i = bar.viewerList.size() - 1; i >= 0; i--) {
+            ServerPlayer viewer = bar.viewerList.get(i);
+            if (!bar.visible || !audience.contains(viewer)) {
+                bar.removeViewer(i);
+                if (!viewer.hasDisconnected()) {
+                    queue(viewer, ClientboundBossEventPacket.createRemovePacket(bar.getId()));
+                }
+            }
+        }
+
+        int updates = bar.requested ? audienceList.size() : 0;
+        if (bar.visible) {
+            for (int i = 0; i < audienceList.size(); i++) {
+                ServerPlayer player = audienceList.get(i);
+                if (bar.addViewer(player)) {
+                    queue(player, ClientboundBossEventPacket.createAddPacket(bar));
+                } else {
+                    if (bar.nameChanged) {
+                        queue(player, ClientboundBossEventPacket.createUpdateNamePacket(bar));
+                    }
+                    if (bar.progressChanged) {
+                        queue(player, ClientboundBossEventPacket.createUpdateProgressPacket(bar));
+                    }
+                }
+            }
+        }
+        bar.requested = false;
+        bar.nameChanged = false;
+        bar.progressChanged = false;
+        return updates;
+    }
+
+    private void queue(ServerPlayer player, Packet<ClientGamePacketListener> packet) {
+        int index = recipientIndex.getInt(player);
+        if (index < 0) {
+            index = recipients.size();
+            recipientIndex.put(player, index);
+            recipients.add(player);
+            pending.add(new ArrayList<>(4));
+        }
+        pending.get(index).add(packet);
+    }
+
+    // Swaps the last recipient into the gap; its list is empty by the time this runs
+    private void removeRecipient(int index) {
+        int last = recipients.size() - 1;
+        recipientIndex.removeInt(recipients.get(index));
+        if (index != last) {
+            ServerPlayer moved = recipients.get(last);
+            recipients.set(index, moved);
+            pending.set(index, pending.get(last));
+            recipientIndex.put(moved, index);
+        }
+        recipients.remove(last);
+        pending.remove(last);
+    }
+
+    // A boss bar that remembers what changed instead of sending it straight away
+    private static class Bar extends BossEvent {
+        // Who has been sent the bar, as a set to look them up and as a list to go through them
+        private final ReferenceOpenHashSet<ServerPlayer> viewers = new ReferenceOpenHashSet<>();
+        private final List<ServerPlayer> viewerList = new ArrayList<>();
+        private boolean visible = false;
+        // Set on every update, changed or not, for the stats
+        private boolean requested = false;
+        private boolean nameChanged = false;
+        private boolean progressChanged = false;
+
+        private Bar(BossBarColor color) {
+            super(Mth.createInsecureUUID(), Component.empty(), color, BossBarOverlay.PROGRESS);
+        }
+
+        private boolean addViewer(ServerPlayer player) {
+            if (!viewers.add(player))
+                return false;
+            viewerList.add(player);
+            return true;
+        }
+
+        private void removeViewer(int index) {
+            viewers.remove(viewerList.get(index));
+            int last = viewerList.size() - 1;
+            viewerList.set(index, viewerList.get(last));
+            viewerList.remove(last);
+        }
+
+        private void update(Component name, float progress) {
+            if (!name.equals(getName())) {
+                setName(name);
+                nameChanged = true;
+            }
+            if (progress != getProgress()) {
+                setProgress(progress);
+                progressChanged = true;
+            }
+        }
+    }
+}
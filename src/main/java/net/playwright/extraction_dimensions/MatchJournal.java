@@ -0,0 +1,583 @@
+package net.playwright.extraction_dimensions;
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.level.storage.LevelResource;
+import net.minecraftforge.event.server.ServerStartingEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of what happened to each running match, so matches survive a restart or crash.
+ * <p>
+ * Each event is a small binary record: {@code [length][type][match number][payload][crc32]}. Callers
+ * only encode the record, in a buffer of their thread's own, and copy it into the writer's pending
+ * buffer; a single writer thread swaps that buffer for an empty one, appends what was in it, forces it
+ * to disk once per batch and keeps its own model of the live matches. Both buffers are kept, so
+ * recording an event allocates nothing once they have grown to the usual batch size. When enough
+ * records have piled up the writer rewrites the file from that model, so the journal stays about as
+ * big as the matches it describes.
+ * <p>
+ * On {@link ServerStartingEvent} the journal is read back in one go and every match that hadn't ended
+ * is handed to {@link MatchManager#recoverMatch}. A torn record at the end of the file (from a crash in
+ * the middle of a write) ends the replay; everything before it is kept.
+ */
+@Mod.EventBusSubscriber(modid = DimensionMod.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class MatchJournal {
+
+    private static final byte CREATE = 1;
+    private static final byte JOIN = 2;
+    private static final byte PHASE = 3;
+    private static final byte CLOCK = 4;
+    private static final byte EXTRACT_START = 5;
+    private static final byte EXTRACT_PROGRESS = 6;
+    private static final byte EXTRACT_CANCEL = 7;
+    private static final byte EXTRACT_COMPLETE = 8;
+    private static final byte END = 9;
+
+    // Type and match number, at the start of every record
+    private static final int HEADER_BYTES = 1 + 8;
+    // Longest record, a JOIN
+    private static final int MAX_RECORD_BYTES = HEADER_BYTES + 4 + 16;
+    private static final long NO_ZONE = Long.MIN_VALUE;
+    // How often running matches note how far into their current phase they are
+    static final int CLOCK_INTERVAL_TICKS = 100;
+
+    private static volatile Writer writer;
+    // Where each thread encodes its records before they are copied to the writer
+    private static final ThreadLocal<ByteBuffer> scratch = ThreadLocal.withInitial(() -> ByteBuffer.allocate(MAX_RECORD_BYTES));
+    // Match ids recovered from the journal at startup, kept until the server stops
+    private static final Set<String> recovered = new HashSet<>();
+
+    static Path getPath(MinecraftServer server) {
+        return server.getWorldPath(LevelResource.ROOT).resolve("extraction_matches.journal");
+    }
+
+    // At normal priority, after MatchRecorder has started its drainer, which recovered matches record to
+    @SubscribeEvent
+    public static void onServerStarting(ServerStartingEvent event) {
+        if (!Config.journalEnabled)
+            return;
+
+        MinecraftServer server = event.getServer();
+        Path path = getPath(server);
+        long start = System.nanoTime();
+        Replay replay;
+        try {
+            replay = Replay.read(path);
+        } catch (IOException e) {
+            DimensionMod.LOGGER.error("Failed to read the match journal, starting without it", e);
+            replay = new Replay();
+        }
+        long replayNanos = System.nanoTime() - start;
+
+        // Records from recovery (e.g. matches that ran out of time) queue up until the writer starts, so
+        // it doesn't change the replayed matches while we read them
+        writer = new Writer(path, replay.matches);
+        int recoveredCount = 0;
+        for (JournalMatch entry : new ArrayList<>(replay.matches.values())) {
+            if (MatchManager.recoverMatch(server, entry) != null) {
+                recovered.add("match_" + entry.number);
+                recoveredCount++;
+            } else {
+                ended(entry.number);
+            }
+        }
+        writer.start();
+        DimensionMod.LOGGER.info("Replayed {} journal records ({} live matches) in {} ms, recovered {} matches in {} ms",
+                replay.records, replay.matches.size(), replayNanos / 1_000_000, recoveredCount,
+                (System.nanoTime() - start - replayNanos) / 1_000_000);
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+        recovered.clear();
+    }
+
+    /**
+     * @return true if the match with this id was rebuilt from the journal when the server started
+     */
+    public static boolean isRecovered(String matchId) {
+        return recovered.contains(matchId);
+    }
+
+    static void created(long match, int durationTicks) {
+        append(record(CREATE, match, 4).putInt(durationTicks));
+    }
+
+    static void joined(long match, int slot, UUID player) {
+        append(record(JOIN, match, 4 + 16).putInt(slot)
+                .putLong(player.getMostSignificantBits()).putLong(player.getLeastSignificantBits()));
+    }
+
+    static void phase(long match, MatchManager.Match.MatchState state) {
+        append(record(PHASE, match, 1).put((byte) state.ordinal()));
+    }
+
+    static void clock(long match, int ticksInPhase) {
+        append(record(CLOCK, match, 4).putInt(ticksInPhase));
+    }
+
+    static void extractionStarted(long match, int slot, BlockPos zone) {
+        append(record(EXTRACT_START, match, 4 + 8).putInt(slot).putLong(zone != null ? zone.asLong() : NO_ZONE));
+    }
+
+    static void extractionProgress(long match, int slot, int secondsElapsed) {
+        append(record(EXTRACT_PROGRESS, match, 4 + 4).putInt(slot).putInt(secondsElapsed));
+    }
+
+    static void extractionCancelled(long match, int slot) {
+        append(record(EXTRACT_CANCEL, match, 4).putInt(slot));
+    }
+
+    static void extracted(long match, int slot) {
+        append(record(EXTRACT_COMPLETE, match, 4).putInt(slot));
+    }
+
+    static void ended(long match) {
+        append(record(END, match, 0));
+    }
+
+    /**
+     * Sets up the calling thread's record buffer ahead of its first record, for threads that must not
+     * allocate once they are running matches.
+     */
+    static void prepareThread() {
+        scratch.get();
+    }
+
+    // The calling thread's scratch buffer, with the header written; the caller puts the payload after it
+    private static ByteBuffer record(byte type, long match, int payloadBytes) {
+        return scratch.get().clear().limit(HEADER_BYTES + payloadBytes).put(type).putLong(match);
+    }
+
+    // Only waits for other threads copying a record in; the writer does all the I/O. Safe from any thread.
+    private static void append(ByteBuffer record) {
+        Writer current = writer;
+        // A writer that has failed or stopped would only let the buffer grow
+        if (current != null && current.running) {
+            current.add(record);
+        }
+    }
+
+    /**
+     * What the journal knows about one match that hasn't ended.
+     */
+    public static final class JournalMatch {
+        private final long number;
+        private int durationTicks;
+        private MatchManager.Match.MatchState state = MatchManager.Match.MatchState.WARMUP;
+        private int ticksInPhase;
+        private final List<UUID> players = new ArrayList<>();
+        private final BitSet extracted = new BitSet();
+        // Extractions in progress, by slot
+        private final Int2IntOpenHashMap extractionSeconds = new Int2IntOpenHashMap();
+        private final Int2LongOpenHashMap extractionZones = new Int2LongOpenHashMap();
+
+        private JournalMatch(long number) {
+            this.number = number;
+        }
+
+        // For building journals outside a running server, e.g. in benchmarks
+        JournalMatch(long number, int durationTicks, MatchManager.Match.MatchState state, int ticksInPhase) {
+            this.number = number;
+            this.durationTicks = durationTicks;
+            this.state = state;
+            this.ticksInPhase = ticksInPhase;
+        }
+
+        public long getNumber() {
+            return number;
+        }
+
+        public int getDurationTicks() {
+            return durationTicks;
+        }
+
+        public MatchManager.Match.MatchState getState() {
+            return state;
+        }
+
+        /**
+         * @return how far into its current phase the match was at its last clock record
+         */
+        public int getTicksInPhase() {
+            return ticksInPhase;
+        }
+
+        public List<UUID> getPlayers() {
+            return players;
+        }
+
+        public boolean isExtracted(int slot) {
+            return extracted.get(slot);
+        }
+
+        /**
+         * @return the seconds already survived of the slot's extraction, or -1 if it wasn't extracting
+         */
+        public int getExtractionSeconds(int slot) {
+            return extractionSeconds.getOrDefault(slot, -1);
+        }
+
+        /**
+         * @return the extraction point of the slot's extraction, or null if it may complete anywhere
+         */
+        public BlockPos getExtractionZone(int slot) {
+            long zone = extractionZones.getOrDefault(slot, NO_ZONE);
+            return zone == NO_ZONE ? null : BlockPos.of(zone);
+        }
+
+        // The shortest list of records that rebuilds this entry
+        private void writeTo(RecordBuffer out) {
+            out.add(record(CREATE, number, 4).putInt(durationTicks));
+            for (int slot = 0; slot < players.size(); slot++) {
+                UUID player = players.get(slot);
+                out.add(record(JOIN, number, 4 + 16).putInt(slot)
+                        .putLong(player.getMostSignificantBits()).putLong(player.getLeastSignificantBits()));
+            }
+            if (state != MatchManager.Match.MatchState.WARMUP) {
+                out.add(record(PHASE, number, 1).put((byte) state.ordinal()));
+            }
+            out.add(record(CLOCK, number, 4).putInt(ticksInPhase));
+            for (int slot = extracted.nextSetBit(0); slot >= 0; slot = extracted.nextSetBit(slot + 1)) {
+                out.add(record(EXTRACT_COMPLETE, number, 4).putInt(slot));
+            }
+            for (Int2IntMap.Entry extraction : extractionSeconds.int2IntEntrySet()) {
+                int slot = extraction.getIntKey();
+                out.add(record(EXTRACT_START, number, 4 + 8).putInt(slot)
+                        .putLong(extractionZones.getOrDefault(slot, NO_ZONE)));
+                out.add(record(EXTRACT_PROGRESS, number, 4 + 4).putInt(slot).putInt(extraction.getIntValue()));
+            }
+        }
+    }
+
+    // Applies one record (without its length and checksum) to the live matches
+    private static void apply(Long2ObjectLinkedOpenHashMap<JournalMatch> matches, ByteBuffer record) {
+        byte type = record.get();
+        long number = record.getLong();
+        if (type == CREATE) {
+            JournalMatch match = new JournalMatch(number);
+            match.durationTicks = record.getInt();
+            matches.put(number, match);
+            return;
+        }
+
+        JournalMatch match = matches.get(number);
+        if (match == null)
+            return;
+        switch (type) {
+            case JOIN -> {
+                int slot = record.getInt();
+                // Slots are handed out in order, so anything else is a duplicate
+                if (slot == match.players.size()) {
+                    match.players.add(new UUID(record.getLong(), record.getLong()));
+                }
+            }
+            case PHASE -> {
+                match.state = MatchManager.Match.MatchState.values()[record.get()];
+                match.ticksInPhase = 0;
+            }
+            case CLOCK -> match.ticksInPhase = record.getInt();
+            case EXTRACT_START -> {
+                int slot = record.getInt();
+                match.extractionSeconds.put(slot, 0);
+                match.extractionZones.put(slot, record.getLong());
+            }
+            case EXTRACT_PROGRESS -> {
+                int slot = record.getInt();
+                if (match.extractionSeconds.containsKey(slot)) {
+                    match.extractionSeconds.put(slot, record.getInt());
+                }
+            }
+            case EXTRACT_CANCEL, EXTRACT_COMPLETE -> {
+                int slot = record.getInt();
+                match.extractionSeconds.remove(slot);
+                match.extractionZones.remove(slot);
+                if (type == EXTRACT_COMPLETE) {
+                    match.extracted.set(slot);
+                }
+            }
+            case END -> matches.remove(number);
+            default -> DimensionMod.LOGGER.warn("Unknown match journal record type {}", type);
+        }
+    }
+
+    /**
+     * Reads a journal file without recovering anything from it.
+     */
+    static Collection<JournalMatch> read(Path path) throws IOException {
+        return Replay.read(path).matches.values();
+    }
+
+    /**
+     * Replaces the journal at {@code path} with one that describes {@code entries}. Blocks, so it is
+     * not for use while the journal is open.
+     */
+    static void write(Path path, Collection<JournalMatch> entries) throws IOException {
+        Long2ObjectLinkedOpenHashMap<JournalMatch> matches = new Long2ObjectLinkedOpenHashMap<>();
+        for (JournalMatch entry : entries) {
+            matches.put(entry.number, entry);
+        }
+        Writer writer = new Writer(path, matches);
+        try {
+            writer.compact();
+        } finally {
+            writer.closeChannel();
+        }
+    }
+
+    private static class Replay {
+        private final Long2ObjectLinkedOpenHashMap<JournalMatch> matches = new Long2ObjectLinkedOpenHashMap<>();
+        private int records = 0;
+
+        // The whole file is read at once; even a journal about to be compacted is only a few megabytes
+        private static Replay read(Path path) throws IOException {
+            Replay replay = new Replay();
+            if (!Files.exists(path))
+                return replay;
+
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= 4) {
+                int length = buffer.getInt(buffer.position());
+                if (length < HEADER_BYTES || buffer.remaining() < 4 + length + 4)
+                    break;
+
+                int start = buffer.position() + 4;
+                crc.reset();
+                crc.update(buffer.array(), start, length);
+                if ((int) crc.getValue() != buffer.getInt(start + length))
+                    break;
+
+                apply(replay.matches, buffer.slice(start, length));
+                buffer.position(start + length + 4);
+                replay.records++;
+            }
+            if (buffer.hasRemaining()) {
+                DimensionMod.LOGGER.warn("Match journal has {} unreadable bytes at the end, probably from a crash; ignoring them",
+                        buffer.remaining());
+            }
+            return replay;
+        }
+    }
+
+    // Records back to back as [length][record], in a buffer that is kept and grows as needed
+    private static class RecordBuffer {
+        private ByteBuffer bytes = ByteBuffer.allocate(16 * 1024);
+        private int records = 0;
+
+        // Copies the record between 0 and its position
+        private void add(ByteBuffer record) {
+            int length = record.position();
+            if (bytes.remaining() < 4 + length) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(bytes.capacity() * 2, bytes.position() + 4 + length));
+                bytes = grown.put(bytes.flip());
+            }
+            bytes.putInt(length).put(record.array(), record.arrayOffset(), length);
+            records++;
+        }
+
+        private boolean isEmpty() {
+            return records == 0;
+        }
+
+        private void clear() {
+            bytes.clear();
+            records = 0;
+        }
+    }
+
+    private static class Writer implements Runnable {
+        private final Path path;
+        private final Path compactPath;
+        private final Long2ObjectLinkedOpenHashMap<JournalMatch> matches;
+        private final Thread thread;
+        private final CRC32 crc = new CRC32();
+        // Filled by append under the writer's lock, then swapped with batch, which the writer empties
+        private RecordBuffer pending = new RecordBuffer();
+        private RecordBuffer batch = new RecordBuffer();
+        private boolean waiting = false;
+        private ByteBuffer frame = ByteBuffer.allocateDirect(64 * 1024);
+        private FileChannel channel;
+        private long recordsSinceCompaction = 0;
+        private volatile boolean running = true;
+
+        private Writer(Path path, Long2ObjectLinkedOpenHashMap<JournalMatch> matches) {
+            this.path = path;
+            this.compactPath = path.resolveSibling(path.getFileName() + ".compact");
+            this.matches = matches;
+            this.thread = new Thread(this, "Extraction-Journal");
+            this.thread.setDaemon(true);
+        }
+
+        private void start() {
+            thread.start();
+        }
+
+        private synchronized void add(ByteBuffer record) {
+            pending.add(record);
+            if (waiting) {
+                notify();
+            }
+        }
+
+        // Swaps what has been appended into batch, waiting up to 100ms for something to arrive
+        private synchronized boolean takePending() throws InterruptedException {
+            if (pending.isEmpty() && running) {
+                waiting = true;
+                try {
+                    wait(100);
+                } finally {
+                    waiting = false;
+                }
+            }
+            if (pending.isEmpty())
+                return false;
+            RecordBuffer taken = pending;
+            pending = batch;
+            batch = taken;
+            return true;
+        }
+
+        private synchronized int pendingRecords() {
+            return pending.records;
+        }
+
+        @Override
+        public void run() {
+            try {
+                // Starts from a compacted copy, which also drops any torn record at the end
+                compact();
+                while (running || pendingRecords() > 0) {
+                    if (!takePending())
+                        continue;
+                    writeBatch();
+
+                    if (recordsSinceCompaction >= Config.journalCompactionRecords) {
+                        compact();
+                    }
+                    // Let the next batch build up; records keep queueing while we wait
+                    if (running && Config.journalSyncIntervalMillis > 0) {
+                        Thread.sleep(Config.journalSyncIntervalMillis);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | RuntimeException e) {
+                DimensionMod.LOGGER.error("Match journal writer failed; matches will not survive a restart", e);
+            } finally {
+                running = false;
+                closeChannel();
+            }
+        }
+
+        private void writeBatch() throws IOException {
+            ByteBuffer records = batch.bytes.flip();
+            byte[] array = records.array();
+            while (records.hasRemaining()) {
+                int length = records.getInt();
+                int start = records.position();
+                if (frame.remaining() < 4 + length + 4) {
+                    flushFrame();
+                    if (frame.capacity() < 4 + length + 4) {
+                        frame = ByteBuffer.allocateDirect(4 + length + 4);
+                    }
+                }
+                crc.reset();
+                crc.update(array, start, length);
+                frame.putInt(length).put(array, start, length).putInt((int) crc.getValue());
+                apply(matches, records.slice(start, length));
+                records.position(start + length);
+            }
+            flushFrame();
+            // One fsync for the whole batch
+            channel.force(false);
+            recordsSinceCompaction += batch.records;
+            batch.clear();
+        }
+
+        private void flushFrame() throws IOException {
+            frame.flip();
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+            frame.clear();
+        }
+
+        // Rewrites the journal from the live matches and swaps it in, then keeps appending to it
+        private void compact() throws IOException {
+            closeChannel();
+            // batch is empty between batches, and the model is only changed by this thread
+            for (JournalMatch match : matches.values()) {
+                match.writeTo(batch);
+            }
+
+            channel = FileChannel.open(compactPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            // Re-applying these to the model changes nothing
+            writeBatch();
+            channel.close();
+
+            try {
+                Files.move(compactPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(compactPath, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            recordsSinceCompaction = 0;
+        }
+
+        private void closeChannel() {
+            if (channel == null)
+                return;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                DimensionMod.LOGGER.error("Failed to close the match journal", e);
+            }
+            channel = null;
+        }
+
+        // Writes out what is still queued and waits for the writer to finish
+        private void close() {
+            running = false;
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (thread.isAlive()) {
+                DimensionMod.LOGGER.warn("Match journal writer did not finish in time; {} records not written",
+                        pendingRecords());
+            }
+        }
+    }
+}
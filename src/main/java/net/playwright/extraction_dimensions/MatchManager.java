@@ -1,6 +1,8 @@
 package net.playwright.extraction_dimensions;
 
-import commoble.infiniverse.api.InfiniverseAPI;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.Util;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.registries.Registries;
 import net.minecraft.network.chat.Component;
@@ -11,59 +13,230 @@ import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.util.RandomSource;
 import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
 import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.level.storage.LevelResource;
 import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.living.LivingDeathEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.event.level.ChunkEvent;
+import net.minecraftforge.event.server.ServerStartedEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.LogicalSide;
 import net.minecraftforge.fml.common.Mod;
+import net.playwright.extraction_dimensions.coordinator.Coordinator;
+import net.playwright.extraction_dimensions.metrics.MatchMetrics;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Mod.EventBusSubscriber(modid = DimensionMod.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
 public class MatchManager {
 
     private static final Map<ResourceKey<Level>, Match> activeMatches = new ConcurrentHashMap<>();
+    // Which match each player is in, so player events don't have to search every match
+    private static final Map<UUID, Match> playerMatches = new HashMap<>();
     private static final RandomSource random = RandomSource.create();
+    // Running matches in the order they were created, which is the order their commands are applied in
+    private static final List<Match> matchOrder = new ArrayList<>();
+    // matchOrder as of the last frame, reused from tick to tick; rebuilt when matchOrder changes
+    private static Match[] frameMatches = new Match[16];
+    private static int frameMatchCount = 0;
+    private static boolean matchOrderChanged = false;
+    // Evaluates match bookkeeping when Config.parallelBookkeeping is on; created on first use
+    private static BookkeepingPool bookkeepingPool;
 
-    public static void startMatch(MinecraftServer server, List<ServerPlayer> players) {
-        // Create a unique dimension for this match
-        String matchId = "match_" + System.currentTimeMillis();
-        ResourceKey<Level> dimensionKey = ResourceKey.create(Registries.DIMENSION,
-                new ResourceLocation(DimensionMod.MODID, matchId));
+    /**
+     * Only for tests: while on, the bytes allocated by match bookkeeping are added up, see
+     * {@link #getBookkeepingAllocatedBytes} and {@link #getApplyAllocatedBytes}.
+     */
+    public static boolean trackAllocations = false;
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static long bookkeepingAllocatedBytes = 0;
+    private static long applyAllocatedBytes = 0;
 
-        // Use Infiniverse to create the dimension
-        InfiniverseAPI.get().getOrCreateLevel(server, dimensionKey, () -> TemporaryDimensionHelper.createLevel(server));
+    private static long lastMatchId = 0;
+    // Wall-clock time at which currentTick() was 0, or -1 before first use
+    private static long clockOrigin = -1;
 
-        // Wait for a tick to ensure dimension is ready (Infiniverse usually handles
-        // this immediately, but safe to queue)
-        // For simplicity, we'll assume it's ready or handle it in the next tick if
-        // needed.
-        // Actually, getOrCreateLevel returns the ServerLevel if it exists, or creates
-        // it.
+    /**
+     * @return the new match, or null if its dimension could not be created
+     */
+    public static Match startMatch(MinecraftServer server, List<? extends ServerPlayer> players) {
+        Match match = createMatch(server);
+        if (match == null)
+            return null;
 
-        ServerLevel level = server.getLevel(dimensionKey);
+        // Add players to match but don't teleport yet
+        Component message = Component.literal("Match found! Teleporting in "
+                + formatDuration(match.warmupTicks / 20) + "...");
+        for (ServerPlayer player : players) {
+            match.addPlayer(player);
+            player.sendSystemMessage(message);
+        }
+        match.prepare(players.size());
+        return match;
+    }
+
+    /**
+     * Starts a match for players who may not be on this server yet, as a match host does for the players
+     * a lobby assigned it. They are picked up as they log in during the warmup.
+     *
+     * @return the new match, or null if its dimension could not be created
+     */
+    public static Match startMatchFor(MinecraftServer server, List<UUID> playerIds) {
+        Match match = createMatch(server);
+        if (match == null)
+            return null;
+
+        for (UUID playerId : playerIds) {
+            ServerPlayer player = server.getPlayerList().getPlayer(playerId);
+            if (player != null) {
+                match.addPlayer(player);
+            } else if (!match.slots.containsKey(playerId)) {
+                MatchJournal.joined(match.number, match.addSlot(playerId, null), playerId);
+            }
+        }
+        match.prepare(playerIds.size());
+        return match;
+    }
+
+    private static Match createMatch(MinecraftServer server) {
+        // Take a pre-built dimension from the pool; this only creates one on the spot if the pool is empty
+        ServerLevel level = DimensionPool.acquire(server);
         if (level == null) {
-            DimensionMod.LOGGER.error("Failed to create dimension for match " + matchId);
-            return;
+            DimensionMod.LOGGER.error("Failed to create dimension for match");
+            return null;
         }
 
-        Match match = new Match(dimensionKey, server.getTickCount());
+        ResourceKey<Level> dimensionKey = level.dimension();
+        Match match = new Match(server, dimensionKey, currentTick());
         activeMatches.put(dimensionKey, match);
+        addToMatchOrder(match);
+        MatchJournal.created(match.number, match.durationTicks);
+        return match;
+    }
 
-        // Add players to match but don't teleport yet
-        for (ServerPlayer player : players) {
-            match.addPlayer(player.getUUID());
-            player.sendSystemMessage(Component.literal("Match found! Teleporting in 15 seconds..."));
+    private static String formatDuration(int seconds) {
+        if (seconds % 60 == 0)
+            return seconds == 60 ? "1 minute" : seconds / 60 + " minutes";
+        return seconds == 1 ? "1 second" : seconds + " seconds";
+    }
+
+    /**
+     * Creates a unique dimension key for a new match from a counter. The counter starts above every
+     * match id already in use or on disk (see {@link #onServerStarted}), so a new level never lands on
+     * a folder from an earlier run that is still waiting to be deleted.
+     */
+    static ResourceKey<Level> newMatchKey() {
+        return matchKey(++lastMatchId);
+    }
+
+    private static ResourceKey<Level> matchKey(long number) {
+        return ResourceKey.create(Registries.DIMENSION, new ResourceLocation(DimensionMod.MODID, "match_" + number));
+    }
+
+    /**
+     * Rebuilds a match from the journal after a restart. Its level is created again under the same key,
+     * a match in warmup starts its warmup over, and a running match continues with the time it had left.
+     * Players are picked up again as they log back in.
+     *
+     * @return the match, or null if it had run out of time or its level could not be created
+     */
+    static Match recoverMatch(MinecraftServer server, MatchJournal.JournalMatch entry) {
+        if (entry.getState() == Match.MatchState.PLAYING && entry.getTicksInPhase() >= entry.getDurationTicks())
+            return null;
+
+        ResourceKey<Level> dimensionKey = matchKey(entry.getNumber());
+        ServerLevel level = DimensionPool.createLevel(server, dimensionKey);
+        if (level == null)
+            return null;
+
+        Match match = new Match(server, dimensionKey, currentTick(), entry.getDurationTicks());
+        activeMatches.put(dimensionKey, match);
+        addToMatchOrder(match);
+        match.restore(level, entry);
+        return match;
+    }
+
+    /**
+     * The clock that match timers run on: the number of 50ms steps of wall-clock time since the server
+     * started. Unlike the server's tick count it keeps real time when ticks run long or match levels
+     * are throttled, so a 15 second countdown takes 15 seconds.
+     */
+    public static long currentTick() {
+        long now = Util.getMillis();
+        if (clockOrigin < 0) {
+            clockOrigin = now;
+        }
+        return (now - clockOrigin) / 50;
+    }
+
+    // Parses the number out of a match id, or returns -1 if it isn't one
+    static long parseMatchNumber(String matchId) {
+        if (!matchId.startsWith("match_"))
+            return -1;
+        try {
+            return Long.parseLong(matchId.substring("match_".length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStarted(ServerStartedEvent event) {
+        MinecraftServer server = event.getServer();
+        long highest = 0;
+        for (ResourceKey<Level> key : server.levelKeys()) {
+            if (key.location().getNamespace().equals(DimensionMod.MODID)) {
+                highest = Math.max(highest, parseMatchNumber(key.location().getPath()));
+            }
+        }
+
+        Path root = server.getWorldPath(LevelResource.ROOT).resolve("dimensions").resolve(DimensionMod.MODID);
+        if (Files.isDirectory(root)) {
+            try (DirectoryStream<Path> folders = Files.newDirectoryStream(root, "match_*")) {
+                for (Path folder : folders) {
+                    highest = Math.max(highest, parseMatchNumber(folder.getFileName().toString()));
+                }
+            } catch (IOException e) {
+                DimensionMod.LOGGER.error("Failed to list match dimension folders", e);
+            }
         }
+        lastMatchId = highest;
     }
 
-    private static void teleportPlayerToMatch(ServerPlayer player, ServerLevel level) {
-        // Random spread
-        int x = random.nextInt(1000) - 500;
-        int z = random.nextInt(1000) - 500;
+    /**
+     * @return true if the player is taking part in a running match
+     */
+    public static boolean isInMatch(UUID playerId) {
+        return playerMatches.containsKey(playerId);
+    }
+
+    private static void teleportPlayerToMatch(ServerPlayer player, ServerLevel level, BlockPos spawn) {
+        player.teleportTo(level, spawn.getX() + 0.5, spawn.getY(), spawn.getZ() + 0.5, 0, 0);
+    }
 
-        // Ensure chunk is loaded to get correct height
-        level.getChunk(x >> 4, z >> 4);
+    // Used when the spawn index has no point for this player: read the height of a pre-chosen column instead
+    private static void teleportPlayerToColumn(ServerPlayer player, ServerLevel level, BlockPos column) {
+        int x = column.getX();
+        int z = column.getZ();
+
+        // The spawn area is pre-generated during warmup; only generate here if that fell behind
+        if (level.getChunkSource().getChunkNow(x >> 4, z >> 4) == null) {
+            DimensionMod.LOGGER.warn("Spawn chunk at {}, {} in {} was not ready, loading it synchronously", x, z,
+                    level.dimension().location());
+            level.getChunk(x >> 4, z >> 4);
+        }
 
         int y = level.getHeight(Heightmap.Types.MOTION_BLOCKING_NO_LEAVES, x, z);
         if (y <= level.getMinBuildHeight()) {
@@ -73,6 +246,14 @@ public class MatchManager {
         player.teleportTo(level, x, y + 1, z, 0, 0);
     }
 
+    static void sendToOverworldSpawn(MinecraftServer server, ServerPlayer player) {
+        ServerLevel overworld = server.getLevel(Level.OVERWORLD);
+        if (overworld != null) {
+            BlockPos spawn = overworld.getSharedSpawnPos();
+            player.teleportTo(overworld, spawn.getX(), spawn.getY(), spawn.getZ(), 0, 0);
+        }
+    }
+
     @SubscribeEvent
     public static void onServerTick(TickEvent.ServerTickEvent event) {
         if (event.phase != TickEvent.Phase.END)
@@ -83,48 +264,356 @@ public class MatchManager {
         if (server == null)
             return;
 
-        Iterator<Map.Entry<ResourceKey<Level>, Match>> iterator = activeMatches.entrySet().iterator();
-        while (iterator.hasNext()) {
-            Map.Entry<ResourceKey<Level>, Match> entry = iterator.next();
-            Match match = entry.getValue();
-            ServerLevel level = server.getLevel(match.dimension);
+        runBookkeeping(currentTick());
 
-            if (level == null) {
-                iterator.remove();
-                continue;
+        if (server.getTickCount() % 20 == 0) {
+            long allocatedBefore = trackAllocations ? threadAllocatedBytes() : 0;
+            boolean clock = server.getTickCount() % MatchJournal.CLOCK_INTERVAL_TICKS == 0;
+            // Matches that ended in the frame are gone from the array now
+            updateFrameMatches();
+            for (int i = 0; i < frameMatchCount; i++) {
+                Match match = frameMatches[i];
+                ServerLevel level = server.getLevel(match.dimension);
+                if (level != null) {
+                    match.metrics.emitStats(level, match.getPlayerCount(),
+                            ChunkResidency.getEstimatedBytes(match.dimension));
+                }
+                // Recovery continues a match from its last clock record, so downtime isn't counted
+                if (clock && match.state == Match.MatchState.PLAYING) {
+                    MatchJournal.clock(match.number, (int) (currentTick() - match.startTick));
+                }
+            }
+            if (trackAllocations) {
+                bookkeepingAllocatedBytes += threadAllocatedBytes() - allocatedBefore;
             }
+        }
+    }
 
-            match.tick(server, level);
+    /**
+     * Advances every match's timers to {@code now}. The timers themselves only decide what happens;
+     * whatever touches the world or state shared between matches goes into the match's
+     * {@link MatchCommandBuffer}, and the buffers are applied afterwards on the server thread, in the
+     * order the matches were created. With {@link Config#parallelBookkeeping} the deciding part runs
+     * on a {@link BookkeepingPool}; the outcome is the same either way. The match
+     * array and the pool's tasks are reused from tick to tick.
+     */
+    private static void runBookkeeping(long now) {
+        updateFrameMatches();
+        // Matches that end during the frame are taken out of matchOrder, not out of this array
+        Match[] matches = frameMatches;
+        int count = frameMatchCount;
+        if (count == 0)
+            return;
 
-            if (match.isEnded()) {
-                // Cleanup dimension?
-                // InfiniverseAPI.get().markDimensionForUnregistration(server, match.dimension);
-                // We might want to keep it for a bit or delete it.
-                iterator.remove();
+        long allocatedBefore = trackAllocations ? threadAllocatedBytes() : 0;
+        // Snapshots of player presence are taken here, on the server thread
+        for (int i = 0; i < count; i++) {
+            matches[i].beginFrame(now);
+        }
+        if (Config.parallelBookkeeping && count > 1) {
+            getBookkeepingPool().evaluate(matches, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                matches[i].evaluate();
+            }
+        }
+        if (trackAllocations) {
+            long allocated = threadAllocatedBytes();
+            bookkeepingAllocatedBytes += allocated - allocatedBefore;
+            if (bookkeepingPool != null) {
+                bookkeepingAllocatedBytes += bookkeepingPool.takeAllocatedBytes();
             }
+            allocatedBefore = allocated;
+        }
+        for (int i = 0; i < count; i++) {
+            matches[i].endFrame();
         }
+        if (trackAllocations) {
+            applyAllocatedBytes += threadAllocatedBytes() - allocatedBefore;
+        }
+    }
+
+    static long threadAllocatedBytes() {
+        return THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * @return the bytes allocated, on any thread, while {@link #trackAllocations} was on by deciding what
+     *         happens to the matches: the frame snapshots, the timers and the once-a-second stats
+     */
+    public static long getBookkeepingAllocatedBytes() {
+        return bookkeepingAllocatedBytes;
     }
 
+    /**
+     * @return the bytes allocated while {@link #trackAllocations} was on by carrying out what the timers
+     *         decided: the HUD flushes, including the packets they send, and the match commands
+     */
+    public static long getApplyAllocatedBytes() {
+        return applyAllocatedBytes;
+    }
+
+    private static void addToMatchOrder(Match match) {
+        matchOrder.add(match);
+        matchOrderChanged = true;
+    }
+
+    private static void removeFromMatchOrder(Match match) {
+        matchOrder.remove(match);
+        matchOrderChanged = true;
+    }
+
+    // Copies matchOrder into the frame array if it changed since the last copy
+    private static void updateFrameMatches() {
+        if (!matchOrderChanged)
+            return;
+        matchOrderChanged = false;
+        int count = matchOrder.size();
+        if (count > frameMatches.length) {
+            frameMatches = new Match[Math.max(count, frameMatches.length * 2)];
+        }
+        for (int i = 0; i < count; i++) {
+            frameMatches[i] = matchOrder.get(i);
+        }
+        // Don't keep ended matches reachable
+        if (count < frameMatchCount) {
+            Arrays.fill(frameMatches, count, frameMatchCount, null);
+        }
+        frameMatchCount = count;
+    }
+
+    private static BookkeepingPool getBookkeepingPool() {
+        if (bookkeepingPool == null) {
+            int threads = Config.bookkeepingThreads > 0 ? Config.bookkeepingThreads
+                    : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            bookkeepingPool = new BookkeepingPool(threads);
+        }
+        return bookkeepingPool;
+    }
+
+    @SubscribeEvent
+    public static void onLevelTick(TickEvent.LevelTickEvent event) {
+        if (event.side != LogicalSide.SERVER)
+            return;
+
+        Match match = activeMatches.get(event.level.dimension());
+        if (match == null)
+            return;
+
+        if (event.phase == TickEvent.Phase.START) {
+            match.metrics.levelTickStarted();
+        } else {
+            match.metrics.levelTickEnded();
+        }
+    }
+
+    public static Collection<Match> getMatches() {
+        return activeMatches.values();
+    }
+
+    /**
+     * @return the running match played in the given dimension, or null
+     */
+    public static Match getMatch(ResourceKey<Level> dimension) {
+        return activeMatches.get(dimension);
+    }
+
+    /**
+     * @return the running match with the given id (e.g. {@code match_12}), or null
+     */
+    public static Match getMatch(String matchId) {
+        if (!ResourceLocation.isValidPath(matchId))
+            return null;
+        return activeMatches.get(ResourceKey.create(Registries.DIMENSION, new ResourceLocation(DimensionMod.MODID, matchId)));
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        activeMatches.clear();
+        matchOrder.clear();
+        Arrays.fill(frameMatches, null);
+        frameMatchCount = 0;
+        matchOrderChanged = false;
+        playerMatches.clear();
+        if (bookkeepingPool != null) {
+            bookkeepingPool.shutdown();
+            bookkeepingPool = null;
+        }
+        // The match clock starts from zero again on the next server
+        clockOrigin = -1;
+        lastMatchId = 0;
+    }
+
+    private static void onMatchEnded(Match match) {
+        activeMatches.remove(match.dimension);
+        removeFromMatchOrder(match);
+        // Evacuate, unregister and delete the dimension over the next ticks
+        MatchReclaimer.reclaim(match.server, match.dimension);
+        Coordinator.onMatchEnded(match);
+    }
+
+    @SubscribeEvent
+    public static void onPlayerDeath(LivingDeathEvent event) {
+        if (event.getEntity() instanceof ServerPlayer player) {
+            Match match = playerMatches.get(player.getUUID());
+            if (match == null)
+                return;
+            match.onDeath(player);
+            if (match.cancelExtraction(player.getUUID())) {
+                player.sendSystemMessage(Component.literal("Extraction failed!"));
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedIn(PlayerEvent.PlayerLoggedInEvent event) {
+        if (event.getEntity() instanceof ServerPlayer player) {
+            Match match = playerMatches.get(player.getUUID());
+            if (match != null) {
+                match.updateHandle(player.getUUID(), player);
+                match.onRejoin(player);
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        if (event.getEntity() instanceof ServerPlayer player) {
+            Match match = playerMatches.get(player.getUUID());
+            if (match != null) {
+                match.cancelExtraction(player.getUUID());
+                match.updateHandle(player.getUUID(), null);
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onPlayerRespawn(PlayerEvent.PlayerRespawnEvent event) {
+        // Respawning replaces the ServerPlayer object
+        if (event.getEntity() instanceof ServerPlayer player) {
+            Match match = playerMatches.get(player.getUUID());
+            if (match != null) {
+                match.updateHandle(player.getUUID(), player);
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onChunkLoad(ChunkEvent.Load event) {
+        if (!(event.getLevel() instanceof ServerLevel level) || !(event.getChunk() instanceof LevelChunk chunk))
+            return;
+
+        Match match = activeMatches.get(level.dimension());
+        if (match != null) {
+            match.onChunkLoaded(chunk);
+        }
+    }
+
+    /**
+     * Starts an extraction that may be completed anywhere in the match, e.g. from a command.
+     */
     public static void startExtraction(ServerPlayer player) {
+        startExtraction(player, null);
+    }
+
+    /**
+     * Starts an extraction at an extraction point; it is cancelled if the player leaves the zone
+     * around it.
+     */
+    public static void startExtraction(ServerPlayer player, BlockPos zone) {
         ResourceKey<Level> dim = player.level().dimension();
         Match match = activeMatches.get(dim);
         if (match != null) {
-            match.startExtraction(player);
+            match.startExtraction(player, zone);
+        }
+    }
+
+    static boolean isExtractionBlock(BlockState state) {
+        return state.is(DimensionMod.EXTRACTION_BLOCK.get());
+    }
+
+    /**
+     * Called when an extraction block appears in or disappears from a level.
+     */
+    public static void onExtractionBlockChanged(ServerLevel level, BlockPos pos, boolean placed) {
+        Match match = activeMatches.get(level.dimension());
+        if (match == null)
+            return;
+        if (placed) {
+            match.zones.add(pos.immutable());
+        } else {
+            match.zones.remove(pos);
         }
     }
 
     public static class Match {
+        private final MinecraftServer server;
         private final ResourceKey<Level> dimension;
+        // The number in the match id, which is how the journal refers to the match
+        private final long number;
         private long startTick; // When the actual gameplay starts
         private final long createdTick; // When the match object was created
-        private final Set<UUID> players = new HashSet<>();
-        private final Map<UUID, Long> extractingPlayers = new HashMap<>(); // UUID -> Start Tick
+        private final long createdNanos;
+        // Phase lengths, taken from the config when the match is created
+        private final int warmupTicks;
+        private final int durationTicks;
+        private final int extractionTicks;
+        private final Component[] extractionCountdown;
+        private final double extractionZoneRadiusSq;
+        private final MatchMetrics metrics;
+        private final MatchHud hud;
+        private final MatchRecorder recorder;
+        // Match clock tick of the next position sample for the recording
+        private long nextSampleTick;
+        // This match's phase timers, countdowns and extractions
+        private final MatchScheduler scheduler;
+        private final MatchCommandBuffer commands = new MatchCommandBuffer();
+        // Match clock tick of the bookkeeping frame in progress, if inFrame
+        private long frameTick;
+        private boolean inFrame = false;
+
+        // Players live in fixed slots for the whole match. Handles are kept up to date by login, logout
+        // and respawn events, so nothing here has to look players up by UUID while the match runs.
+        private final Object2IntOpenHashMap<UUID> slots = new Object2IntOpenHashMap<>();
+        private UUID[] playerIds = new UUID[8];
+        private ServerPlayer[] handles = new ServerPlayer[8];
+        private boolean[] inMatch = new boolean[8]; // Cleared once the player has extracted
+        private final BitSet extracted = new BitSet(); // Slots that extracted, as opposed to being lost
+        private Extraction[] extractions = new Extraction[8]; // Created on a slot's first extraction, then reused
+        // Where each player was at the start of the current frame, for the timers to read off-thread
+        private boolean[] inLevel = new boolean[8];
+        private double[] positions = new double[8 * 3];
+        private int playerCount = 0;
+
         private boolean ended = false;
         private MatchState state = MatchState.WARMUP;
+        private SpawnPregenerator spawnArea;
+        private final LongArrayList spawnSamples = new LongArrayList();
+        private final ExtractionZoneIndex zones = new ExtractionZoneIndex();
+        private CompletableFuture<SpawnPointIndex> spawnIndex;
+        private ExtractionSitePlacer sitePlacer;
+        private boolean warmupExtended = false;
+        private int pendingArrivals = 0;
+        // Slots of a recovered match whose players haven't logged back in yet
+        private final BitSet awaitingRejoin = new BitSet();
+        // The next phase transition (gameplay start or match end) and the spawn-area poll
+        private MatchScheduler.Task phaseTask;
+        private MatchScheduler.Task spawnPollTask;
+        private MatchScheduler.Task sitePlacementTask;
+        // Refreshes the timer bar once a second
+        private MatchScheduler.Task hudTask;
+
+        private static final int SPAWN_POLL_INTERVAL_TICKS = 10;
+        // Shown on the timer every second while the warmup is held up
+        private static final Component PREPARING_LABEL = Component.literal("Preparing the arena...");
 
-        private static final int WARMUP_TIME_TICKS = 15 * 20; // 15 seconds
-        private static final int MATCH_DURATION_TICKS = 30 * 60 * 20; // 30 minutes
-        private static final int EXTRACTION_TIME_TICKS = 15 * 20; // 15 seconds
+        private static Component[] countdown(String prefix, int seconds) {
+            Component[] messages = new Component[seconds + 1];
+            for (int i = 1; i <= seconds; i++) {
+                messages[i] = Component.literal(prefix + i + "...");
+            }
+            return messages;
+        }
 
         public enum MatchState {
             WARMUP,
@@ -132,128 +621,687 @@ public class MatchManager {
             ENDED
         }
 
-        public Match(ResourceKey<Level> dimension, long createdTick) {
+        public Match(MinecraftServer server, ResourceKey<Level> dimension, long createdTick) {
+            this(server, dimension, createdTick, Config.matchDurationSeconds * 20);
+        }
+
+        private Match(MinecraftServer server, ResourceKey<Level> dimension, long createdTick, int durationTicks) {
+            this.server = server;
             this.dimension = dimension;
+            this.number = parseMatchNumber(dimension.location().getPath());
             this.createdTick = createdTick;
+            this.createdNanos = System.nanoTime();
+            this.warmupTicks = Config.matchWarmupSeconds * 20;
+            this.durationTicks = durationTicks;
+            this.extractionTicks = Config.extractionSeconds * 20;
+            this.extractionCountdown = countdown("Extracting in ", Config.extractionSeconds);
+            this.extractionZoneRadiusSq = (double) Config.extractionZoneRadius * Config.extractionZoneRadius;
+            this.metrics = new MatchMetrics(getId(), createdTick);
+            this.hud = new MatchHud(metrics);
+            this.recorder = MatchRecorder.open(getId(), createdTick);
+            this.nextSampleTick = createdTick;
+            this.scheduler = new MatchScheduler(createdTick);
+            slots.defaultReturnValue(-1);
         }
 
-        public void addPlayer(UUID uuid) {
-            players.add(uuid);
+        public String getId() {
+            return dimension.location().getPath();
         }
 
-        public void tick(MinecraftServer server, ServerLevel level) {
-            long currentTick = server.getTickCount();
+        public ResourceKey<Level> getDimension() {
+            return dimension;
+        }
 
-            if (state == MatchState.WARMUP) {
-                long elapsed = currentTick - createdTick;
-                if (elapsed >= WARMUP_TIME_TICKS) {
-                    startGameplay(server, level);
-                } else {
-                    // Optional: Countdown every second
-                    if (elapsed % 20 == 0) {
-                        int secondsLeft = 15 - (int) (elapsed / 20);
-                        if (secondsLeft <= 5 && secondsLeft > 0) {
-                            broadcast(server, Component.literal("Teleporting in " + secondsLeft + "..."));
-                        }
+        public MatchState getState() {
+            return state;
+        }
+
+        public MatchMetrics getMetrics() {
+            return metrics;
+        }
+
+        public MatchCommandBuffer getCommands() {
+            return commands;
+        }
+
+        // The match clock as the timers see it: fixed for the whole frame while bookkeeping runs
+        private long now() {
+            return inFrame ? frameTick : currentTick();
+        }
+
+        void beginFrame(long tick) {
+            frameTick = tick;
+            inFrame = true;
+            for (int slot = 0; slot < playerCount; slot++) {
+                ServerPlayer player = handles[slot];
+                inLevel[slot] = player != null && player.isAlive() && player.level().dimension().equals(dimension);
+                if (player != null) {
+                    positions[slot * 3] = player.getX();
+                    positions[slot * 3 + 1] = player.getY();
+                    positions[slot * 3 + 2] = player.getZ();
+                }
+            }
+            if (Config.recorderSampleIntervalTicks > 0 && tick >= nextSampleTick) {
+                nextSampleTick = tick + Config.recorderSampleIntervalTicks;
+                for (int slot = 0; slot < playerCount; slot++) {
+                    if (inMatch[slot] && inLevel[slot]) {
+                        recorder.position(tick, slot, positions[slot * 3], positions[slot * 3 + 1],
+                                positions[slot * 3 + 2]);
                     }
                 }
+            }
+            commands.begin();
+        }
+
+        // Runs the timers that are due. May run off the server thread: reads match state and the frame's
+        // snapshot, and leaves everything else to the command buffer
+        void evaluate() {
+            scheduler.advanceTo(frameTick);
+        }
+
+        void endFrame() {
+            // Messages and bars go out before players are moved or killed by the commands
+            hud.flush(handles, inMatch, playerCount);
+            commands.apply();
+            inFrame = false;
+        }
+
+        public ExtractionZoneIndex getZones() {
+            return zones;
+        }
+
+        /**
+         * @return the extraction point closest to pos, or null if the match has none
+         */
+        public BlockPos findNearestExtraction(BlockPos pos) {
+            return zones.nearest(pos.getX(), pos.getY(), pos.getZ());
+        }
+
+        /**
+         * @return true if the player joined this match at some point, extracted or not
+         */
+        public boolean hasJoined(UUID playerId) {
+            return slots.containsKey(playerId);
+        }
+
+        /**
+         * @return true if the player joined this match and has not extracted yet
+         */
+        public boolean isTakingPart(UUID playerId) {
+            int slot = slots.getInt(playerId);
+            return slot >= 0 && inMatch[slot];
+        }
+
+        /**
+         * @return every player who joined the match, in slot order
+         */
+        public List<UUID> getPlayerIds() {
+            return Arrays.asList(Arrays.copyOf(playerIds, playerCount));
+        }
+
+        /**
+         * @return true if the player joined this match and extracted from it
+         */
+        public boolean hasExtracted(UUID playerId) {
+            int slot = slots.getInt(playerId);
+            return slot >= 0 && extracted.get(slot);
+        }
+
+        /**
+         * @return the match clock tick the match was created at
+         */
+        public long getCreatedTick() {
+            return createdTick;
+        }
+
+        /**
+         * @return the number of players still taking part (not yet extracted)
+         */
+        public int getPlayerCount() {
+            int count = 0;
+            for (int slot = 0; slot < playerCount; slot++) {
+                if (inMatch[slot])
+                    count++;
+            }
+            return count;
+        }
+
+        private void setState(MatchState newState) {
+            state = newState;
+            metrics.enterState(newState, now());
+            recorder.phase(now(), newState);
+            // The end is journaled as its own record once the match has wound down
+            if (newState != MatchState.ENDED) {
+                MatchJournal.phase(number, newState);
+            }
+        }
+
+        public void addPlayer(ServerPlayer player) {
+            UUID uuid = player.getUUID();
+            if (slots.containsKey(uuid))
                 return;
+            MatchJournal.joined(number, addSlot(uuid, player), uuid);
+        }
+
+        private int addSlot(UUID uuid, ServerPlayer player) {
+            if (playerCount == playerIds.length) {
+                int capacity = playerCount * 2;
+                playerIds = Arrays.copyOf(playerIds, capacity);
+                handles = Arrays.copyOf(handles, capacity);
+                inMatch = Arrays.copyOf(inMatch, capacity);
+                extractions = Arrays.copyOf(extractions, capacity);
+                inLevel = Arrays.copyOf(inLevel, capacity);
+                positions = Arrays.copyOf(positions, capacity * 3);
             }
 
-            if (state == MatchState.PLAYING) {
-                long elapsed = currentTick - startTick;
+            int slot = playerCount++;
+            slots.put(uuid, slot);
+            playerIds[slot] = uuid;
+            handles[slot] = player;
+            inMatch[slot] = true;
+            playerMatches.put(uuid, this);
+            recorder.joined(now(), slot, uuid);
+            return slot;
+        }
 
-                // Check match timer
-                if (elapsed >= MATCH_DURATION_TICKS && !ended) {
-                    endMatch(server, level);
+        // Picks up where the journal left off, without journaling any of it again
+        private void restore(ServerLevel level, MatchJournal.JournalMatch entry) {
+            List<UUID> players = entry.getPlayers();
+            for (int i = 0; i < players.size(); i++) {
+                int slot = addSlot(players.get(i), null);
+                if (entry.isExtracted(slot)) {
+                    inMatch[slot] = false;
+                    extracted.set(slot);
+                    playerMatches.remove(players.get(i), this);
                 }
+            }
 
-                // Check extractions
-                Iterator<Map.Entry<UUID, Long>> extIt = extractingPlayers.entrySet().iterator();
-                while (extIt.hasNext()) {
-                    Map.Entry<UUID, Long> entry = extIt.next();
-                    UUID playerId = entry.getKey();
-                    long extStart = entry.getValue();
-
-                    if (currentTick - extStart >= EXTRACTION_TIME_TICKS) {
-                        // Success
-                        ServerPlayer player = server.getPlayerList().getPlayer(playerId);
-                        if (player != null) {
-                            extractPlayer(player, server);
-                        }
-                        extIt.remove();
-                    } else {
-                        // Notify player of time remaining
-                        if ((currentTick - extStart) % 20 == 0) {
-                            ServerPlayer player = server.getPlayerList().getPlayer(playerId);
-                            if (player != null) {
-                                int secondsLeft = 15 - (int) ((currentTick - extStart) / 20);
-                                player.displayClientMessage(Component.literal("Extracting in " + secondsLeft + "..."),
-                                        true);
-                            }
-                        }
-                    }
+            if (entry.getState() == MatchState.WARMUP) {
+                prepareSpawns(level, Math.max(1, playerCount));
+                prepareExtractionSites(level);
+                scheduleWarmup();
+                return;
+            }
+
+            long now = now();
+            state = MatchState.PLAYING;
+            metrics.enterState(state, now);
+            recorder.phase(now, state);
+            startTick = now - entry.getTicksInPhase();
+            // Players are already in the level; there are no spawns to prepare
+            spawnArea = new SpawnPregenerator(level, 0, 0, random);
+            spawnPollTask = scheduler.createTask(() -> {}, metrics);
+            // Extraction blocks saved with the level come back with its chunks; an ephemeral level needs new ones
+            sitePlacer = new ExtractionSitePlacer(level, List.of(),
+                    Config.ephemeralMatchLevels ? Config.extractionSiteCount : 0, random.nextLong());
+            sitePlacementTask = scheduler.schedule(now + 1,
+                    () -> commands.submit(MatchCommandBuffer.SERVER_THREAD, this::placeExtractionSites), metrics);
+            phaseTask = scheduler.schedule(startTick + durationTicks, this::onTimeUp, metrics);
+            hudTask = scheduler.schedule(now, this::updateTimer, metrics);
+
+            for (int slot = 0; slot < playerCount; slot++) {
+                if (!inMatch[slot])
+                    continue;
+                awaitingRejoin.set(slot);
+                int seconds = entry.getExtractionSeconds(slot);
+                if (seconds >= 0) {
+                    Extraction extraction = extractions[slot] = new Extraction(slot);
+                    extraction.resumeSeconds = seconds;
+                    extraction.zone = entry.getExtractionZone(slot);
                 }
             }
         }
 
-        private void startGameplay(MinecraftServer server, ServerLevel level) {
+        /**
+         * Puts a match that has no level straight into gameplay at {@code tick}, with {@code players}
+         * players who aren't online and the first {@code extracting} of them extracting anywhere. Only
+         * for benchmarking the per-tick path headless; real matches get there through the warmup.
+         */
+        void startHeadless(long tick, int players, int extracting) {
+            for (int i = 0; i < players; i++) {
+                addSlot(new UUID(number, i), null);
+            }
             state = MatchState.PLAYING;
-            startTick = server.getTickCount();
+            metrics.enterState(state, tick);
+            startTick = tick;
+            spawnPollTask = scheduler.createTask(() -> {}, metrics);
+            sitePlacementTask = scheduler.createTask(() -> {}, metrics);
+            phaseTask = scheduler.schedule(startTick + durationTicks, this::onTimeUp, metrics);
+            hudTask = scheduler.schedule(tick, this::updateTimer, metrics);
+            for (int slot = 0; slot < Math.min(extracting, players); slot++) {
+                extractions[slot] = new Extraction(slot);
+                extractions[slot].start(tick + slot, null, 0);
+            }
+        }
 
-            for (UUID uuid : players) {
-                ServerPlayer player = server.getPlayerList().getPlayer(uuid);
-                if (player != null) {
-                    teleportPlayerToMatch(player, level);
+        // A player of a recovered match logged back in
+        void onRejoin(ServerPlayer player) {
+            int slot = slots.getInt(player.getUUID());
+            if (slot < 0 || !awaitingRejoin.get(slot))
+                return;
+            awaitingRejoin.clear(slot);
+            if (state != MatchState.PLAYING || !inMatch[slot])
+                return;
+
+            ServerLevel level = server.getLevel(dimension);
+            if (level == null || player.level() != level)
+                return;
+            // An ephemeral level came back with new terrain, which may have buried the player
+            if (Config.ephemeralMatchLevels) {
+                teleportPlayerToColumn(player, level, player.blockPosition());
+            }
+
+            Extraction extraction = extractions[slot];
+            if (extraction != null && extraction.resumeSeconds >= 0) {
+                extraction.start(currentTick(), extraction.zone, extraction.resumeSeconds);
+                extraction.resumeSeconds = -1;
+                player.sendSystemMessage(Component.literal("Extraction resumed!"));
+            }
+        }
+
+        void updateHandle(UUID uuid, ServerPlayer player) {
+            int slot = slots.getInt(uuid);
+            if (slot >= 0) {
+                handles[slot] = player;
+            }
+        }
+
+        // Player is no longer part of the match; their slot stays but is skipped from now on
+        private void removePlayer(int slot) {
+            inMatch[slot] = false;
+            UUID playerId = playerIds[slot];
+            commands.submit(MatchCommandBuffer.RELEASE, slot, null, () -> playerMatches.remove(playerId, this));
+        }
+
+        // Generates the spawn areas in the background while the warmup runs
+        private void prepare(int spawnCount) {
+            ServerLevel level = server.getLevel(dimension);
+            prepareSpawns(level, Math.max(1, spawnCount));
+            prepareExtractionSites(level);
+            scheduleWarmup();
+        }
+
+        void prepareSpawns(ServerLevel level, int spawnCount) {
+            spawnArea = new SpawnPregenerator(level, spawnCount, Config.spawnPregenRadius, random);
+            spawnArea.start();
+        }
+
+        void prepareExtractionSites(ServerLevel level) {
+            sitePlacer = new ExtractionSitePlacer(level, spawnArea.getSpawns(), Config.extractionSiteCount,
+                    random.nextLong());
+        }
+
+        // A few blocks per tick, into chunks that have finished loading
+        private void placeExtractionSites() {
+            if (!sitePlacer.placeLoaded(Config.extractionPlacementsPerTick)) {
+                scheduler.schedule(sitePlacementTask, now() + 1);
+            } else if (sitePlacer.getPlacedCount() > 0) {
+                DimensionMod.LOGGER.debug("Placed {} extraction points in {}", sitePlacer.getPlacedCount(),
+                        dimension.location());
+            }
+        }
+
+        void onChunkLoaded(LevelChunk chunk) {
+            // Extraction blocks that were saved with the chunk or came from a terrain snapshot
+            zones.addFromChunk(chunk, MatchManager::isExtractionBlock);
+            // Samples are only collected until they are handed to the index builder
+            if (state == MatchState.WARMUP && spawnIndex == null) {
+                SpawnPointIndex.sampleChunk(chunk, spawnSamples);
+            }
+        }
+
+        private void buildSpawnIndex() {
+            LongArrayList samples = spawnSamples;
+            int minSpacing = Config.spawnMinSpacing;
+            int avoidDistance = Config.spawnExtractionDistance;
+            long seed = random.nextLong();
+            // Spawns keep their distance from the extraction sites, which are usually chosen by now
+            spawnIndex = sitePlacer.getSites().thenApplyAsync(
+                    sites -> SpawnPointIndex.build(samples, minSpacing, sites, avoidDistance, seed),
+                    Util.backgroundExecutor());
+        }
+
+        /**
+         * @return how much of the spawn area has finished generating, between 0 and 1
+         */
+        public float getSpawnProgress() {
+            return spawnArea.getProgress();
+        }
+
+        void scheduleWarmup() {
+            hudTask = scheduler.schedule(createdTick, this::updateTimer, metrics);
+            // These two look at chunks, so they always run on the server thread
+            spawnPollTask = scheduler.schedule(createdTick + SPAWN_POLL_INTERVAL_TICKS,
+                    () -> commands.submit(MatchCommandBuffer.SERVER_THREAD, this::pollSpawnArea), metrics);
+            sitePlacementTask = scheduler.schedule(createdTick + 1,
+                    () -> commands.submit(MatchCommandBuffer.SERVER_THREAD, this::placeExtractionSites), metrics);
+            phaseTask = scheduler.schedule(createdTick + warmupTicks, this::tryStartGameplay, metrics);
+        }
+
+        private void updateTimer() {
+            long now = now();
+            if (state == MatchState.WARMUP) {
+                long ticksLeft = createdTick + warmupTicks - now;
+                if (ticksLeft > 0) {
+                    hud.setTimer("Teleporting in ", ticksLeft, warmupTicks);
+                } else {
+                    hud.setTimerLabel(PREPARING_LABEL);
+                }
+            } else if (state == MatchState.PLAYING) {
+                hud.setTimer("Time left: ", startTick + durationTicks - now, durationTicks);
+            } else {
+                return;
+            }
+            scheduler.schedule(hudTask, now + 20);
+        }
+
+        private void pollSpawnArea() {
+            if (spawnArea.updateProgress() < 1.0f) {
+                scheduler.schedule(spawnPollTask, now() + SPAWN_POLL_INTERVAL_TICKS);
+            } else {
+                TerrainSnapshots.recordTimeToReady(dimension, (System.nanoTime() - createdNanos) / 1_000_000);
+                buildSpawnIndex();
+            }
+        }
+
+        private void tryStartGameplay() {
+            ServerLevel level = server.getLevel(dimension);
+            if (level == null) {
+                abandon();
+                return;
+            }
+
+            // Hold the warmup while spawn chunks are still generating, up to a limit
+            long overdue = now() - (createdTick + warmupTicks);
+            if (spawnArea.isDone() || overdue >= Config.maxWarmupExtensionSeconds * 20L) {
+                startGameplay(level);
+                return;
+            }
+
+            if (!warmupExtended) {
+                warmupExtended = true;
+                broadcast(Component.literal("Preparing the arena ("
+                        + (int) (spawnArea.getProgress() * 100) + "%)..."));
+            }
+            scheduler.schedule(phaseTask, now() + SPAWN_POLL_INTERVAL_TICKS);
+        }
+
+        private void startGameplay(ServerLevel level) {
+            setState(MatchState.PLAYING);
+            startTick = now();
+            spawnPollTask.cancel();
+            phaseTask = scheduler.schedule(startTick + durationTicks, this::onTimeUp, metrics);
+            // The game clock starts now, so the timer's seconds line up with it
+            hudTask.cancel();
+            scheduler.schedule(hudTask, startTick);
+
+            // Arrivals are spread evenly over the configured window; the teleport queue also caps how
+            // many players it moves per tick across all matches
+            SpawnPointIndex index = spawnIndex != null ? spawnIndex.getNow(null) : null;
+            int spread = Config.teleportSpreadTicks;
+            long deadline = startTick + spread + Config.teleportGraceTicks;
+            int chunkRadius = Math.min(1, Config.spawnPregenRadius);
+            pendingArrivals = playerCount;
+            for (int slot = 0; slot < playerCount; slot++) {
+                BlockPos indexed = index != null ? index.get(slot) : null;
+                BlockPos spawn = indexed != null ? indexed : spawnArea.getSpawn(slot);
+                int arrivalSlot = slot;
+                // The target is the release delay: the spawn itself depends on the terrain
+                long releaseDelay = (long) slot * spread / playerCount;
+                commands.submit(MatchCommandBuffer.TELEPORT, slot, releaseDelay, () -> TeleportQueue.submit(level,
+                        spawn.getX(), spawn.getZ(), chunkRadius, startTick + releaseDelay, deadline,
+                        () -> arrive(level, arrivalSlot, spawn, indexed != null)));
+            }
+            broadcast(Component.literal("Match started! You have " + formatDuration(durationTicks / 20)
+                    + " to extract. Find the Extraction Block!"));
+        }
+
+        private void arrive(ServerLevel level, int slot, BlockPos spawn, boolean fromIndex) {
+            ServerPlayer player = handles[slot];
+            if (state == MatchState.PLAYING && inMatch[slot] && player != null) {
+                if (fromIndex) {
+                    teleportPlayerToMatch(player, level, spawn);
+                } else {
+                    teleportPlayerToColumn(player, level, spawn);
                 }
             }
-            broadcast(server,
-                    Component.literal("Match started! You have 30 minutes to extract. Find the Extraction Block!"));
+
+            // Once everyone is in, players hold their own chunk tickets
+            if (--pendingArrivals == 0) {
+                spawnArea.release();
+            }
         }
 
-        public void startExtraction(ServerPlayer player) {
+        /**
+         * @param zone the extraction point the player has to stay near, or null to allow extracting anywhere
+         */
+        public void startExtraction(ServerPlayer player, BlockPos zone) {
             if (state != MatchState.PLAYING)
                 return;
-            if (extractingPlayers.containsKey(player.getUUID()))
+            int slot = slots.getInt(player.getUUID());
+            if (slot < 0 || !inMatch[slot])
+                return;
+
+            Extraction extraction = extractions[slot];
+            if (extraction == null) {
+                extraction = extractions[slot] = new Extraction(slot);
+            } else if (extraction.task.isPending()) {
                 return;
-            extractingPlayers.put(player.getUUID(), (long) player.getServer().getTickCount());
-            player.sendSystemMessage(Component.literal("Extraction started! Stay alive for 15 seconds."));
+            }
+            extraction.start(currentTick(), zone != null ? zone.immutable() : null, 0);
+            player.sendSystemMessage(Component.literal("Extraction started! Stay alive for "
+                    + formatDuration(extractionTicks / 20) + "."));
+        }
+
+        /**
+         * @return true if the player was extracting
+         */
+        public boolean cancelExtraction(UUID playerId) {
+            int slot = slots.getInt(playerId);
+            if (slot < 0 || extractions[slot] == null)
+                return false;
+            return extractions[slot].cancel();
         }
 
-        private void extractPlayer(ServerPlayer player, MinecraftServer server) {
-            player.sendSystemMessage(Component.literal("Extraction Successful!"));
-            // Teleport to overworld spawn
-            ServerLevel overworld = server.getLevel(Level.OVERWORLD);
-            if (overworld != null) {
-                BlockPos spawn = overworld.getSharedSpawnPos();
-                player.teleportTo(overworld, spawn.getX(), spawn.getY(), spawn.getZ(), 0, 0);
+        // One per slot; re-arms its own task once a second until the extraction completes. Extractions
+        // started at an extraction point also check every tick that the player is still in its zone.
+        private class Extraction implements Runnable {
+            private final int slot;
+            private final MatchScheduler.Task task;
+            private final MatchScheduler.Task zoneTask;
+            private long startedAt;
+            private int secondsElapsed;
+            private BlockPos zone;
+            // Progress from the journal, waiting for the player to log back in
+            private int resumeSeconds = -1;
+
+            private Extraction(int slot) {
+                this.slot = slot;
+                this.task = scheduler.createTask(this, metrics);
+                this.zoneTask = scheduler.createTask(this::checkZone, metrics);
             }
-            players.remove(player.getUUID());
+
+            private void start(long tick, BlockPos zone, int secondsElapsed) {
+                startedAt = tick - secondsElapsed * 20L;
+                this.secondsElapsed = secondsElapsed;
+                this.zone = zone;
+                scheduler.schedule(task, tick);
+                if (zone != null) {
+                    scheduler.schedule(zoneTask, tick + 1);
+                }
+                MatchJournal.extractionStarted(number, slot, zone);
+                recorder.extractionStarted(tick, slot, positions[slot * 3], positions[slot * 3 + 1],
+                        positions[slot * 3 + 2]);
+                if (secondsElapsed > 0) {
+                    MatchJournal.extractionProgress(number, slot, secondsElapsed);
+                }
+            }
+
+            private boolean cancel() {
+                zoneTask.cancel();
+                if (!task.cancel())
+                    return false;
+                hud.clearExtraction(slot);
+                MatchJournal.extractionCancelled(number, slot);
+                recorder.extractionCancelled(now(), slot, positions[slot * 3], positions[slot * 3 + 1],
+                        positions[slot * 3 + 2], (int) (now() - startedAt));
+                return true;
+            }
+
+            private void checkZone() {
+                ServerPlayer player = handles[slot];
+                if (player == null || !task.isPending())
+                    return;
+
+                // Positions come from the frame's snapshot; the player may not be touched off-thread
+                String failure = null;
+                if (!zones.contains(zone)) {
+                    failure = "the extraction point is gone";
+                } else if (!inLevel[slot] || zone.distToCenterSqr(positions[slot * 3], positions[slot * 3 + 1],
+                        positions[slot * 3 + 2]) > extractionZoneRadiusSq) {
+                    failure = "you left the extraction zone";
+                }
+                if (failure != null) {
+                    cancel();
+                    hud.message(player, Component.literal("Extraction cancelled: " + failure + "."));
+                    return;
+                }
+                scheduler.schedule(zoneTask, now() + 1);
+            }
+
+            @Override
+            public void run() {
+                ServerPlayer player = handles[slot];
+                if (secondsElapsed * 20 >= extractionTicks) {
+                    // Success
+                    zoneTask.cancel();
+                    hud.clearExtraction(slot);
+                    recorder.extracted(now(), slot, positions[slot * 3], positions[slot * 3 + 1],
+                            positions[slot * 3 + 2], (int) (now() - startedAt));
+                    if (player != null) {
+                        extractPlayer(player, slot);
+                    }
+                    return;
+                }
+
+                // Show the player the time remaining
+                hud.setExtraction(slot, extractionCountdown[extractionTicks / 20 - secondsElapsed],
+                        (float) secondsElapsed * 20 / extractionTicks);
+                secondsElapsed++;
+                MatchJournal.extractionProgress(number, slot, secondsElapsed);
+                scheduler.schedule(task, startedAt + secondsElapsed * 20L);
+            }
+        }
+
+        private void extractPlayer(ServerPlayer player, int slot) {
+            commands.submit(MatchCommandBuffer.EXTRACT, slot, null, () -> {
+                LootStash.deposit(player, getId());
+                player.sendSystemMessage(Component.literal("Extraction Successful!"));
+                sendToOverworldSpawn(server, player);
+                Coordinator.onExtracted(player, this);
+            });
+            extracted.set(slot);
+            MatchJournal.extracted(number, slot);
+            removePlayer(slot);
         }
 
-        private void endMatch(MinecraftServer server, ServerLevel level) {
+        private void onTimeUp() {
+            ServerLevel level = server.getLevel(dimension);
+            if (level == null) {
+                abandon();
+                return;
+            }
+            endMatch();
+        }
+
+        private void endMatch() {
             ended = true;
-            state = MatchState.ENDED;
-            broadcast(server, Component.literal("Match Ended! All remaining players are lost."));
+            setState(MatchState.ENDED);
+            cancelTimers();
+            commands.submit(MatchCommandBuffer.SERVER_THREAD, () -> {
+                spawnArea.release();
+                sitePlacer.release();
+            });
+            broadcast(Component.literal("Match Ended! All remaining players are lost."));
 
-            for (UUID uuid : players) {
-                ServerPlayer player = server.getPlayerList().getPlayer(uuid);
-                if (player != null && player.level().dimension().equals(dimension)) {
-                    player.kill();
+            for (int slot = 0; slot < playerCount; slot++) {
+                ServerPlayer player = handles[slot];
+                if (inMatch[slot] && player != null && inLevel[slot]) {
+                    commands.submit(MatchCommandBuffer.KILL, slot, null, player::kill);
                 }
             }
-            
+
+            releasePlayers();
+            MatchJournal.ended(number);
+            recorder.finish(now());
+            commands.submit(MatchCommandBuffer.END, () -> onMatchEnded(this));
+        }
+
+        /**
+         * Ends the match now instead of when its time is up, e.g. when the lobby that assigned it gave
+         * up on it. Server thread only, outside of the match's frame, so its commands run straight away.
+         */
+        public void cancel() {
+            if (ended)
+                return;
+            endMatch();
+            // No frame is coming to take the bars down
+            hud.flush(handles, inMatch, playerCount);
+        }
+
+        // The level disappeared under us, so there is nobody left to tell
+        private void abandon() {
+            ended = true;
+            setState(MatchState.ENDED);
+            cancelTimers();
+            releasePlayers();
+            MatchJournal.ended(number);
+            recorder.finish(now());
+            commands.submit(MatchCommandBuffer.END, () -> {
+                activeMatches.remove(dimension);
+                removeFromMatchOrder(this);
+                Coordinator.onMatchEnded(this);
+            });
+        }
+
+        private void cancelTimers() {
+            phaseTask.cancel();
+            hudTask.cancel();
+            spawnPollTask.cancel();
+            sitePlacementTask.cancel();
+            for (int slot = 0; slot < playerCount; slot++) {
+                if (extractions[slot] != null) {
+                    extractions[slot].cancel();
+                }
+            }
+        }
+
+        private void releasePlayers() {
+            for (int slot = 0; slot < playerCount; slot++) {
+                if (inMatch[slot]) {
+                    removePlayer(slot);
+                }
+            }
+        }
+
+        // Called on the server thread, outside of bookkeeping
+        void onDeath(ServerPlayer player) {
+            int slot = slots.getInt(player.getUUID());
+            if (slot >= 0 && inMatch[slot]) {
+                recorder.died(now(), slot, player.getX(), player.getY(), player.getZ());
+            }
         }
 
         public boolean isEnded() {
             return ended;
         }
 
-        private void broadcast(MinecraftServer server, Component message) {
-            for (UUID uuid : players) {
-                ServerPlayer player = server.getPlayerList().getPlayer(uuid);
-                if (player != null) {
-                    player.sendSystemMessage(message);
+        private void broadcast(Component message) {
+            // Recipients are decided now, before anyone is released further on in the frame
+            for (int slot = 0; slot < playerCount; slot++) {
+                ServerPlayer player = handles[slot];
+                if (inMatch[slot] && player != null) {
+                    hud.message(player, message);
                 }
             }
         }
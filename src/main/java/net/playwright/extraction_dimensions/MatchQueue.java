@@ -0,0 +1,115 @@
+package net.playwright.extraction_dimensions;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.playwright.extraction_dimensions.coordinator.Coordinator;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Players waiting for a match, in the order they joined.
+ * <p>
+ * Joining and leaving are O(1). Matches are formed from the head of the queue every
+ * {@link Config#queueFormationIntervalTicks} ticks, between {@link Config#queueMinPlayers} and
+ * {@link Config#queueMaxPlayers} players each, and only as fast as {@link DimensionPool} is allowed
+ * to hand out levels, so a burst of players queueing up can't create a burst of dimensions. On a
+ * lobby the matches go to match hosts instead, as fast as they have room (see {@link Coordinator}).
+ */
+@Mod.EventBusSubscriber(modid = DimensionMod.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class MatchQueue {
+
+    private static final LinkedHashSet<UUID> queue = new LinkedHashSet<>();
+    private static int ticksSinceFormation = 0;
+
+    /**
+     * @return false if the player is already queued or in a match, here or on a match host
+     */
+    public static boolean join(ServerPlayer player) {
+        if (MatchManager.isInMatch(player.getUUID()) || Coordinator.isAway(player.getUUID()))
+            return false;
+        return queue.add(player.getUUID());
+    }
+
+    /**
+     * @return false if the player was not queued
+     */
+    public static boolean leave(ServerPlayer player) {
+        return queue.remove(player.getUUID());
+    }
+
+    public static int size() {
+        return queue.size();
+    }
+
+    /**
+     * Puts players back at the head of the queue, in order, so they keep their place.
+     */
+    public static void putBack(List<UUID> playerIds) {
+        List<UUID> rest = new ArrayList<>(queue);
+        queue.clear();
+        queue.addAll(playerIds);
+        queue.addAll(rest);
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END)
+            return;
+        if (++ticksSinceFormation < Config.queueFormationIntervalTicks)
+            return;
+        ticksSinceFormation = 0;
+
+        MinecraftServer server = event.getServer();
+        if (server == null)
+            return;
+
+        while (queue.size() >= Config.queueMinPlayers && Coordinator.canStartMatch()) {
+            List<ServerPlayer> players = takeGroup(server);
+            // Some of those taken had gone away or were put into a match some other way; if that left
+            // too few, put the rest back in front so they keep their place
+            if (players.size() < Config.queueMinPlayers) {
+                putBack(players.stream().map(ServerPlayer::getUUID).toList());
+                break;
+            }
+            if (!Coordinator.startMatch(server, players)) {
+                putBack(players.stream().map(ServerPlayer::getUUID).toList());
+                break;
+            }
+        }
+    }
+
+    // Takes up to queueMaxPlayers players from the head of the queue
+    private static List<ServerPlayer> takeGroup(MinecraftServer server) {
+        List<ServerPlayer> players = new ArrayList<>();
+        Iterator<UUID> iterator = queue.iterator();
+        while (iterator.hasNext() && players.size() < Config.queueMaxPlayers) {
+            UUID playerId = iterator.next();
+            iterator.remove();
+            ServerPlayer player = server.getPlayerList().getPlayer(playerId);
+            if (player != null && !MatchManager.isInMatch(playerId) && !Coordinator.isAway(playerId)) {
+                players.add(player);
+            }
+        }
+        return players;
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        queue.remove(event.getEntity().getUUID());
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        queue.clear();
+        ticksSinceFormation = 0;
+    }
+}
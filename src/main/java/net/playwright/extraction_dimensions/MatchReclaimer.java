@@ -0,0 +1,190 @@
+package net.playwright.extraction_dimensions;
+
+import commoble.infiniverse.api.InfiniverseAPI;
+import net.minecraft.Util;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.storage.LevelResource;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.server.ServerStartedEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Gets rid of finished match dimensions: players are moved out, the level is unregistered through
+ * Infiniverse and, once it is closed, its folder is deleted on the I/O pool.
+ * <p>
+ * Each step runs on a later tick than the one before it, so a match ending never costs more than
+ * one small step on the server thread.
+ */
+@Mod.EventBusSubscriber(modid = DimensionMod.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class MatchReclaimer {
+
+    // Ticks to wait after the level is gone before touching its files, so its I/O workers can finish
+    private static final int CLOSE_GRACE_TICKS = 20;
+    // Give up waiting for Infiniverse after this many ticks and leave the folder to the startup sweep
+    private static final int CLOSE_TIMEOUT_TICKS = 20 * 60;
+
+    private static final List<Reclamation> pending = new ArrayList<>();
+
+    private enum Stage {
+        EVACUATE,
+        UNREGISTER,
+        AWAIT_CLOSE,
+        DELETE
+    }
+
+    private static class Reclamation {
+        private final ResourceKey<Level> dimension;
+        private final Path folder;
+        private Stage stage = Stage.EVACUATE;
+        private int waitedTicks = 0;
+
+        private Reclamation(ResourceKey<Level> dimension, Path folder) {
+            this.dimension = dimension;
+            this.folder = folder;
+        }
+    }
+
+    /**
+     * Queues a match dimension for removal. The level must not be used by anything else afterwards.
+     */
+    public static void reclaim(MinecraftServer server, ResourceKey<Level> dimension) {
+        Path folder = server.storageSource.getDimensionPath(dimension);
+        pending.add(new Reclamation(dimension, folder));
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || pending.isEmpty())
+            return;
+
+        MinecraftServer server = event.getServer();
+        if (server == null)
+            return;
+
+        Iterator<Reclamation> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            if (advance(server, iterator.next())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    // Runs one step of the pipeline, returns true once the reclamation is finished
+    private static boolean advance(MinecraftServer server, Reclamation reclamation) {
+        switch (reclamation.stage) {
+            case EVACUATE -> {
+                ServerLevel level = server.getLevel(reclamation.dimension);
+                if (level != null) {
+                    // Copy, teleporting removes the player from the level's list
+                    for (ServerPlayer player : new ArrayList<>(level.players())) {
+                        MatchManager.sendToOverworldSpawn(server, player);
+                    }
+                }
+                reclamation.stage = Stage.UNREGISTER;
+            }
+            case UNREGISTER -> {
+                if (server.getLevel(reclamation.dimension) != null) {
+                    InfiniverseAPI.get().markDimensionForUnregistration(server, reclamation.dimension);
+                }
+                reclamation.stage = Stage.AWAIT_CLOSE;
+            }
+            case AWAIT_CLOSE -> {
+                reclamation.waitedTicks++;
+                if (server.getLevel(reclamation.dimension) == null) {
+                    reclamation.stage = Stage.DELETE;
+                    reclamation.waitedTicks = 0;
+                } else if (reclamation.waitedTicks >= CLOSE_TIMEOUT_TICKS) {
+                    DimensionMod.LOGGER.warn("Dimension {} was not unloaded in time, leaving its files in place",
+                            reclamation.dimension.location());
+                    return true;
+                }
+            }
+            case DELETE -> {
+                if (++reclamation.waitedTicks < CLOSE_GRACE_TICKS)
+                    return false;
+                // The level is closed and saved for the last time, so it can stop being ephemeral
+                EphemeralLevels.unmark(reclamation.dimension);
+                deleteAsync(reclamation.folder);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void deleteAsync(Path folder) {
+        Util.ioPool().execute(() -> {
+            try {
+                TemporaryDimensionHelper.deleteDirectory(folder);
+            } catch (IOException e) {
+                DimensionMod.LOGGER.error("Failed to delete match dimension folder " + folder, e);
+            }
+        });
+    }
+
+    /**
+     * Deletes match folders left behind by a crash or a stop before their match was reclaimed.
+     */
+    @SubscribeEvent
+    public static void onServerStarted(ServerStartedEvent event) {
+        MinecraftServer server = event.getServer();
+        Path root = server.getWorldPath(LevelResource.ROOT).resolve("dimensions").resolve(DimensionMod.MODID)
+                .normalize();
+        if (!Files.isDirectory(root))
+            return;
+
+        Set<String> loaded = new HashSet<>();
+        for (ResourceKey<Level> key : server.levelKeys()) {
+            if (key.location().getNamespace().equals(DimensionMod.MODID)) {
+                loaded.add(key.location().getPath());
+            }
+        }
+
+        List<Path> orphans = new ArrayList<>();
+        try (DirectoryStream<Path> folders = Files.newDirectoryStream(root, "match_*")) {
+            for (Path folder : folders) {
+                // Anything not backed by a loaded level or a recovered match is left over from a previous run
+                String matchId = folder.getFileName().toString();
+                if (!loaded.contains(matchId) && !MatchJournal.isRecovered(matchId)) {
+                    orphans.add(folder);
+                }
+            }
+        } catch (IOException e) {
+            DimensionMod.LOGGER.error("Failed to list match dimension folders", e);
+            return;
+        }
+
+        if (!orphans.isEmpty()) {
+            DimensionMod.LOGGER.info("Removing {} orphaned match dimension folders", orphans.size());
+            orphans.forEach(MatchReclaimer::deleteAsync);
+        }
+    }
+
+    /**
+     * @return how many match dimensions are still on their way out
+     */
+    public static int size() {
+        return pending.size();
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        // Whatever is left here is picked up by the startup sweep next time
+        pending.clear();
+    }
+}
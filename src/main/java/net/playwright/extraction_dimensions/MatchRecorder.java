@@ -0,0 +1,413 @@
+package net.playwright.extraction_dimensions;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.world.level.storage.LevelResource;
+import net.minecraftforge.event.server.ServerStartingEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.eventbus.api.EventPriority;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Records what happens in one match to a file, for replays and analytics.
+ * <p>
+ * Events are fixed-size records of {@link #RECORD_BYTES} bytes:
+ * {@code [type][unused][slot: short][tick: int][16 bytes of payload]}, where the tick counts from the
+ * match's creation. They are written into a ring buffer allocated off-heap with the match, so recording
+ * one is a few absolute puts and an ordered store, without allocating or locking. When the buffer is
+ * full the record is dropped and counted.
+ * <p>
+ * One background thread drains every match's buffer into blocks of up to {@link #BLOCK_RECORDS} records,
+ * deflates each block and appends it to the match's file in {@code extraction_recordings}. A partly
+ * filled block is written after {@link #BLOCK_FLUSH_MILLIS}, so a crash loses little. When the match
+ * ends, an index of the blocks is written at the end of the file; {@link MatchRecording} maps the file
+ * and inflates one block at a time.
+ * <p>
+ * A recorder is only written to by one thread at a time: the server thread, or the match's bookkeeping
+ * task, which the server thread waits for.
+ */
+@Mod.EventBusSubscriber(modid = DimensionMod.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class MatchRecorder {
+
+    // Record types. JOIN carries the player's UUID; POSITION, DEATH and EXTRACT_START a position and
+    // EXTRACT_CANCEL and EXTRACT_COMPLETE also the ticks since the extraction started; PHASE the state
+    static final byte JOIN = 1;
+    static final byte POSITION = 2;
+    static final byte PHASE = 3;
+    static final byte EXTRACT_START = 4;
+    static final byte EXTRACT_CANCEL = 5;
+    static final byte EXTRACT_COMPLETE = 6;
+    static final byte DEATH = 7;
+    static final byte END = 8;
+
+    static final int RECORD_BYTES = 24;
+    static final int BLOCK_RECORDS = 4096;
+    // Record count, first and last tick, compressed length and crc32 of the compressed bytes
+    static final int BLOCK_HEADER_BYTES = 5 * 4;
+    // Offset, first and last tick of each block
+    static final int INDEX_ENTRY_BYTES = 8 + 4 + 4;
+    // Block count, index offset, records, dropped records, magic
+    static final int TRAILER_BYTES = 4 + 8 + 8 + 8 + 4;
+    static final int MAGIC = 0x45585243; // "EXRC"
+    static final int VERSION = 1;
+    static final String EXTENSION = ".rec";
+
+    private static final long DRAIN_INTERVAL_MILLIS = 100;
+    private static final long BLOCK_FLUSH_MILLIS = 10_000;
+
+    // Used when recording is switched off; records nothing
+    private static final MatchRecorder DISABLED = new MatchRecorder();
+
+    private static volatile Drainer drainer;
+    private static Path directory;
+
+    private final String matchId;
+    private final long createdTick;
+    private final Path path;
+    private final ByteBuffer ring;
+    private final int mask;
+    // Records published by the match and records taken out by the drain thread
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong drained = new AtomicLong();
+    // Only changed by the thread writing records
+    private volatile long dropped = 0;
+    private volatile boolean finished = false;
+
+    // Only touched by the drain thread
+    private FileChannel channel;
+    private final byte[] block = new byte[BLOCK_RECORDS * RECORD_BYTES];
+    private int blockRecords = 0;
+    private int blockFirstTick;
+    private int blockLastTick;
+    private long blockStartedMillis;
+    private final LongArrayList blockOffsets = new LongArrayList();
+    private final IntArrayList blockTicks = new IntArrayList();
+    private long recordsWritten = 0;
+
+    private MatchRecorder() {
+        this.matchId = null;
+        this.createdTick = 0;
+        this.path = null;
+        this.ring = null;
+        this.mask = 0;
+    }
+
+    private MatchRecorder(String matchId, long createdTick, Path path, int capacity) {
+        this.matchId = matchId;
+        this.createdTick = createdTick;
+        this.path = path;
+        this.ring = ByteBuffer.allocateDirect(capacity * RECORD_BYTES);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @return a recorder for the match, which records nothing if recording is switched off
+     */
+    static MatchRecorder open(String matchId, long createdTick) {
+        Drainer current = drainer;
+        if (current == null || !Config.recorderEnabled)
+            return DISABLED;
+
+        // Rounded up to a power of two, so a record's place in the ring is a mask
+        int capacity = Integer.highestOneBit(Math.max(64, Config.recorderBufferRecords) - 1) << 1;
+        Path path = directory.resolve(matchId + "-" + System.currentTimeMillis() + EXTENSION);
+        MatchRecorder recorder = new MatchRecorder(matchId, createdTick, path, capacity);
+        current.recorders.add(recorder);
+        return recorder;
+    }
+
+    // Before MatchJournal recovers matches at normal priority, so recovered matches get a recording too
+    @SubscribeEvent(priority = EventPriority.HIGH)
+    public static void onServerStarting(ServerStartingEvent event) {
+        directory = event.getServer().getWorldPath(LevelResource.ROOT).resolve("extraction_recordings");
+        drainer = new Drainer();
+        drainer.thread.start();
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        if (drainer != null) {
+            drainer.close();
+            drainer = null;
+        }
+    }
+
+    /**
+     * @return the folder recordings are written to, or null while no server is running
+     */
+    public static Path getDirectory() {
+        return drainer != null ? directory : null;
+    }
+
+    void joined(long tick, int slot, UUID player) {
+        int offset = claim(JOIN, slot, tick);
+        if (offset >= 0) {
+            ring.putLong(offset + 8, player.getMostSignificantBits());
+            ring.putLong(offset + 16, player.getLeastSignificantBits());
+            publish();
+        }
+    }
+
+    void position(long tick, int slot, double x, double y, double z) {
+        recordAt(POSITION, slot, tick, x, y, z, 0);
+    }
+
+    void phase(long tick, MatchManager.Match.MatchState state) {
+        recordAt(PHASE, -1, tick, 0, 0, 0, state.ordinal());
+    }
+
+    void extractionStarted(long tick, int slot, double x, double y, double z) {
+        recordAt(EXTRACT_START, slot, tick, x, y, z, 0);
+    }
+
+    void extractionCancelled(long tick, int slot, double x, double y, double z, int ticksElapsed) {
+        recordAt(EXTRACT_CANCEL, slot, tick, x, y, z, ticksElapsed);
+    }
+
+    void extracted(long tick, int slot, double x, double y, double z, int ticksTaken) {
+        recordAt(EXTRACT_COMPLETE, slot, tick, x, y, z, ticksTaken);
+    }
+
+    void died(long tick, int slot, double x, double y, double z) {
+        recordAt(DEATH, slot, tick, x, y, z, 0);
+    }
+
+    /**
+     * Records the end of the match. The drain thread then writes what's left and closes the file.
+     */
+    void finish(long tick) {
+        if (ring == null || finished)
+            return;
+        recordAt(END, -1, tick, 0, 0, 0, 0);
+        finished = true;
+    }
+
+    private void recordAt(byte type, int slot, long tick, double x, double y, double z, int value) {
+        int offset = claim(type, slot, tick);
+        if (offset >= 0) {
+            ring.putFloat(offset + 8, (float) x);
+            ring.putFloat(offset + 12, (float) y);
+            ring.putFloat(offset + 16, (float) z);
+            ring.putInt(offset + 20, value);
+            publish();
+        }
+    }
+
+    // Writes the common part of the next record; returns where it starts in the ring, or -1 if it was dropped
+    private int claim(byte type, int slot, long tick) {
+        if (ring == null || finished)
+            return -1;
+        long index = written.get();
+        if (index - drained.get() > mask) {
+            dropped++;
+            return -1;
+        }
+        int offset = (int) (index & mask) * RECORD_BYTES;
+        ring.put(offset, type);
+        ring.put(offset + 1, (byte) 0);
+        ring.putShort(offset + 2, (short) slot);
+        ring.putInt(offset + 4, (int) (tick - createdTick));
+        return offset;
+    }
+
+    // Makes the record visible to the drain thread, after everything in it was written
+    private void publish() {
+        written.lazySet(written.get() + 1);
+    }
+
+    public String getMatchId() {
+        return matchId;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    // Moves everything published so far into blocks, writing the full ones
+    private void drain(long nowMillis) throws IOException {
+        if (channel == null) {
+            openFile();
+        }
+
+        long end = written.get();
+        for (long index = drained.get(); index < end; index++) {
+            int offset = (int) (index & mask) * RECORD_BYTES;
+            int tick = ring.getInt(offset + 4);
+            if (blockRecords == 0) {
+                blockFirstTick = tick;
+                blockStartedMillis = nowMillis;
+            }
+            blockLastTick = tick;
+            ring.get(offset, block, blockRecords * RECORD_BYTES, RECORD_BYTES);
+            if (++blockRecords == BLOCK_RECORDS) {
+                writeBlock();
+            }
+        }
+        drained.lazySet(end);
+
+        if (blockRecords > 0 && nowMillis - blockStartedMillis >= BLOCK_FLUSH_MILLIS) {
+            writeBlock();
+        }
+    }
+
+    private void openFile() throws IOException {
+        Files.createDirectories(path.getParent());
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        byte[] id = matchId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(4 * 4 + 8 + 2 + id.length);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_BYTES).putInt(Config.recorderSampleIntervalTicks)
+                .putLong(System.currentTimeMillis()).putShort((short) id.length).put(id).flip();
+        writeFully(header);
+    }
+
+    private void writeBlock() throws IOException {
+        Deflater deflater = drainer.deflater;
+        deflater.reset();
+        deflater.setInput(block, 0, blockRecords * RECORD_BYTES);
+        deflater.finish();
+        ByteBuffer out = drainer.compressed;
+        out.clear().position(BLOCK_HEADER_BYTES);
+        while (!deflater.finished()) {
+            if (!out.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(out.capacity() * 2);
+                out.flip();
+                larger.put(out);
+                out = drainer.compressed = larger;
+            }
+            deflater.deflate(out);
+        }
+
+        int compressedLength = out.position() - BLOCK_HEADER_BYTES;
+        CRC32 crc = drainer.crc;
+        crc.reset();
+        crc.update(out.array(), BLOCK_HEADER_BYTES, compressedLength);
+        out.putInt(0, blockRecords).putInt(4, blockFirstTick).putInt(8, blockLastTick)
+                .putInt(12, compressedLength).putInt(16, (int) crc.getValue());
+        out.flip();
+
+        blockOffsets.add(channel.position());
+        blockTicks.add(blockFirstTick);
+        blockTicks.add(blockLastTick);
+        writeFully(out);
+        recordsWritten += blockRecords;
+        blockRecords = 0;
+    }
+
+    // Writes the last block and the index, and closes the file
+    private void complete() throws IOException {
+        if (blockRecords > 0) {
+            writeBlock();
+        }
+        long indexOffset = channel.position();
+        ByteBuffer index = ByteBuffer.allocate(blockOffsets.size() * INDEX_ENTRY_BYTES + TRAILER_BYTES);
+        for (int i = 0; i < blockOffsets.size(); i++) {
+            index.putLong(blockOffsets.getLong(i)).putInt(blockTicks.getInt(i * 2)).putInt(blockTicks.getInt(i * 2 + 1));
+        }
+        index.putInt(blockOffsets.size()).putLong(indexOffset).putLong(recordsWritten).putLong(dropped).putInt(MAGIC)
+                .flip();
+        writeFully(index);
+        channel.force(false);
+        closeFile();
+
+        if (dropped > 0) {
+            DimensionMod.LOGGER.warn("Recording of {} dropped {} records; raise recorderBufferRecords", matchId, dropped);
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void closeFile() {
+        if (channel == null)
+            return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            DimensionMod.LOGGER.error("Failed to close the recording of " + matchId, e);
+        }
+        channel = null;
+    }
+
+    private static class Drainer implements Runnable {
+        private final List<MatchRecorder> recorders = new CopyOnWriteArrayList<>();
+        private final Thread thread;
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final CRC32 crc = new CRC32();
+        private ByteBuffer compressed = ByteBuffer.allocate(BLOCK_RECORDS * RECORD_BYTES / 2);
+        private volatile boolean running = true;
+
+        private Drainer() {
+            this.thread = new Thread(this, "Extraction-Recorder");
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    drainAll(false);
+                    Thread.sleep(DRAIN_INTERVAL_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                // Matches still running at shutdown get a complete file too; a recovered match starts a new one
+                drainAll(true);
+                deflater.end();
+            }
+        }
+
+        private void drainAll(boolean stopping) {
+            long now = System.currentTimeMillis();
+            for (MatchRecorder recorder : recorders) {
+                // Read before draining, so everything recorded before the end has been drained
+                boolean done = stopping || recorder.finished;
+                try {
+                    recorder.drain(now);
+                    if (done) {
+                        recorder.complete();
+                        recorders.remove(recorder);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    DimensionMod.LOGGER.error("Failed to write the recording of " + recorder.matchId
+                            + "; the rest of the match will not be recorded", e);
+                    recorder.closeFile();
+                    recorder.finished = true;
+                    recorders.remove(recorder);
+                }
+            }
+        }
+
+        // Writes out what is still buffered and waits for the drain thread to finish
+        private void close() {
+            // Not interrupted: that would close a file channel in the middle of a write
+            running = false;
+            try {
+                thread.join(10_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (thread.isAlive()) {
+                DimensionMod.LOGGER.warn("Match recorder did not finish writing in time");
+            }
+        }
+    }
+}
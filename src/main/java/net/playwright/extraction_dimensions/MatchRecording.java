@@ -0,0 +1,377 @@
+package net.playwright.extraction_dimensions;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.world.level.ChunkPos;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a file written by {@link MatchRecorder}.
+ * <p>
+ * The file is memory-mapped and its blocks are inflated one at a time into a single reused buffer, so
+ * reading a recording takes about one block of heap however long the match was. A recording without
+ * its index, from a server that crashed, is read block by block up to the first torn block.
+ * <p>
+ * Not thread safe.
+ */
+public class MatchRecording implements Closeable {
+
+    // Edge length in blocks of the heatmap cells
+    public static final int HEATMAP_CELL = 64;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final String matchId;
+    private final long startedMillis;
+    private final int sampleIntervalTicks;
+    private final LongArrayList blockOffsets = new LongArrayList();
+    private final boolean complete;
+    private final long dropped;
+    private final Inflater inflater = new Inflater();
+    private final ByteBuffer block = ByteBuffer.allocate(MatchRecorder.BLOCK_RECORDS * MatchRecorder.RECORD_BYTES);
+    private final RecordView record = new RecordView();
+
+    private MatchRecording(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Recording is too large to map: " + size + " bytes");
+        map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+        if (size < 4 * 4 + 8 + 2 || map.getInt(0) != MatchRecorder.MAGIC)
+            throw new IOException("Not a match recording");
+        if (map.getInt(4) != MatchRecorder.VERSION || map.getInt(8) != MatchRecorder.RECORD_BYTES)
+            throw new IOException("Unsupported recording version " + map.getInt(4));
+        sampleIntervalTicks = map.getInt(12);
+        startedMillis = map.getLong(16);
+        byte[] id = new byte[map.getShort(24)];
+        map.get(26, id);
+        matchId = new String(id, StandardCharsets.UTF_8);
+        int headerEnd = 26 + id.length;
+
+        int trailer = (int) size - MatchRecorder.TRAILER_BYTES;
+        if (trailer >= headerEnd && map.getInt(trailer + MatchRecorder.TRAILER_BYTES - 4) == MatchRecorder.MAGIC) {
+            int blocks = map.getInt(trailer);
+            int index = (int) map.getLong(trailer + 4);
+            for (int i = 0; i < blocks; i++) {
+                blockOffsets.add(map.getLong(index + i * MatchRecorder.INDEX_ENTRY_BYTES));
+            }
+            dropped = map.getLong(trailer + 4 + 8 + 8);
+            complete = true;
+        } else {
+            scanBlocks(headerEnd, (int) size);
+            dropped = 0;
+            complete = false;
+        }
+    }
+
+    public static MatchRecording open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new MatchRecording(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Finds the blocks of a file that has no index, stopping at the first one that's cut off or damaged
+    private void scanBlocks(int position, int size) {
+        CRC32 crc = new CRC32();
+        while (position + MatchRecorder.BLOCK_HEADER_BYTES <= size) {
+            int length = map.getInt(position + 12);
+            int data = position + MatchRecorder.BLOCK_HEADER_BYTES;
+            if (length < 0 || data + length > size)
+                break;
+            crc.reset();
+            crc.update(map.slice(data, length));
+            if ((int) crc.getValue() != map.getInt(position + 16))
+                break;
+            blockOffsets.add(position);
+            position = data + length;
+        }
+    }
+
+    /**
+     * Passes every record, in order, to {@code visitor}. The {@link RecordView} passed is reused for the
+     * next record, so it must not be kept.
+     */
+    public void forEach(RecordVisitor visitor) throws IOException {
+        for (int i = 0; i < blockOffsets.size(); i++) {
+            int position = (int) blockOffsets.getLong(i);
+            int records = map.getInt(position);
+            int length = map.getInt(position + 12);
+            inflater.reset();
+            inflater.setInput(map.slice(position + MatchRecorder.BLOCK_HEADER_BYTES, length));
+            block.clear().limit(records * MatchRecorder.RECORD_BYTES);
+            try {
+                while (block.hasRemaining() && !inflater.finished()) {
+                    if (inflater.inflate(block) == 0 && inflater.needsInput())
+                        break;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Block " + i + " of the recording of " + matchId + " is damaged", e);
+            }
+            if (block.hasRemaining())
+                throw new IOException("Block " + i + " of the recording of " + matchId + " is short");
+
+            for (int offset = 0; offset < records * MatchRecorder.RECORD_BYTES; offset += MatchRecorder.RECORD_BYTES) {
+                record.offset = offset;
+                visitor.visit(record);
+            }
+        }
+    }
+
+    /**
+     * Reads the whole recording once and sums it up.
+     */
+    public Summary summarize() throws IOException {
+        Summary summary = new Summary();
+        forEach(summary::add);
+        return summary;
+    }
+
+    public String getMatchId() {
+        return matchId;
+    }
+
+    public long getStartedMillis() {
+        return startedMillis;
+    }
+
+    public int getSampleIntervalTicks() {
+        return sampleIntervalTicks;
+    }
+
+    /**
+     * @return false if the file has no index, because the server stopped without finishing it
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+
+    public interface RecordVisitor {
+        void visit(RecordView record);
+    }
+
+    /**
+     * A view of the current record in the block being read.
+     */
+    public class RecordView {
+        private int offset;
+
+        private RecordView() {
+        }
+
+        public byte getType() {
+            return block.get(offset);
+        }
+
+        /**
+         * @return the player's slot in the match, or -1 for records about the whole match
+         */
+        public int getSlot() {
+            return block.getShort(offset + 2);
+        }
+
+        /**
+         * @return match clock ticks since the match was created
+         */
+        public int getTick() {
+            return block.getInt(offset + 4);
+        }
+
+        public float getX() {
+            return block.getFloat(offset + 8);
+        }
+
+        public float getY() {
+            return block.getFloat(offset + 12);
+        }
+
+        public float getZ() {
+            return block.getFloat(offset + 16);
+        }
+
+        /**
+         * @return the state ordinal of a phase record, or the ticks since the extraction started
+         */
+        public int getValue() {
+            return block.getInt(offset + 20);
+        }
+
+        public UUID getPlayer() {
+            return new UUID(block.getLong(offset + 8), block.getLong(offset + 16));
+        }
+    }
+
+    /**
+     * Totals for one recorded match.
+     */
+    public static class Summary {
+        private final List<UUID> players = new ArrayList<>();
+        private long records = 0;
+        private int lastTick = 0;
+        private int playingTick = -1;
+        private int endTick = -1;
+        private int positionSamples = 0;
+        private int deaths = 0;
+        private int extractionsStarted = 0;
+        private int extractionsCancelled = 0;
+        private final IntArrayList extractionTicks = new IntArrayList();
+        // Heatmap cell, packed like a chunk position -> position samples in it
+        private final Long2IntOpenHashMap heatmap = new Long2IntOpenHashMap();
+        private final Long2IntOpenHashMap deathCells = new Long2IntOpenHashMap();
+
+        private void add(RecordView record) {
+            records++;
+            lastTick = Math.max(lastTick, record.getTick());
+            switch (record.getType()) {
+                case MatchRecorder.JOIN -> {
+                    while (players.size() <= record.getSlot()) {
+                        players.add(null);
+                    }
+                    players.set(record.getSlot(), record.getPlayer());
+                }
+                case MatchRecorder.POSITION -> {
+                    positionSamples++;
+                    heatmap.addTo(cell(record), 1);
+                }
+                case MatchRecorder.PHASE -> {
+                    if (record.getValue() == MatchManager.Match.MatchState.PLAYING.ordinal() && playingTick < 0) {
+                        playingTick = record.getTick();
+                    }
+                }
+                case MatchRecorder.EXTRACT_START -> extractionsStarted++;
+                case MatchRecorder.EXTRACT_CANCEL -> extractionsCancelled++;
+                case MatchRecorder.EXTRACT_COMPLETE -> extractionTicks.add(record.getValue());
+                case MatchRecorder.DEATH -> {
+                    deaths++;
+                    deathCells.addTo(cell(record), 1);
+                }
+                case MatchRecorder.END -> endTick = record.getTick();
+                default -> {
+                }
+            }
+        }
+
+        private static long cell(RecordView record) {
+            return ChunkPos.asLong(Math.floorDiv((int) record.getX(), HEATMAP_CELL),
+                    Math.floorDiv((int) record.getZ(), HEATMAP_CELL));
+        }
+
+        public List<UUID> getPlayers() {
+            return players;
+        }
+
+        public long getRecords() {
+            return records;
+        }
+
+        /**
+         * @return ticks from the match's creation to its end, or to the last record if it has none
+         */
+        public int getDurationTicks() {
+            return endTick >= 0 ? endTick : lastTick;
+        }
+
+        /**
+         * @return ticks of gameplay, after the warmup
+         */
+        public int getPlayingTicks() {
+            return playingTick >= 0 ? getDurationTicks() - playingTick : 0;
+        }
+
+        public boolean hasEnded() {
+            return endTick >= 0;
+        }
+
+        public int getPositionSamples() {
+            return positionSamples;
+        }
+
+        public int getDeaths() {
+            return deaths;
+        }
+
+        public int getExtractionsStarted() {
+            return extractionsStarted;
+        }
+
+        public int getExtractionsCancelled() {
+            return extractionsCancelled;
+        }
+
+        public int getExtractionsCompleted() {
+            return extractionTicks.size();
+        }
+
+        /**
+         * @return how long completed extractions took, at the given fraction (0.5 for the median), or -1
+         */
+        public int getExtractionTicks(double fraction) {
+            if (extractionTicks.isEmpty())
+                return -1;
+            int[] sorted = extractionTicks.toIntArray();
+            Arrays.sort(sorted);
+            return sorted[Math.min(sorted.length - 1, (int) (fraction * sorted.length))];
+        }
+
+        /**
+         * @return the {@code count} heatmap cells with the most position samples, busiest first, as
+         * {@link ChunkPos}-packed cell coordinates; multiply by {@link #HEATMAP_CELL} for block coordinates
+         */
+        public long[] getBusiestCells(int count) {
+            return topCells(heatmap, count);
+        }
+
+        public int getSamplesIn(long cell) {
+            return heatmap.get(cell);
+        }
+
+        public long[] getDeadliestCells(int count) {
+            return topCells(deathCells, count);
+        }
+
+        public int getDeathsIn(long cell) {
+            return deathCells.get(cell);
+        }
+
+        private static long[] topCells(Long2IntOpenHashMap cells, int count) {
+            List<Long2IntMap.Entry> entries = new ArrayList<>(cells.long2IntEntrySet());
+            entries.sort((a, b) -> Integer.compare(b.getIntValue(), a.getIntValue()));
+            long[] top = new long[Math.min(count, entries.size())];
+            for (int i = 0; i < top.length; i++) {
+                top[i] = entries.get(i).getLongKey();
+            }
+            return top;
+        }
+    }
+}
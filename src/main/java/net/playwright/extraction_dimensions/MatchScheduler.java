@@ -0,0 +1,239 @@
+package net.playwright.extraction_dimensions;
+
+/**
+ * A hierarchical timing wheel keyed on ticks. MatchManager drives it from its wall-clock match clock
+ * rather than the server's tick count.
+ * <p>
+ * Match phases, countdowns and extractions are registered here instead of being polled from every
+ * match on every tick. Advancing by one tick only touches the bucket that is due (plus, once every
+ * 64 ticks, one bucket of a coarser wheel that is spread into the finer ones), so the per-tick cost
+ * follows the number of due tasks. Scheduling and cancelling are O(1).
+ * <p>
+ * Not thread safe. A match's scheduler is confined to one thread at a time: the server thread, or the
+ * match's bookkeeping task, which the server thread joins.
+ */
+public class MatchScheduler {
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int WHEEL_COUNT = 4;
+    // Furthest delay the wheels can hold directly, about 9.7 days; later tasks are re-filed on the way
+    private static final long MAX_DELAY = (1L << (WHEEL_BITS * WHEEL_COUNT)) - 1;
+
+    /**
+     * Told how long each task it is attached to took to run.
+     */
+    public interface TimingListener {
+        void taskRan(long nanos);
+    }
+
+    /**
+     * A scheduled action. Keep the handle to cancel it.
+     */
+    public final class Task {
+        private final Runnable action;
+        private final TimingListener listener;
+        private long deadline;
+        private Task prev;
+        private Task next;
+        private Task bucket; // The bucket's sentinel while queued, null otherwise
+
+        private Task(Runnable action, TimingListener listener) {
+            this.action = action;
+            this.listener = listener;
+        }
+
+        /**
+         * Removes the task from its bucket if it has not run yet.
+         *
+         * @return true if the task was pending
+         */
+        public boolean cancel() {
+            if (bucket == null)
+                return false;
+            if (bucket == running) {
+                // Part of the batch being run right now; the batch loop skips it
+                bucket = null;
+                pending--;
+                return true;
+            }
+            prev.next = next;
+            next.prev = prev;
+            prev = null;
+            next = null;
+            bucket = null;
+            pending--;
+            return true;
+        }
+
+        public boolean isPending() {
+            return bucket != null;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+    }
+
+    // wheels[level][slot] is the sentinel of a circular doubly linked list
+    private final Task[][] wheels = new Task[WHEEL_COUNT][WHEEL_SIZE];
+    // Marks the tasks of the batch that is currently being run
+    private final Task running = new Task(null, null);
+    // The next tick that will be processed
+    private long now;
+    private int pending = 0;
+
+    public MatchScheduler(long startTick) {
+        this.now = startTick;
+        for (Task[] wheel : wheels) {
+            for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+                Task sentinel = new Task(null, null);
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+                wheel[slot] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Runs {@code action} when tick {@code tick} is processed. Ticks that were already processed run on
+     * the next one.
+     */
+    public Task schedule(long tick, Runnable action) {
+        return schedule(tick, action, null);
+    }
+
+    /**
+     * Like {@link #schedule(long, Runnable)}, reporting the task's run time to {@code listener}.
+     */
+    public Task schedule(long tick, Runnable action, TimingListener listener) {
+        Task task = new Task(action, listener);
+        schedule(task, tick);
+        return task;
+    }
+
+    /**
+     * Creates a task without scheduling it, for callers that re-arm the same task repeatedly and want to
+     * avoid allocating a new one each time.
+     */
+    public Task createTask(Runnable action, TimingListener listener) {
+        return new Task(action, listener);
+    }
+
+    /**
+     * Schedules a task that is not currently pending (new, already run, or cancelled).
+     */
+    public void schedule(Task task, long tick) {
+        if (task.bucket != null)
+            throw new IllegalStateException("Task is already scheduled");
+        task.deadline = tick;
+        insert(task);
+        pending++;
+    }
+
+    private void insert(Task task) {
+        long delay = Math.min(Math.max(task.deadline - now, 0), MAX_DELAY);
+        long filedAt = now + delay;
+
+        int level = 0;
+        while (level < WHEEL_COUNT - 1 && delay >= 1L << (WHEEL_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = (int) (filedAt >>> (WHEEL_BITS * level)) & WHEEL_MASK;
+
+        Task sentinel = wheels[level][slot];
+        task.bucket = sentinel;
+        task.prev = sentinel.prev;
+        task.next = sentinel;
+        sentinel.prev.next = task;
+        sentinel.prev = task;
+    }
+
+    /**
+     * Processes every tick up to and including {@code tick}, running the tasks that fall due.
+     */
+    public void advanceTo(long tick) {
+        while (now <= tick) {
+            int slot = (int) now & WHEEL_MASK;
+
+            // At the start of each round, spread the next bucket of the coarser wheels into the finer ones
+            if (slot == 0) {
+                for (int level = 1; level < WHEEL_COUNT; level++) {
+                    int coarseSlot = (int) (now >>> (WHEEL_BITS * level)) & WHEEL_MASK;
+                    cascade(wheels[level][coarseSlot]);
+                    if (coarseSlot != 0)
+                        break;
+                }
+            }
+
+            // Detach the bucket first, so tasks scheduled by the ones that run land in a later tick
+            Task batch = detach(wheels[0][slot]);
+            for (Task task = batch; task != null; task = task.next) {
+                task.bucket = running;
+            }
+            now++;
+
+            Task task = batch;
+            while (task != null) {
+                Task next = task.next;
+                task.prev = null;
+                task.next = null;
+                if (task.bucket == running) {
+                    task.bucket = null;
+                    if (task.deadline >= now) {
+                        // Only happens for tasks beyond MAX_DELAY that were filed early
+                        insert(task);
+                    } else {
+                        pending--;
+                        run(task);
+                    }
+                }
+                task = next;
+            }
+        }
+    }
+
+    private static void run(Task task) {
+        long start = task.listener != null ? System.nanoTime() : 0;
+        try {
+            task.action.run();
+        } catch (Exception e) {
+            DimensionMod.LOGGER.error("Scheduled match task failed", e);
+        }
+        if (task.listener != null) {
+            task.listener.taskRan(System.nanoTime() - start);
+        }
+    }
+
+    private void cascade(Task sentinel) {
+        Task task = detach(sentinel);
+        while (task != null) {
+            Task next = task.next;
+            insert(task);
+            task = next;
+        }
+    }
+
+    // Empties a bucket and returns its tasks as a null-terminated chain
+    private static Task detach(Task sentinel) {
+        if (sentinel.next == sentinel)
+            return null;
+        Task first = sentinel.next;
+        sentinel.prev.next = null;
+        sentinel.next = sentinel;
+        sentinel.prev = sentinel;
+        return first;
+    }
+
+    /**
+     * @return the next tick that will be processed
+     */
+    public long getCurrentTick() {
+        return now;
+    }
+
+    public int size() {
+        return pending;
+    }
+}
@@ -0,0 +1,157 @@
+package net.playwright.extraction_dimensions;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import net.minecraft.core.BlockPos;
+import net.minecraft.tags.BlockTags;
+import net.minecraft.util.RandomSource;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.levelgen.Heightmap;
+
+import java.util.List;
+
+/**
+ * A list of safe, spaced-out spawn positions for one match.
+ * <p>
+ * Samples are taken on the server thread as spawn chunks finish loading (see {@link #sampleChunk});
+ * the index itself is built from those samples off-thread. Once built, handing out a spawn is an
+ * array read.
+ */
+public class SpawnPointIndex {
+
+    // Columns sampled per chunk along each axis
+    private static final int SAMPLES_PER_AXIS = 4;
+    private static final int SAMPLE_STEP = 16 / SAMPLES_PER_AXIS;
+
+    private final long[] points;
+
+    private SpawnPointIndex(long[] points) {
+        this.points = points;
+    }
+
+    /**
+     * Adds the safe columns of a freshly loaded chunk to {@code out}, as packed standing positions.
+     * Only reads the chunk's heightmap and a few block states, so it is cheap enough to run on load.
+     */
+    public static void sampleChunk(LevelChunk chunk, LongList out) {
+        ChunkPos chunkPos = chunk.getPos();
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+
+        for (int lx = SAMPLE_STEP / 2; lx < 16; lx += SAMPLE_STEP) {
+            for (int lz = SAMPLE_STEP / 2; lz < 16; lz += SAMPLE_STEP) {
+                int groundY = chunk.getHeight(Heightmap.Types.MOTION_BLOCKING_NO_LEAVES, lx, lz);
+                if (groundY <= chunk.getMinBuildHeight())
+                    continue;
+
+                int x = chunkPos.getMinBlockX() + lx;
+                int z = chunkPos.getMinBlockZ() + lz;
+                if (!isSafeGround(chunk.getBlockState(pos.set(x, groundY, z))))
+                    continue;
+                if (!isClear(chunk, pos.set(x, groundY + 1, z)) || !isClear(chunk, pos.set(x, groundY + 2, z)))
+                    continue;
+
+                out.add(BlockPos.asLong(x, groundY + 1, z));
+            }
+        }
+    }
+
+    private static boolean isSafeGround(BlockState state) {
+        if (!state.getFluidState().isEmpty())
+            return false;
+        if (state.is(BlockTags.FIRE) || state.is(BlockTags.CAMPFIRES))
+            return false;
+        return !state.is(Blocks.MAGMA_BLOCK) && !state.is(Blocks.CACTUS) && !state.is(Blocks.POWDER_SNOW)
+                && !state.is(Blocks.SWEET_BERRY_BUSH) && !state.is(Blocks.POINTED_DRIPSTONE);
+    }
+
+    private static boolean isClear(LevelChunk chunk, BlockPos pos) {
+        BlockState state = chunk.getBlockState(pos);
+        return state.getFluidState().isEmpty() && state.getCollisionShape(chunk, pos).isEmpty();
+    }
+
+    /**
+     * Picks spawn points from the samples so that no two are closer than {@code minSpacing} blocks and
+     * none is within {@code avoidDistance} blocks of an entry in {@code avoid}. Safe to call off-thread.
+     */
+    public static SpawnPointIndex build(LongList samples, int minSpacing, List<BlockPos> avoid, int avoidDistance,
+                                        long seed) {
+        // Shuffle so the accepted points spread over all spawn areas rather than filling the first one
+        long[] candidates = samples.toLongArray();
+        RandomSource random = RandomSource.create(seed);
+        for (int i = candidates.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long tmp = candidates[i];
+            candidates[i] = candidates[j];
+            candidates[j] = tmp;
+        }
+
+        // Grid with cells of minSpacing, so a spacing check only has to look at the 3x3 cells around a point
+        int cellSize = Math.max(1, minSpacing);
+        long minSpacingSq = (long) minSpacing * minSpacing;
+        long avoidDistanceSq = (long) avoidDistance * avoidDistance;
+        Long2ObjectOpenHashMap<LongArrayList> grid = new Long2ObjectOpenHashMap<>();
+        LongArrayList accepted = new LongArrayList();
+
+        for (long candidate : candidates) {
+            int x = BlockPos.getX(candidate);
+            int z = BlockPos.getZ(candidate);
+
+            if (isNear(x, z, avoid, avoidDistanceSq))
+                continue;
+
+            int cellX = Math.floorDiv(x, cellSize);
+            int cellZ = Math.floorDiv(z, cellSize);
+            if (hasNeighbourWithin(grid, cellX, cellZ, x, z, minSpacingSq))
+                continue;
+
+            grid.computeIfAbsent(ChunkPos.asLong(cellX, cellZ), k -> new LongArrayList()).add(candidate);
+            accepted.add(candidate);
+        }
+
+        return new SpawnPointIndex(accepted.toLongArray());
+    }
+
+    static boolean isNear(int x, int z, List<BlockPos> points, long distanceSq) {
+        for (BlockPos point : points) {
+            long dx = x - point.getX();
+            long dz = z - point.getZ();
+            if (dx * dx + dz * dz < distanceSq)
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean hasNeighbourWithin(Long2ObjectOpenHashMap<LongArrayList> grid, int cellX, int cellZ,
+                                              int x, int z, long distanceSq) {
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                LongArrayList cell = grid.get(ChunkPos.asLong(cellX + dx, cellZ + dz));
+                if (cell == null)
+                    continue;
+                for (int i = 0; i < cell.size(); i++) {
+                    long other = cell.getLong(i);
+                    long ox = x - BlockPos.getX(other);
+                    long oz = z - BlockPos.getZ(other);
+                    if (ox * ox + oz * oz < distanceSq)
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return points.length;
+    }
+
+    /**
+     * @return the standing position for the given player slot, or null if the index ran out of points
+     */
+    public BlockPos get(int slot) {
+        return slot < points.length ? BlockPos.of(points[slot]) : null;
+    }
+}
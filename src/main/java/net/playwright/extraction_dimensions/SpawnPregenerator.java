@@ -0,0 +1,143 @@
+package net.playwright.extraction_dimensions;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerChunkCache;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.TicketType;
+import net.minecraft.util.RandomSource;
+import net.minecraft.world.level.ChunkPos;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Picks the spawn columns of a match up front and asks the chunk system to generate the area around
+ * each of them while the match is still warming up.
+ * <p>
+ * Generation is driven by region tickets, so it happens on the chunk worker threads rather than in
+ * the tick that teleports players in. The tickets are dropped once the players have arrived and
+ * hold their own chunks.
+ */
+public class SpawnPregenerator {
+
+    private static final TicketType<ChunkPos> SPAWN_TICKET = TicketType.create("extraction_spawn",
+            Comparator.comparingLong(ChunkPos::toLong));
+
+    private static final int SPAWN_RANGE = 500;
+
+    private final ServerLevel level;
+    private final List<BlockPos> spawns;
+    private final int radius;
+    private final LongArrayList pending = new LongArrayList();
+    private final int total;
+    private boolean ticketsHeld = false;
+
+    public SpawnPregenerator(ServerLevel level, int spawnCount, int radius, RandomSource random) {
+        this.level = level;
+        this.radius = radius;
+        this.spawns = new ArrayList<>(spawnCount);
+
+        int range = getPlayRange(level, (radius + 1) * 16);
+
+        LongLinkedOpenHashSet chunks = new LongLinkedOpenHashSet();
+        for (int i = 0; i < spawnCount; i++) {
+            int x = random.nextInt(range * 2) - range;
+            int z = random.nextInt(range * 2) - range;
+            spawns.add(new BlockPos(x, 0, z));
+
+            int cx = x >> 4;
+            int cz = z >> 4;
+            for (int dx = -radius; dx <= radius; dx++) {
+                for (int dz = -radius; dz <= radius; dz++) {
+                    chunks.add(ChunkPos.asLong(cx + dx, cz + dz));
+                }
+            }
+        }
+        pending.addAll(chunks);
+        total = chunks.size();
+    }
+
+    /**
+     * @return how far from 0,0 along each axis spawns and other match features may be placed, keeping
+     * {@code margin} blocks clear of the edge of an arena
+     */
+    static int getPlayRange(ServerLevel level, int margin) {
+        // Arena levels have nothing outside the arena, so keep things well inside it
+        if (level.getChunkSource().getGenerator() instanceof ArenaChunkGenerator arena)
+            return Math.max(16, Math.min(SPAWN_RANGE, arena.getArenaRadius() - margin));
+        return SPAWN_RANGE;
+    }
+
+    /**
+     * Queues generation of every spawn neighbourhood. Returns immediately.
+     */
+    public void start() {
+        if (ticketsHeld)
+            return;
+        ServerChunkCache chunkSource = level.getChunkSource();
+        for (BlockPos spawn : spawns) {
+            ChunkPos pos = new ChunkPos(spawn);
+            chunkSource.addRegionTicket(SPAWN_TICKET, pos, radius, pos);
+        }
+        ticketsHeld = true;
+    }
+
+    /**
+     * Drops the tickets added by {@link #start()}. Chunks stay loaded for as long as something else
+     * (usually a player) still holds them.
+     */
+    public void release() {
+        if (!ticketsHeld)
+            return;
+        ServerChunkCache chunkSource = level.getChunkSource();
+        for (BlockPos spawn : spawns) {
+            ChunkPos pos = new ChunkPos(spawn);
+            chunkSource.removeRegionTicket(SPAWN_TICKET, pos, radius, pos);
+        }
+        ticketsHeld = false;
+    }
+
+    /**
+     * Re-checks the chunks that were not loaded yet. Must be called on the server thread.
+     *
+     * @return the fraction of spawn chunks that are fully loaded, between 0 and 1
+     */
+    public float updateProgress() {
+        ServerChunkCache chunkSource = level.getChunkSource();
+        for (int i = pending.size() - 1; i >= 0; i--) {
+            long chunk = pending.getLong(i);
+            if (chunkSource.getChunkNow(ChunkPos.getX(chunk), ChunkPos.getZ(chunk)) != null) {
+                // Order doesn't matter, so swap-remove
+                pending.set(i, pending.getLong(pending.size() - 1));
+                pending.removeLong(pending.size() - 1);
+            }
+        }
+        return getProgress();
+    }
+
+    public float getProgress() {
+        return total == 0 ? 1.0f : (float) (total - pending.size()) / total;
+    }
+
+    public boolean isDone() {
+        return pending.isEmpty();
+    }
+
+    /**
+     * @return the pre-chosen spawn column for the given player slot; the y coordinate is not meaningful
+     */
+    public BlockPos getSpawn(int index) {
+        return spawns.get(index % spawns.size());
+    }
+
+    public int getSpawnCount() {
+        return spawns.size();
+    }
+
+    public List<BlockPos> getSpawns() {
+        return List.copyOf(spawns);
+    }
+}
@@ -0,0 +1,217 @@
+package net.playwright.extraction_dimensions;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * A key-value store in a single append-only file, mapping player UUIDs to byte values.
+ * <p>
+ * Every put appends a record {@code [uuid][length][value][crc32]} and an in-memory index points at the
+ * latest value of each key, so a read is one positional read. Opening the store scans the file once to
+ * rebuild the index and cuts off a torn record at the end. Once more than half of the file is values
+ * that have since been replaced, the live ones are copied into a new file that takes its place.
+ * <p>
+ * Not thread safe; {@link LootStash} only uses it from its own thread.
+ */
+public class StashStore implements Closeable {
+
+    private static final int HEADER_BYTES = 16 + 4;
+    private static final int TRAILER_BYTES = 4;
+    // Smaller files aren't worth compacting
+    private static final long MIN_COMPACTION_BYTES = 1 << 20;
+
+    private final Path path;
+    // Where each key's latest value starts, and its length
+    private final Object2LongOpenHashMap<UUID> offsets = new Object2LongOpenHashMap<>();
+    private final Object2IntOpenHashMap<UUID> lengths = new Object2IntOpenHashMap<>();
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private long size;
+    private long liveBytes;
+
+    private StashStore(Path path) {
+        this.path = path;
+    }
+
+    public static StashStore open(Path path) throws IOException {
+        Files.createDirectories(path.getParent());
+        StashStore store = new StashStore(path);
+        store.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        store.rebuildIndex();
+        return store;
+    }
+
+    private void rebuildIndex() throws IOException {
+        offsets.clear();
+        lengths.clear();
+        liveBytes = 0;
+        long fileSize = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        ByteBuffer value = ByteBuffer.allocate(4096);
+        long position = 0;
+        while (position + HEADER_BYTES + TRAILER_BYTES <= fileSize) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            UUID key = new UUID(header.getLong(), header.getLong());
+            int length = header.getInt();
+            if (length < 0 || position + HEADER_BYTES + length + TRAILER_BYTES > fileSize)
+                break;
+
+            if (value.capacity() < length + TRAILER_BYTES) {
+                value = ByteBuffer.allocate(length + TRAILER_BYTES);
+            }
+            value.clear().limit(length + TRAILER_BYTES);
+            readFully(value, position + HEADER_BYTES);
+            crc.reset();
+            crc.update(value.array(), 0, length);
+            if ((int) crc.getValue() != value.getInt(length))
+                break;
+
+            index(key, position + HEADER_BYTES, length);
+            position += HEADER_BYTES + length + TRAILER_BYTES;
+        }
+
+        if (position < fileSize) {
+            DimensionMod.LOGGER.warn("Stash store {} has {} unreadable bytes at the end, probably from a crash; dropping them",
+                    path.getFileName(), fileSize - position);
+            channel.truncate(position);
+        }
+        size = position;
+    }
+
+    private void index(UUID key, long offset, int length) {
+        if (offsets.containsKey(key)) {
+            liveBytes -= HEADER_BYTES + lengths.getInt(key) + TRAILER_BYTES;
+        }
+        offsets.put(key, offset);
+        lengths.put(key, length);
+        liveBytes += HEADER_BYTES + length + TRAILER_BYTES;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Unexpected end of " + path);
+        }
+    }
+
+    /**
+     * @return the value stored for {@code key}, or null
+     */
+    public byte[] get(UUID key) throws IOException {
+        if (!offsets.containsKey(key))
+            return null;
+        ByteBuffer value = ByteBuffer.allocate(lengths.getInt(key));
+        readFully(value, offsets.getLong(key));
+        return value.array();
+    }
+
+    /**
+     * Appends all values in one write and forces them to disk once.
+     */
+    public void putAll(Map<UUID, byte[]> values) throws IOException {
+        if (values.isEmpty())
+            return;
+
+        int total = 0;
+        for (byte[] value : values.values()) {
+            total += HEADER_BYTES + value.length + TRAILER_BYTES;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        for (Map.Entry<UUID, byte[]> entry : values.entrySet()) {
+            byte[] value = entry.getValue();
+            crc.reset();
+            crc.update(value);
+            buffer.putLong(entry.getKey().getMostSignificantBits()).putLong(entry.getKey().getLeastSignificantBits())
+                    .putInt(value.length).put(value).putInt((int) crc.getValue());
+        }
+
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, size + buffer.position());
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            // Whatever part made it to the file is cut off again, so a retry appends at the same place
+            try {
+                channel.truncate(size);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+
+        // Only point at the new values once they are on disk
+        long position = size;
+        for (Map.Entry<UUID, byte[]> entry : values.entrySet()) {
+            int length = entry.getValue().length;
+            index(entry.getKey(), position + HEADER_BYTES, length);
+            position += HEADER_BYTES + length + TRAILER_BYTES;
+        }
+        size = position;
+
+        if (size >= MIN_COMPACTION_BYTES && liveBytes * 2 < size) {
+            compact();
+        }
+    }
+
+    // Copies the live values into a new file and swaps it in
+    private void compact() throws IOException {
+        Path compactPath = path.resolveSibling(path.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(compactPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Object2LongMap.Entry<UUID> entry : offsets.object2LongEntrySet()) {
+                // The value and its checksum are copied as they are; only the header is rewritten
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putLong(entry.getKey().getMostSignificantBits()).putLong(entry.getKey().getLeastSignificantBits())
+                        .putInt(lengths.getInt(entry.getKey())).flip();
+                while (header.hasRemaining()) {
+                    out.write(header);
+                }
+                long offset = entry.getLongValue();
+                long remaining = lengths.getInt(entry.getKey()) + TRAILER_BYTES;
+                while (remaining > 0) {
+                    long copied = channel.transferTo(offset, remaining, out);
+                    offset += copied;
+                    remaining -= copied;
+                }
+            }
+            out.force(false);
+        }
+
+        channel.close();
+        try {
+            Files.move(compactPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(compactPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        rebuildIndex();
+    }
+
+    public int size() {
+        return offsets.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
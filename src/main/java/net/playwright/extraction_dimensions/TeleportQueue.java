@@ -0,0 +1,128 @@
+package net.playwright.extraction_dimensions;
+
+import net.minecraft.server.level.ServerChunkCache;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.PriorityQueue;
+
+/**
+ * Spreads match-start teleports over several ticks instead of moving every player in one tick.
+ * <p>
+ * Each arrival has a release tick (when it may happen) and a deadline (when it must happen). Between
+ * the two it only goes ahead once its destination chunks are loaded and there is room under the
+ * server-wide per-tick cap. Arrivals are served oldest release first across all matches, and any
+ * arrival that reaches its deadline is moved regardless of the cap, so every player of a match is
+ * in within a bounded window.
+ */
+@Mod.EventBusSubscriber(modid = DimensionMod.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class TeleportQueue {
+
+    private static final PriorityQueue<Arrival> scheduled = new PriorityQueue<>(
+            Comparator.comparingLong((Arrival arrival) -> arrival.releaseTick).thenComparingLong(arrival -> arrival.sequence));
+    private static final Deque<Arrival> ready = new ArrayDeque<>();
+    private static long nextSequence = 0;
+
+    private static class Arrival {
+        private final ServerLevel level;
+        private final int chunkX;
+        private final int chunkZ;
+        private final int chunkRadius;
+        private final long releaseTick;
+        private final long deadlineTick;
+        private final long sequence;
+        private final Runnable teleport;
+
+        private Arrival(ServerLevel level, int chunkX, int chunkZ, int chunkRadius, long releaseTick,
+                        long deadlineTick, long sequence, Runnable teleport) {
+            this.level = level;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            this.chunkRadius = chunkRadius;
+            this.releaseTick = releaseTick;
+            this.deadlineTick = deadlineTick;
+            this.sequence = sequence;
+            this.teleport = teleport;
+        }
+
+        private boolean isDestinationLoaded() {
+            ServerChunkCache chunkSource = level.getChunkSource();
+            for (int dx = -chunkRadius; dx <= chunkRadius; dx++) {
+                for (int dz = -chunkRadius; dz <= chunkRadius; dz++) {
+                    if (chunkSource.getChunkNow(chunkX + dx, chunkZ + dz) == null)
+                        return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Queues a teleport. {@code teleport} runs on the server thread no earlier than {@code releaseTick}
+     * and no later than the first tick at or after {@code deadlineTick}, both on the
+     * {@link MatchManager#currentTick() match clock}. It must cope with the player or match having gone
+     * away in the meantime.
+     *
+     * @param blockX      destination x, used to check that its chunks are loaded
+     * @param blockZ      destination z
+     * @param chunkRadius how many chunks around the destination must be loaded as well
+     */
+    public static void submit(ServerLevel level, int blockX, int blockZ, int chunkRadius, long releaseTick,
+                              long deadlineTick, Runnable teleport) {
+        scheduled.add(new Arrival(level, blockX >> 4, blockZ >> 4, chunkRadius, releaseTick, deadlineTick,
+                nextSequence++, teleport));
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END)
+            return;
+        if (scheduled.isEmpty() && ready.isEmpty())
+            return;
+
+        long now = MatchManager.currentTick();
+        while (!scheduled.isEmpty() && scheduled.peek().releaseTick <= now) {
+            ready.addLast(scheduled.poll());
+        }
+
+        // Each waiting arrival is looked at once per tick; those that can't go yet keep their place in line
+        int budget = Config.maxTeleportsPerTick;
+        int count = ready.size();
+        for (int i = 0; i < count; i++) {
+            Arrival arrival = ready.pollFirst();
+            boolean overdue = now >= arrival.deadlineTick;
+            if (overdue || (budget > 0 && arrival.isDestinationLoaded())) {
+                if (!overdue) {
+                    budget--;
+                }
+                run(arrival);
+            } else {
+                ready.addLast(arrival);
+            }
+        }
+    }
+
+    private static void run(Arrival arrival) {
+        try {
+            arrival.teleport.run();
+        } catch (Exception e) {
+            DimensionMod.LOGGER.error("Match teleport failed", e);
+        }
+    }
+
+    public static int size() {
+        return scheduled.size() + ready.size();
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        scheduled.clear();
+        ready.clear();
+    }
+}
@@ -17,6 +17,7 @@ import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
 import net.minecraft.core.Holder;
 import net.minecraft.core.HolderGetter;
+import net.minecraft.core.RegistryAccess;
 import net.minecraft.core.registries.Registries;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.NbtOps;
@@ -44,10 +45,12 @@ import net.minecraft.world.level.storage.ServerLevelData;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.common.util.FakePlayer;
 import net.minecraftforge.common.util.FakePlayerFactory;
+import net.minecraftforge.event.OnDatapackSyncEvent;
 import net.minecraftforge.event.RegisterCommandsEvent;
 import net.minecraftforge.event.TickEvent;
 import net.minecraftforge.event.entity.player.PlayerEvent;
 import net.minecraftforge.event.level.LevelEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
 
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
@@ -59,6 +62,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
@@ -93,6 +97,14 @@ public final class TemporaryDimensionHelper {
         return 1;
     }
 
+    // Encoded generators per template id, so each new match only pays for a copy and a parse.
+    // Only valid for the registries they were encoded with; cleared on datapack reload and server stop.
+    private static final Map<ResourceLocation, GeneratorTemplate> TEMPLATE_CACHE = new ConcurrentHashMap<>();
+
+    private record GeneratorTemplate(RegistryAccess registries, DynamicOps<Tag> ops, Holder<DimensionType> type,
+                                     CompoundTag generator) {
+    }
+
     // returns a LevelStem whose generator is pre-seeded, but note:
 // vanilla will still re-seed it with the world seed when the level is created.
 
@@ -100,25 +112,28 @@ public final class TemporaryDimensionHelper {
     public static LevelStem stemWithRandomSeed(MinecraftServer server,
                                                ResourceLocation templateId,
                                                RandomSource rng) {
+        return stemWithRandomSeed(server.registryAccess(), templateId, rng);
+    }
 
-        // Look up the datapack stem we want to copy.
-        HolderGetter<LevelStem> stems = server.registryAccess()
-                .lookupOrThrow(Registries.LEVEL_STEM);
-        LevelStem template = stems.getOrThrow(
-                ResourceKey.create(Registries.LEVEL_STEM, templateId)).get();
+    public static LevelStem stemWithRandomSeed(RegistryAccess registries,
+                                               ResourceLocation templateId,
+                                               RandomSource rng) {
 
-        // Serialize the existing generator through its public codec.
-        DynamicOps<Tag> ops = RegistryOps.create(NbtOps.INSTANCE, server.registryAccess());
-        Tag encoded = ChunkGenerator.CODEC.encodeStart(ops, template.generator())
-                .getOrThrow(false, msg -> new IllegalStateException("Encode failed: " + msg));
+        return stemWithSeed(registries, templateId, rng.nextLong());
+    }
+
+    public static LevelStem stemWithSeed(RegistryAccess registries,
+                                         ResourceLocation templateId,
+                                         long newSeed) {
+
+        GeneratorTemplate template = getTemplate(registries, templateId);
 
         // Patch both generator seed and biome-source seed if they exist.
-        long newSeed = rng.nextLong();
-        CompoundTag genTag = (CompoundTag) encoded;
+        CompoundTag genTag = template.generator().copy();
 
         genTag.putLong("seed", newSeed);
 
-        DimensionMod.LOGGER.info( String.format("%s",genTag.toString()));
+        DimensionMod.LOGGER.debug("Creating generator for {} with seed {}", templateId, newSeed);
 
         CompoundTag biomeSource = genTag.getCompound("biome_source");
 
@@ -127,7 +142,7 @@ public final class TemporaryDimensionHelper {
         }
 
         // Deserialize into a brand-new generator instance.
-        ChunkGenerator freshGenerator = ChunkGenerator.CODEC.parse(ops, genTag)
+        ChunkGenerator freshGenerator = ChunkGenerator.CODEC.parse(template.ops(), genTag)
                 .getOrThrow(false, msg -> new IllegalStateException("Parse failed: " + msg));
 
 
@@ -135,10 +150,77 @@ public final class TemporaryDimensionHelper {
         return new LevelStem(template.type(), freshGenerator);
     }
 
+    private static GeneratorTemplate getTemplate(RegistryAccess registries, ResourceLocation templateId) {
+        GeneratorTemplate cached = TEMPLATE_CACHE.get(templateId);
+        if (cached != null && cached.registries() == registries) {
+            return cached;
+        }
+
+        // Look up the datapack stem we want to copy.
+        HolderGetter<LevelStem> stems = registries.lookupOrThrow(Registries.LEVEL_STEM);
+        LevelStem template = stems.getOrThrow(
+                ResourceKey.create(Registries.LEVEL_STEM, templateId)).get();
+
+        // Serialize the existing generator through its public codec.
+        DynamicOps<Tag> ops = RegistryOps.create(NbtOps.INSTANCE, registries);
+        Tag encoded = ChunkGenerator.CODEC.encodeStart(ops, template.generator())
+                .getOrThrow(false, msg -> new IllegalStateException("Encode failed: " + msg));
+
+        GeneratorTemplate generatorTemplate = new GeneratorTemplate(registries, ops, template.type(),
+                (CompoundTag) encoded);
+        TEMPLATE_CACHE.put(templateId, generatorTemplate);
+        return generatorTemplate;
+    }
+
+    @SubscribeEvent
+    public static void onDatapackSync(OnDatapackSyncEvent event) {
+        // A null player means this is a /reload rather than a player joining
+        if (event.getPlayer() == null) {
+            clearTemplateCache();
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        clearTemplateCache();
+    }
+
+    static void clearTemplateCache() {
+        TEMPLATE_CACHE.clear();
+    }
+
     static LevelStem createLevel(MinecraftServer server)
     {
-        ResourceLocation templateId = new ResourceLocation(DimensionMod.MODID, "iron_world");
-        return stemWithRandomSeed(server,templateId,RandomSource.create());
+        return stemWithRandomSeed(server,Config.matchTemplate,RandomSource.create());
+    }
+
+    // For a level whose terrain has to line up with chunks generated earlier, e.g. from a snapshot
+    static LevelStem createLevel(MinecraftServer server, long seed)
+    {
+        return stemWithSeed(server.registryAccess(), Config.matchTemplate, seed);
+    }
+
+    // Recursively deletes a dimension folder. Does blocking file I/O, so keep it off the server thread.
+    static void deleteDirectory(Path root) throws IOException
+    {
+        if (!Files.exists(root))
+            return;
+
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (exc != null)
+                    throw exc;
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
     }
 
 
@@ -0,0 +1,324 @@
+package net.playwright.extraction_dimensions;
+
+import commoble.infiniverse.api.InfiniverseAPI;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.Util;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerChunkCache;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.TicketType;
+import net.minecraft.util.RandomSource;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.storage.LevelResource;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.level.LevelEvent;
+import net.minecraftforge.event.server.ServerStartedEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A library of pre-generated match terrain, so new match levels load their play area from disk
+ * instead of running the noise generator for it.
+ * <p>
+ * A snapshot is built by generating the play area of a throwaway level, saving it and copying its
+ * region files into {@code extraction_snapshots/<id>} in the world folder, along with the seed it was
+ * generated with. When {@link Config#useTerrainSnapshots} is on, each pooled match level gets the files
+ * of a random snapshot copied into its dimension folder before the level is created, and is created
+ * with that snapshot's seed. Chunks outside the snapshot still generate as usual and line up with it.
+ */
+@Mod.EventBusSubscriber(modid = DimensionMod.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class TerrainSnapshots {
+
+    private static final TicketType<ChunkPos> SNAPSHOT_TICKET = TicketType.create("extraction_snapshot",
+            Comparator.comparingLong(ChunkPos::toLong));
+    // Chunk storage folders of a dimension that are worth copying
+    private static final String[] STORAGE_FOLDERS = {"region", "entities", "poi"};
+    // Chunks that may be generating at once while building a snapshot
+    private static final int MAX_CHUNKS_IN_FLIGHT = 64;
+    // File in a snapshot folder holding the seed its terrain was generated with
+    private static final String SEED_FILE = "seed";
+
+    private record Snapshot(Path path, long seed) {
+    }
+
+    private static final List<Snapshot> library = new ArrayList<>();
+    private static final RandomSource random = RandomSource.create();
+    // Seeds of the levels whose terrain came from a snapshot; written on the server thread and the I/O
+    // pool, read when levels unload
+    private static final Map<ResourceKey<Level>, Long> snapshotLevels = new ConcurrentHashMap<>();
+    private static SnapshotBuild build;
+
+    // Time from match start until its spawn area was ready, index 1 for levels that came from a snapshot
+    private static final long[] readyCount = new long[2];
+    private static final long[] readyTotalMillis = new long[2];
+    private static final long[] readyMaxMillis = new long[2];
+
+    private static Path getLibraryRoot(MinecraftServer server) {
+        return server.getWorldPath(LevelResource.ROOT).resolve("extraction_snapshots");
+    }
+
+    /**
+     * Fills the folder of a level that is about to be created with a random snapshot, if snapshots are
+     * enabled and there are any. The copy runs on the I/O pool; create the level once it completes, with
+     * the seed from {@link #getSeed}.
+     */
+    public static CompletableFuture<Void> prepareAsync(MinecraftServer server, ResourceKey<Level> dimension) {
+        Snapshot snapshot = pick();
+        if (snapshot == null)
+            return CompletableFuture.completedFuture(null);
+
+        snapshotLevels.put(dimension, snapshot.seed());
+        Path target = server.storageSource.getDimensionPath(dimension);
+        return CompletableFuture.runAsync(() -> copyQuietly(snapshot.path(), target, dimension), Util.ioPool());
+    }
+
+    /**
+     * @return the seed a level has to be created with to match the snapshot copied into it, or empty if
+     * it didn't get one
+     */
+    public static OptionalLong getSeed(ResourceKey<Level> dimension) {
+        Long seed = snapshotLevels.get(dimension);
+        return seed != null ? OptionalLong.of(seed) : OptionalLong.empty();
+    }
+
+    private static Snapshot pick() {
+        if (!Config.useTerrainSnapshots || library.isEmpty())
+            return null;
+        return library.get(random.nextInt(library.size()));
+    }
+
+    // A failed copy only costs the generation time we meant to save, so don't fail the level over it
+    private static void copyQuietly(Path snapshot, Path target, ResourceKey<Level> dimension) {
+        try {
+            copyStorage(snapshot, target);
+        } catch (IOException e) {
+            snapshotLevels.remove(dimension);
+            DimensionMod.LOGGER.error("Failed to copy terrain snapshot " + snapshot + " to " + target, e);
+        }
+    }
+
+    // Copies the chunk storage folders between a snapshot and a dimension folder, in either direction
+    private static void copyStorage(Path from, Path to) throws IOException {
+        for (String folder : STORAGE_FOLDERS) {
+            Path source = from.resolve(folder);
+            if (!Files.isDirectory(source))
+                continue;
+            Path target = Files.createDirectories(to.resolve(folder));
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(source, "*.mca")) {
+                for (Path file : files) {
+                    // Lets the OS copy in-kernel where it can
+                    Files.copy(file, target.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    public static boolean isFromSnapshot(ResourceKey<Level> dimension) {
+        return snapshotLevels.containsKey(dimension);
+    }
+
+    /**
+     * Records how long a match took from being started until its spawn area was loaded.
+     */
+    public static void recordTimeToReady(ResourceKey<Level> dimension, long millis) {
+        int mode = isFromSnapshot(dimension) ? 1 : 0;
+        readyCount[mode]++;
+        readyTotalMillis[mode] += millis;
+        readyMaxMillis[mode] = Math.max(readyMaxMillis[mode], millis);
+        DimensionMod.LOGGER.debug("Match {} ready after {} ms ({})", dimension.location(), millis,
+                mode == 1 ? "snapshot" : "generated");
+    }
+
+    /**
+     * @return a one-line summary of time-to-ready for generated or snapshot levels
+     */
+    public static String describeTimeToReady(boolean fromSnapshot) {
+        int mode = fromSnapshot ? 1 : 0;
+        if (readyCount[mode] == 0)
+            return "no matches yet";
+        return readyCount[mode] + " matches, mean " + readyTotalMillis[mode] / readyCount[mode] + " ms, max "
+                + readyMaxMillis[mode] + " ms";
+    }
+
+    public static int size() {
+        return library.size();
+    }
+
+    /**
+     * @return the progress of the snapshot being built between 0 and 1, or -1 if none is
+     */
+    public static float getBuildProgress() {
+        return build != null ? build.getProgress() : -1;
+    }
+
+    /**
+     * Starts building a new snapshot in the background.
+     *
+     * @return false if one is already being built or its level could not be created
+     */
+    public static boolean startBuild(MinecraftServer server) {
+        if (build != null)
+            return false;
+
+        // Uses a regular match key, so a build cut short by a crash is cleaned up by the startup sweep
+        ResourceKey<Level> dimension = MatchManager.newMatchKey();
+        long seed = random.nextLong();
+        InfiniverseAPI.get().getOrCreateLevel(server, dimension, () -> TemporaryDimensionHelper.createLevel(server, seed));
+        ServerLevel level = server.getLevel(dimension);
+        if (level == null)
+            return false;
+
+        build = new SnapshotBuild(level, seed, Config.snapshotRadiusChunks);
+        DimensionMod.LOGGER.info("Building terrain snapshot in {} ({} chunks)", dimension.location(), build.total);
+        return true;
+    }
+
+    // Generates the play area a few chunks at a time; unloading chunks are saved to the level's folder
+    private static class SnapshotBuild {
+        private final ServerLevel level;
+        private final long seed;
+        private final LongArrayList queued = new LongArrayList();
+        private final LongArrayList inFlight = new LongArrayList();
+        private final int total;
+        private int done = 0;
+        private CompletableFuture<Void> copy;
+
+        private SnapshotBuild(ServerLevel level, long seed, int radius) {
+            this.level = level;
+            this.seed = seed;
+            for (int x = -radius; x <= radius; x++) {
+                for (int z = -radius; z <= radius; z++) {
+                    queued.add(ChunkPos.asLong(x, z));
+                }
+            }
+            total = queued.size();
+        }
+
+        private float getProgress() {
+            return (float) done / total;
+        }
+
+        // Returns true once the build has finished, successfully or not
+        private boolean tick(MinecraftServer server) {
+            if (copy != null)
+                return copy.isDone();
+
+            ServerChunkCache chunkSource = level.getChunkSource();
+            for (int i = inFlight.size() - 1; i >= 0; i--) {
+                ChunkPos pos = new ChunkPos(inFlight.getLong(i));
+                if (chunkSource.getChunkNow(pos.x, pos.z) != null) {
+                    chunkSource.removeRegionTicket(SNAPSHOT_TICKET, pos, 0, pos);
+                    inFlight.set(i, inFlight.getLong(inFlight.size() - 1));
+                    inFlight.removeLong(inFlight.size() - 1);
+                    done++;
+                }
+            }
+            while (inFlight.size() < MAX_CHUNKS_IN_FLIGHT && !queued.isEmpty()) {
+                long packed = queued.removeLong(queued.size() - 1);
+                ChunkPos pos = new ChunkPos(packed);
+                chunkSource.addRegionTicket(SNAPSHOT_TICKET, pos, 0, pos);
+                inFlight.add(packed);
+            }
+            if (!inFlight.isEmpty())
+                return false;
+
+            // Everything is generated: write it all out, then copy it into the library off-thread
+            level.save(null, true, false);
+            Path source = server.storageSource.getDimensionPath(level.dimension());
+            Path target = getLibraryRoot(server).resolve("snapshot_" + System.currentTimeMillis());
+            copy = CompletableFuture.runAsync(() -> {
+                Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+                try {
+                    copyStorage(source, temporary);
+                    Files.writeString(temporary.resolve(SEED_FILE), Long.toString(seed));
+                    Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }, Util.ioPool()).whenCompleteAsync((ignored, error) -> {
+                if (error != null) {
+                    DimensionMod.LOGGER.error("Failed to store terrain snapshot " + target, error);
+                } else {
+                    library.add(new Snapshot(target, seed));
+                    DimensionMod.LOGGER.info("Stored terrain snapshot {}", target.getFileName());
+                }
+                MatchReclaimer.reclaim(server, level.dimension());
+            }, server);
+            return false;
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || build == null)
+            return;
+
+        MinecraftServer server = event.getServer();
+        if (server == null)
+            return;
+
+        if (server.getLevel(build.level.dimension()) != build.level || build.tick(server)) {
+            build = null;
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStarted(ServerStartedEvent event) {
+        library.clear();
+        Path root = getLibraryRoot(event.getServer());
+        if (!Files.isDirectory(root))
+            return;
+
+        try (DirectoryStream<Path> snapshots = Files.newDirectoryStream(root, "snapshot_*")) {
+            for (Path snapshot : snapshots) {
+                if (!Files.isDirectory(snapshot) || snapshot.getFileName().toString().endsWith(".tmp"))
+                    continue;
+                Path seedFile = snapshot.resolve(SEED_FILE);
+                if (!Files.isRegularFile(seedFile)) {
+                    // The rest of a level made from it wouldn't line up with its terrain
+                    DimensionMod.LOGGER.warn("Skipping terrain snapshot {} without a seed", snapshot.getFileName());
+                    continue;
+                }
+                try {
+                    library.add(new Snapshot(snapshot, Long.parseLong(Files.readString(seedFile).trim())));
+                } catch (IOException | NumberFormatException e) {
+                    DimensionMod.LOGGER.warn("Skipping terrain snapshot {} with an unreadable seed", snapshot.getFileName(), e);
+                }
+            }
+        } catch (IOException e) {
+            DimensionMod.LOGGER.error("Failed to list terrain snapshots", e);
+        }
+        DimensionMod.LOGGER.info("Found {} terrain snapshots", library.size());
+    }
+
+    @SubscribeEvent
+    public static void onLevelUnload(LevelEvent.Unload event) {
+        if (event.getLevel() instanceof ServerLevel level) {
+            snapshotLevels.remove(level.dimension());
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        // An unfinished build is left to the startup sweep
+        build = null;
+        library.clear();
+        snapshotLevels.clear();
+    }
+}
@@ -0,0 +1,199 @@
+package net.playwright.extraction_dimensions;
+
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Mob;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decides how each match dimension ticks, based on what the match is doing and how loaded the server is.
+ * <p>
+ * Match levels in warmup or without players only run a full tick every
+ * {@link Config#governorIdleTickInterval} ticks; in between, only their chunk source is ticked so spawn
+ * areas keep generating. Once the average tick time passes {@link Config#governorMsptThreshold}, match
+ * levels give up work one step at a time: random ticks first, then mob AI, then block entity ticks,
+ * which the last two keep at a reduced rate. Other levels are never touched.
+ * <p>
+ * The decisions are made once per server tick here and applied by the mixins in
+ * {@code net.playwright.extraction_dimensions.mixin}. Match timers run on
+ * {@link MatchManager#currentTick()}, so they are not affected by skipped level ticks.
+ */
+@Mod.EventBusSubscriber(modid = DimensionMod.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class TickGovernor {
+
+    // Mob AI and block entities run once every this many ticks when throttled
+    private static final int THROTTLED_INTERVAL = 4;
+    private static final int EVALUATE_INTERVAL_TICKS = 20;
+    // The tick time must drop this far below a step's threshold before that step is undone
+    private static final double HYSTERESIS_MSPT = 2.0;
+
+    /**
+     * Degradation steps, in the order they are applied.
+     */
+    public enum Stage {
+        NORMAL,
+        NO_RANDOM_TICKS,
+        SLOW_MOB_AI,
+        SLOW_BLOCK_ENTITIES
+    }
+
+    private static final Map<ResourceKey<Level>, LevelThrottle> throttles = new HashMap<>();
+    private static Stage stage = Stage.NORMAL;
+    private static long serverTick = 0;
+    // Throttle of the match level that is ticking right now, null outside of match level ticks
+    private static LevelThrottle ticking;
+
+    /**
+     * The current decision for one match level.
+     */
+    public static class LevelThrottle {
+        private final ServerLevel level;
+        private final MatchManager.Match match;
+        // Spreads the full ticks of idle levels over the interval
+        private final int phase;
+        private boolean idle;
+        private boolean skipThisTick;
+        private long skippedTicks = 0;
+        private long lastSeenTick;
+
+        private LevelThrottle(ServerLevel level, MatchManager.Match match) {
+            this.level = level;
+            this.match = match;
+            this.phase = Math.floorMod(level.dimension().location().hashCode(), 200);
+        }
+
+        private void update(long tick) {
+            lastSeenTick = tick;
+            idle = match.getState() == MatchManager.Match.MatchState.WARMUP || level.players().isEmpty();
+            int interval = Config.governorIdleTickInterval;
+            skipThisTick = idle && interval > 1 && (tick + phase) % interval != 0;
+        }
+
+        public MatchManager.Match getMatch() {
+            return match;
+        }
+
+        public boolean isIdle() {
+            return idle;
+        }
+
+        public long getSkippedTicks() {
+            return skippedTicks;
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.START)
+            return;
+
+        MinecraftServer server = event.getServer();
+        if (server == null)
+            return;
+
+        if (!Config.governorEnabled) {
+            throttles.clear();
+            stage = Stage.NORMAL;
+            return;
+        }
+
+        long tick = serverTick = server.getTickCount();
+        if (tick % EVALUATE_INTERVAL_TICKS == 0) {
+            evaluateStage(server.getAverageTickTime());
+        }
+
+        for (MatchManager.Match match : MatchManager.getMatches()) {
+            ServerLevel level = server.getLevel(match.getDimension());
+            if (level == null)
+                continue;
+            LevelThrottle throttle = throttles.get(match.getDimension());
+            if (throttle == null || throttle.level != level) {
+                throttle = new LevelThrottle(level, match);
+                throttles.put(match.getDimension(), throttle);
+            }
+            throttle.update(tick);
+        }
+        // Matches that ended tick normally while they are reclaimed
+        throttles.values().removeIf(throttle -> throttle.lastSeenTick != tick);
+    }
+
+    // Moves at most one step per evaluation, so a single slow second doesn't switch everything off
+    private static void evaluateStage(double mspt) {
+        int target = stageFor(mspt);
+        if (target > stage.ordinal()) {
+            stage = Stage.values()[stage.ordinal() + 1];
+        } else if (target < stage.ordinal() && stageFor(mspt + HYSTERESIS_MSPT) < stage.ordinal()) {
+            stage = Stage.values()[stage.ordinal() - 1];
+        }
+    }
+
+    private static int stageFor(double mspt) {
+        if (mspt <= Config.governorMsptThreshold)
+            return 0;
+        int steps = 1 + (int) ((mspt - Config.governorMsptThreshold) / Config.governorStepMspt);
+        return Math.min(steps, Stage.values().length - 1);
+    }
+
+    /**
+     * Called at the start of every level tick.
+     *
+     * @return true if the level should skip this tick
+     */
+    public static boolean beginLevelTick(ServerLevel level) {
+        LevelThrottle throttle = throttles.isEmpty() ? null : throttles.get(level.dimension());
+        if (throttle != null && throttle.level == level && throttle.skipThisTick) {
+            throttle.skippedTicks++;
+            ticking = null;
+            return true;
+        }
+        ticking = throttle;
+        return false;
+    }
+
+    public static void endLevelTick() {
+        ticking = null;
+    }
+
+    public static boolean allowRandomTicks(ServerLevel level) {
+        return !isDegraded(level, Stage.NO_RANDOM_TICKS);
+    }
+
+    public static boolean allowMobAi(Mob mob) {
+        return !isDegraded(mob.level(), Stage.SLOW_MOB_AI) || (serverTick + mob.getId()) % THROTTLED_INTERVAL == 0;
+    }
+
+    public static boolean allowBlockEntityTicks(Level level) {
+        return !isDegraded(level, Stage.SLOW_BLOCK_ENTITIES) || serverTick % THROTTLED_INTERVAL == 0;
+    }
+
+    // Only the match level that is ticking right now is degraded; on an integrated server the client
+    // thread also runs through these hooks, with its own levels
+    private static boolean isDegraded(Level level, Stage step) {
+        LevelThrottle throttle = ticking;
+        return throttle != null && throttle.level == level && stage.ordinal() >= step.ordinal();
+    }
+
+    public static Stage getStage() {
+        return stage;
+    }
+
+    public static Collection<LevelThrottle> getThrottles() {
+        return throttles.values();
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        throttles.clear();
+        stage = Stage.NORMAL;
+        ticking = null;
+    }
+}
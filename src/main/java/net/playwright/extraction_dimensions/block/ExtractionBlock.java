@@ -1,6 +1,7 @@
 package net.playwright.extraction_dimensions.block;
 
 import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.InteractionHand;
 import net.minecraft.world.InteractionResult;
@@ -23,10 +24,27 @@ public class ExtractionBlock extends Block {
             BlockHitResult hit) {
         if (!level.isClientSide) {
             if (player instanceof ServerPlayer serverPlayer) {
-                MatchManager.startExtraction(serverPlayer);
+                MatchManager.startExtraction(serverPlayer, pos);
                 return InteractionResult.SUCCESS;
             }
         }
         return InteractionResult.sidedSuccess(level.isClientSide);
     }
+
+    // Keeps the match's extraction point index in step with the world, however the block got there
+    @Override
+    public void onPlace(BlockState state, Level level, BlockPos pos, BlockState oldState, boolean movedByPiston) {
+        super.onPlace(state, level, pos, oldState, movedByPiston);
+        if (level instanceof ServerLevel serverLevel && !oldState.is(this)) {
+            MatchManager.onExtractionBlockChanged(serverLevel, pos, true);
+        }
+    }
+
+    @Override
+    public void onRemove(BlockState state, Level level, BlockPos pos, BlockState newState, boolean movedByPiston) {
+        if (level instanceof ServerLevel serverLevel && !newState.is(this)) {
+            MatchManager.onExtractionBlockChanged(serverLevel, pos, false);
+        }
+        super.onRemove(state, level, pos, newState, movedByPiston);
+    }
 }
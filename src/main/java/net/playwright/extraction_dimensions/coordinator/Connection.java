@@ -0,0 +1,135 @@
+package net.playwright.extraction_dimensions.coordinator;
+
+import net.playwright.extraction_dimensions.DimensionMod;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One end of a lobby-host link: a blocking socket channel with a thread that reads frames and one that
+ * writes them.
+ * <p>
+ * {@link #send} only queues the frame, so it's safe to call from the server thread. Received frames are
+ * passed to the handler on the reader thread; anything that touches the game has to be handed over to
+ * the server thread from there.
+ */
+class Connection {
+
+    interface Handler {
+        /**
+         * @param payload the frame after its type, positioned at the start of the payload
+         */
+        void received(Connection connection, byte type, ByteBuffer payload);
+
+        void closed(Connection connection);
+    }
+
+    private final SocketChannel channel;
+    private final String name;
+    private final Handler handler;
+    private final LinkedBlockingQueue<ByteBuffer> outbox = new LinkedBlockingQueue<>();
+    private final Thread reader;
+    private final Thread writer;
+    private final AtomicBoolean open = new AtomicBoolean(true);
+
+    Connection(SocketChannel channel, String name, Handler handler) {
+        this.channel = channel;
+        this.name = name;
+        this.handler = handler;
+        this.reader = new Thread(this::readLoop, "Extraction-Coordinator-Read-" + name);
+        this.writer = new Thread(this::writeLoop, "Extraction-Coordinator-Write-" + name);
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+    }
+
+    void start() {
+        reader.start();
+        writer.start();
+    }
+
+    /**
+     * Queues a frame from {@link Protocol#frame}, filled up to its end.
+     */
+    void send(ByteBuffer frame) {
+        if (open.get()) {
+            outbox.add(frame.flip());
+        }
+    }
+
+    boolean isOpen() {
+        return open.get();
+    }
+
+    String getName() {
+        return name;
+    }
+
+    void close() {
+        if (!open.compareAndSet(true, false))
+            return;
+        try {
+            // Also wakes up the reader
+            channel.close();
+        } catch (IOException e) {
+            DimensionMod.LOGGER.debug("Failed to close coordinator connection {}", name, e);
+        }
+        writer.interrupt();
+        handler.closed(this);
+    }
+
+    private void readLoop() {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        try {
+            while (open.get()) {
+                length.clear();
+                readFully(length);
+                int frameBytes = length.flip().getInt();
+                if (frameBytes < 1 || frameBytes > Protocol.MAX_FRAME_BYTES)
+                    throw new IOException("Bad frame length " + frameBytes);
+
+                ByteBuffer frame = ByteBuffer.allocate(frameBytes);
+                readFully(frame);
+                frame.flip();
+                handler.received(this, frame.get(), frame);
+            }
+        } catch (EOFException e) {
+            DimensionMod.LOGGER.info("Coordinator connection {} was closed by the other side", name);
+        } catch (IOException | RuntimeException e) {
+            if (open.get()) {
+                DimensionMod.LOGGER.warn("Coordinator connection {} failed", name, e);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0)
+                throw new EOFException();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (open.get()) {
+                ByteBuffer frame = outbox.take();
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        } catch (IOException e) {
+            if (open.get()) {
+                DimensionMod.LOGGER.warn("Coordinator connection {} failed", name, e);
+            }
+        } finally {
+            close();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package net.playwright.extraction_dimensions.coordinator;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.server.ServerStartingEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.playwright.extraction_dimensions.Config;
+import net.playwright.extraction_dimensions.DimensionMod;
+import net.playwright.extraction_dimensions.DimensionPool;
+import net.playwright.extraction_dimensions.MatchManager;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Spreads matches over several servers. A lobby ({@link Config#coordinatorMode} {@code lobby}) runs
+ * the queue and hands every match to one of the match hosts ({@code host}) connected to it, which run
+ * the match and report back. A standalone server runs its own matches, as before.
+ * <p>
+ * See {@link Protocol} for what the servers exchange and {@link PlayerTransfer} for how players get
+ * from one to the other.
+ */
+@Mod.EventBusSubscriber(modid = DimensionMod.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class Coordinator {
+
+    public enum Mode {
+        STANDALONE,
+        LOBBY,
+        HOST;
+
+        /**
+         * @return the mode, or null if there is none by that name
+         */
+        public static Mode parse(String name) {
+            for (Mode mode : values()) {
+                if (mode.name().equalsIgnoreCase(name))
+                    return mode;
+            }
+            return null;
+        }
+    }
+
+    private static LobbyServer lobby;
+    private static MatchHostClient host;
+    // Set by another mod through setTransfer, otherwise picked from the config on server start
+    private static PlayerTransfer customTransfer;
+    private static PlayerTransfer transfer = new MessageTransfer();
+
+    /**
+     * Replaces the built-in ways of moving players, e.g. with a mod that talks to a proxy's API.
+     * Call it before the server starts.
+     */
+    public static void setTransfer(PlayerTransfer playerTransfer) {
+        customTransfer = playerTransfer;
+    }
+
+    static PlayerTransfer getTransfer() {
+        return transfer;
+    }
+
+    public static Mode getMode() {
+        return lobby != null ? Mode.LOBBY : host != null ? Mode.HOST : Mode.STANDALONE;
+    }
+
+    /**
+     * @return the lobby server, or null if this server isn't a lobby
+     */
+    public static LobbyServer getLobby() {
+        return lobby;
+    }
+
+    /**
+     * @return the connection to the lobby, or null if this server isn't a match host
+     */
+    public static MatchHostClient getHost() {
+        return host;
+    }
+
+    /**
+     * @return true if a match could be started right now, here or on a match host
+     */
+    public static boolean canStartMatch() {
+        return lobby != null ? lobby.hasHostAvailable() : DimensionPool.canAcquire();
+    }
+
+    /**
+     * Starts a match for the players here, or on a lobby sends it to the least loaded match host.
+     *
+     * @return false if the match could not be started or no host took it
+     */
+    public static boolean startMatch(MinecraftServer server, List<? extends ServerPlayer> players) {
+        if (lobby != null)
+            return lobby.assign(players);
+        return MatchManager.startMatch(server, players) != null;
+    }
+
+    /**
+     * @return true if the lobby sent the player to a match that hasn't reported back yet
+     */
+    public static boolean isAway(UUID playerId) {
+        return lobby != null && lobby.isAway(playerId);
+    }
+
+    /**
+     * Called as a player is sent out of a match they extracted from.
+     */
+    public static void onExtracted(ServerPlayer player, MatchManager.Match match) {
+        if (host != null) {
+            host.onExtracted(player, match);
+        }
+    }
+
+    /**
+     * Called once a match has ended and been taken off the list of running matches.
+     */
+    public static void onMatchEnded(MatchManager.Match match) {
+        if (host != null) {
+            host.onMatchEnded(match);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStarting(ServerStartingEvent event) {
+        MinecraftServer server = event.getServer();
+        transfer = customTransfer != null ? customTransfer
+                : Config.playerTransfer.equals("proxy") ? new ProxyTransfer() : new MessageTransfer();
+
+        try {
+            switch (Config.coordinatorMode) {
+                case LOBBY -> lobby = LobbyServer.start(server, Config.coordinatorAddress);
+                case HOST -> {
+                    String name = Config.hostName.isEmpty() ? "host-" + server.getPort() : Config.hostName;
+                    host = MatchHostClient.start(server, Config.coordinatorAddress, name, Config.hostAddress);
+                }
+                case STANDALONE -> {
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            DimensionMod.LOGGER.error("Failed to start the coordinator {} on {}, running standalone",
+                    Config.coordinatorMode.name().toLowerCase(Locale.ROOT), Config.coordinatorAddress, e);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.START)
+            return;
+        // Before the queue forms matches at the end of the tick, so it sees the latest heartbeats
+        if (lobby != null) {
+            lobby.tick();
+        } else if (host != null) {
+            host.tick();
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        if (lobby != null) {
+            lobby.close();
+            lobby = null;
+        }
+        if (host != null) {
+            host.close();
+            host = null;
+        }
+    }
+}
@@ -0,0 +1,556 @@
+package net.playwright.extraction_dimensions.coordinator;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.minecraft.Util;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import net.playwright.extraction_dimensions.Config;
+import net.playwright.extraction_dimensions.DimensionMod;
+import net.playwright.extraction_dimensions.MatchQueue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The lobby end of the coordinator: accepts match hosts, keeps track of their load from their
+ * heartbeats, and hands each match formed by {@link MatchQueue} to the least loaded one.
+ * <p>
+ * A host is only taken on once it has answered the lobby's challenge with proof that it knows
+ * {@link Config#coordinatorSecret}. Without a secret any connection is taken on, so the lobby should
+ * then only listen on loopback, a Unix socket or a network nobody else can reach.
+ * <p>
+ * The sockets are served by their own threads, which only parse messages; everything they carry is
+ * handled on the server thread in {@link #tick}, so none of the state here is shared.
+ */
+public class LobbyServer implements Connection.Handler {
+
+    // Results kept for /extraction hosts
+    private static final int RECENT_RESULTS = 10;
+
+    private final MinecraftServer server;
+    private final ServerSocketChannel serverChannel;
+    private final Path socketFile;
+    private final Thread acceptor;
+    private final SecureRandom random = new SecureRandom();
+    private volatile boolean running = true;
+    private int connections = 0;
+
+    // Messages handed over from the socket threads, handled at the start of the next tick
+    private final Queue<Runnable> inbox = new ConcurrentLinkedQueue<>();
+    private final Map<Connection, HostInfo> hosts = new LinkedHashMap<>();
+    private final Int2ObjectOpenHashMap<Assignment> assignments = new Int2ObjectOpenHashMap<>();
+    // Players who were sent to a match host and haven't got a result back yet
+    private final Map<UUID, Assignment> away = new HashMap<>();
+    private final Deque<Result> results = new ArrayDeque<>();
+    private int lastAssignmentId = 0;
+
+    private LobbyServer(MinecraftServer server, ServerSocketChannel serverChannel, Path socketFile) {
+        this.server = server;
+        this.serverChannel = serverChannel;
+        this.socketFile = socketFile;
+        this.acceptor = new Thread(this::acceptLoop, "Extraction-Coordinator-Accept");
+        acceptor.setDaemon(true);
+    }
+
+    static LobbyServer start(MinecraftServer server, String address) throws IOException {
+        SocketAddress socketAddress = Protocol.parseAddress(address);
+        ServerSocketChannel channel;
+        Path socketFile = null;
+        if (socketAddress instanceof UnixDomainSocketAddress unix) {
+            socketFile = unix.getPath();
+            // Left behind by a lobby that didn't shut down cleanly
+            Files.deleteIfExists(socketFile);
+            channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            channel = ServerSocketChannel.open();
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        }
+        try {
+            channel.bind(socketAddress);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        LobbyServer lobby = new LobbyServer(server, channel, socketFile);
+        lobby.acceptor.start();
+        DimensionMod.LOGGER.info("Coordinator lobby listening on {}", address);
+        if (Config.coordinatorSecret.isEmpty() && socketAddress instanceof InetSocketAddress inet
+                && !inet.getAddress().isLoopbackAddress()) {
+            DimensionMod.LOGGER.warn("The coordinator lobby listens on {} without a coordinatorSecret; anyone who can "
+                    + "reach it can act as a match host", address);
+        }
+        return lobby;
+    }
+
+    private void acceptLoop() {
+        try {
+            while (running) {
+                SocketChannel socket = serverChannel.accept();
+                if (socket.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) {
+                    socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                }
+                Connection connection = new Connection(socket, "host-" + ++connections, this);
+                byte[] nonce = new byte[Protocol.NONCE_BYTES];
+                random.nextBytes(nonce);
+                // Queued ahead of anything the connection receives
+                inbox.add(() -> hosts.put(connection, new HostInfo(connection, nonce)));
+                connection.send(Protocol.frame(Protocol.CHALLENGE, nonce.length).put(nonce));
+                connection.start();
+            }
+        } catch (ClosedChannelException e) {
+            // Closed
+        } catch (IOException e) {
+            if (running) {
+                DimensionMod.LOGGER.error("Coordinator lobby stopped accepting match hosts", e);
+            }
+        }
+    }
+
+    @Override
+    public void received(Connection connection, byte type, ByteBuffer payload) {
+        switch (type) {
+            case Protocol.HELLO -> {
+                int version = payload.getInt();
+                if (version != Protocol.VERSION) {
+                    // The rest may be laid out differently
+                    inbox.add(() -> onHello(connection, version, connection.getName(), "", new byte[0]));
+                    return;
+                }
+                String name = Protocol.getString(payload);
+                String playerAddress = Protocol.getString(payload);
+                byte[] proof = Protocol.getBytes(payload);
+                inbox.add(() -> onHello(connection, version, name, playerAddress, proof));
+            }
+            case Protocol.HEARTBEAT -> {
+                int matches = payload.getInt();
+                int players = payload.getInt();
+                float mspt = payload.getFloat();
+                boolean accepting = payload.get() != 0;
+                inbox.add(() -> onHeartbeat(connection, matches, players, mspt, accepting));
+            }
+            case Protocol.ASSIGNED -> {
+                int id = payload.getInt();
+                boolean started = payload.get() != 0;
+                String matchId = Protocol.getString(payload);
+                inbox.add(() -> onAssigned(connection, id, started, matchId));
+            }
+            case Protocol.PLAYER_RESULT -> {
+                String matchId = Protocol.getString(payload);
+                UUID playerId = Protocol.getUuid(payload);
+                byte outcome = payload.get();
+                inbox.add(() -> onPlayerResult(connection, matchId, playerId, outcome));
+            }
+            case Protocol.MATCH_RESULT -> {
+                int id = payload.getInt();
+                String matchId = Protocol.getString(payload);
+                int ticks = payload.getInt();
+                int count = payload.getInt();
+                int extracted = 0;
+                List<UUID> players = new ArrayList<>(Math.min(count, payload.remaining() / (Protocol.UUID_BYTES + 1)));
+                for (int i = 0; i < count; i++) {
+                    players.add(Protocol.getUuid(payload));
+                    if (payload.get() == Protocol.EXTRACTED) {
+                        extracted++;
+                    }
+                }
+                int extractedCount = extracted;
+                inbox.add(() -> onMatchResult(connection, id, matchId, ticks, players, extractedCount));
+            }
+            default -> {
+                DimensionMod.LOGGER.warn("Unknown message {} from match host {}", type, connection.getName());
+                connection.close();
+            }
+        }
+    }
+
+    @Override
+    public void closed(Connection connection) {
+        if (running) {
+            inbox.add(() -> onClosed(connection));
+        }
+    }
+
+    private void onHello(Connection connection, int version, String name, String playerAddress, byte[] proof) {
+        HostInfo host = hosts.get(connection);
+        if (host == null || host.ready)
+            return;
+        if (version != Protocol.VERSION) {
+            DimensionMod.LOGGER.warn("Match host {} speaks coordinator protocol {}, this lobby {}", name, version,
+                    Protocol.VERSION);
+            connection.close();
+            return;
+        }
+        // Compared in constant time, so the proof can't be guessed a byte at a time
+        if (!MessageDigest.isEqual(proof, Protocol.prove(Config.coordinatorSecret, host.nonce))) {
+            DimensionMod.LOGGER.warn("Match host {} ({}) doesn't know the coordinator secret, dropping it", name,
+                    connection.getName());
+            connection.close();
+            return;
+        }
+        host.name = name;
+        host.playerAddress = playerAddress;
+        host.ready = true;
+        host.lastHeartbeatMillis = Util.getMillis();
+        DimensionMod.LOGGER.info("Match host {} connected", name);
+    }
+
+    private void onHeartbeat(Connection connection, int matches, int players, float mspt, boolean accepting) {
+        HostInfo host = hosts.get(connection);
+        if (host == null || !host.ready)
+            return;
+        host.matches = matches;
+        host.players = players;
+        host.mspt = mspt;
+        host.accepting = accepting;
+        host.startedSinceHeartbeat = 0;
+        host.lastHeartbeatMillis = Util.getMillis();
+    }
+
+    private void onAssigned(Connection connection, int id, boolean started, String matchId) {
+        // An assignment missing here timed out, and the host was already told to abort it
+        Assignment assignment = assignments.get(id);
+        if (assignment == null || assignment.host.connection != connection || assignment.matchId != null)
+            return;
+        assignment.host.pending--;
+        if (!started) {
+            DimensionMod.LOGGER.info("Match host {} turned down a match, putting its players back in the queue",
+                    assignment.host.name);
+            requeue(assignment);
+            return;
+        }
+
+        assignment.matchId = matchId;
+        assignment.host.startedSinceHeartbeat++;
+        for (UUID playerId : assignment.players) {
+            ServerPlayer player = server.getPlayerList().getPlayer(playerId);
+            if (player != null) {
+                Coordinator.getTransfer().toHost(player, assignment.host.name, assignment.host.playerAddress, matchId);
+            }
+        }
+    }
+
+    private void onPlayerResult(Connection connection, String matchId, UUID playerId, byte outcome) {
+        Assignment assignment = away.get(playerId);
+        if (assignment != null && assignment.host.connection == connection && matchId.equals(assignment.matchId)) {
+            away.remove(playerId);
+        }
+    }
+
+    private void onMatchResult(Connection connection, int id, String matchId, int ticks, List<UUID> players,
+                               int extracted) {
+        Assignment assignment = assignments.get(id);
+        if (assignment == null || assignment.host.connection != connection)
+            return;
+        assignments.remove(id);
+        for (UUID playerId : assignment.players) {
+            away.remove(playerId, assignment);
+        }
+
+        Result result = new Result(assignment.host.name, matchId, ticks, players.size(), extracted);
+        if (results.size() == RECENT_RESULTS) {
+            results.removeLast();
+        }
+        results.addFirst(result);
+        DimensionMod.LOGGER.info("Match {} on {} ended after {} s: {} of {} players extracted", matchId,
+                result.host(), ticks / 20, extracted, players.size());
+    }
+
+    private void onClosed(Connection connection) {
+        HostInfo host = hosts.remove(connection);
+        if (host == null)
+            return;
+        if (host.ready) {
+            DimensionMod.LOGGER.warn("Match host {} disconnected", host.name);
+        }
+
+        List<Assignment> lost = new ArrayList<>();
+        for (Assignment assignment : assignments.values()) {
+            if (assignment.host == host) {
+                lost.add(assignment);
+            }
+        }
+        for (Assignment assignment : lost) {
+            assignments.remove(assignment.id);
+            if (assignment.matchId == null) {
+                // Never started, so the players are still here
+                requeue(assignment);
+            } else {
+                // Whatever happened to the match, its result isn't coming; let its players queue again
+                for (UUID playerId : assignment.players) {
+                    away.remove(playerId, assignment);
+                }
+            }
+        }
+    }
+
+    private void requeue(Assignment assignment) {
+        assignments.remove(assignment.id);
+        for (UUID playerId : assignment.players) {
+            away.remove(playerId, assignment);
+        }
+        MatchQueue.putBack(assignment.players);
+    }
+
+    /**
+     * Handles what the match hosts sent, drops those that stopped sending heartbeats, and puts the
+     * players of assignments that got no answer back in the queue.
+     */
+    void tick() {
+        Runnable message;
+        while ((message = inbox.poll()) != null) {
+            message.run();
+        }
+
+        long now = Util.getMillis();
+        List<HostInfo> timedOut = null;
+        for (HostInfo host : hosts.values()) {
+            if (now - host.lastHeartbeatMillis > Config.hostTimeoutMillis) {
+                if (timedOut == null) {
+                    timedOut = new ArrayList<>();
+                }
+                timedOut.add(host);
+            }
+        }
+        if (timedOut != null) {
+            // The host and its assignments are dropped as the close comes through the inbox
+            for (HostInfo host : timedOut) {
+                DimensionMod.LOGGER.warn("Match host {} timed out", host.name);
+                host.connection.close();
+            }
+        }
+
+        List<Assignment> unanswered = null;
+        for (Assignment assignment : assignments.values()) {
+            if (assignment.matchId == null && now - assignment.sentMillis > Config.hostTimeoutMillis) {
+                if (unanswered == null) {
+                    unanswered = new ArrayList<>();
+                }
+                unanswered.add(assignment);
+            }
+        }
+        if (unanswered != null) {
+            for (Assignment assignment : unanswered) {
+                DimensionMod.LOGGER.warn("Match host {} didn't answer a match assignment in time",
+                        assignment.host.name);
+                assignment.host.pending--;
+                // Sent after the assignment on the same connection, so the host has seen it by then and
+                // cancels the match if it started one after all; it can't hold on to the players
+                ByteBuffer abort = Protocol.frame(Protocol.ABORT, 4);
+                abort.putInt(assignment.id);
+                assignment.host.connection.send(abort);
+                requeue(assignment);
+            }
+        }
+    }
+
+    boolean hasHostAvailable() {
+        return pickHost(Util.getMillis()) != null;
+    }
+
+    /**
+     * Sends the players' match to the least loaded match host. They stay in the lobby until the host has
+     * started it.
+     *
+     * @return false if no host is taking matches
+     */
+    boolean assign(List<? extends ServerPlayer> players) {
+        long now = Util.getMillis();
+        HostInfo host = pickHost(now);
+        if (host == null)
+            return false;
+
+        Assignment assignment = new Assignment(++lastAssignmentId, host,
+                players.stream().map(ServerPlayer::getUUID).toList(), now);
+        assignments.put(assignment.id, assignment);
+        for (UUID playerId : assignment.players) {
+            away.put(playerId, assignment);
+        }
+        host.pending++;
+
+        ByteBuffer frame = Protocol.frame(Protocol.ASSIGN, 4 + 4 + assignment.players.size() * Protocol.UUID_BYTES);
+        frame.putInt(assignment.id).putInt(assignment.players.size());
+        for (UUID playerId : assignment.players) {
+            Protocol.putUuid(frame, playerId);
+        }
+        host.connection.send(frame);
+        return true;
+    }
+
+    // Hosts under the governor's threshold first, then the fewest matches, then the shortest ticks
+    private HostInfo pickHost(long now) {
+        HostInfo best = null;
+        for (HostInfo host : hosts.values()) {
+            if (!host.isAvailable(now))
+                continue;
+            if (best == null || compareLoad(host, best) < 0) {
+                best = host;
+            }
+        }
+        return best;
+    }
+
+    private static int compareLoad(HostInfo a, HostInfo b) {
+        int overloaded = Boolean.compare(a.isOverloaded(), b.isOverloaded());
+        if (overloaded != 0)
+            return overloaded;
+        int load = Integer.compare(a.getLoad(), b.getLoad());
+        if (load != 0)
+            return load;
+        return Float.compare(a.mspt, b.mspt);
+    }
+
+    boolean isAway(UUID playerId) {
+        return away.containsKey(playerId);
+    }
+
+    public Collection<HostInfo> getHosts() {
+        return hosts.values();
+    }
+
+    /**
+     * @return the latest match results, newest first
+     */
+    public Collection<Result> getResults() {
+        return results;
+    }
+
+    /**
+     * @return players sent to a match host who haven't got a result back yet
+     */
+    public int getAwayCount() {
+        return away.size();
+    }
+
+    void close() {
+        running = false;
+        try {
+            serverChannel.close();
+            if (socketFile != null) {
+                Files.deleteIfExists(socketFile);
+            }
+        } catch (IOException e) {
+            DimensionMod.LOGGER.warn("Failed to close the coordinator lobby socket", e);
+        }
+        for (HostInfo host : hosts.values()) {
+            host.connection.close();
+        }
+        hosts.clear();
+        assignments.clear();
+        away.clear();
+    }
+
+    /**
+     * A connected match host, as of its last heartbeat.
+     */
+    public static class HostInfo {
+        private final Connection connection;
+        // Challenge sent to the host, which its HELLO has to prove the secret against
+        private final byte[] nonce;
+        private String name;
+        private String playerAddress = "";
+        private boolean ready = false;
+        private int matches = 0;
+        private int players = 0;
+        private float mspt = 0;
+        private boolean accepting = false;
+        private long lastHeartbeatMillis = Util.getMillis();
+        // Assignments sent and not answered yet
+        private int pending = 0;
+        // Matches the host started that its last heartbeat didn't count yet
+        private int startedSinceHeartbeat = 0;
+
+        private HostInfo(Connection connection, byte[] nonce) {
+            this.connection = connection;
+            this.nonce = nonce;
+            this.name = connection.getName();
+        }
+
+        // One assignment at a time, so the host's own creation limit shows up in its next heartbeat
+        private boolean isAvailable(long now) {
+            return ready && accepting && pending == 0 && connection.isOpen()
+                    && now - lastHeartbeatMillis <= Config.hostTimeoutMillis;
+        }
+
+        public boolean isOverloaded() {
+            return mspt >= Config.governorMsptThreshold;
+        }
+
+        /**
+         * @return running matches, counting those started since the last heartbeat
+         */
+        public int getLoad() {
+            return matches + startedSinceHeartbeat + pending;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isReady() {
+            return ready;
+        }
+
+        public int getMatches() {
+            return matches;
+        }
+
+        public int getPlayers() {
+            return players;
+        }
+
+        public float getMspt() {
+            return mspt;
+        }
+
+        public boolean isAccepting() {
+            return accepting;
+        }
+
+        public long getMillisSinceHeartbeat() {
+            return Util.getMillis() - lastHeartbeatMillis;
+        }
+    }
+
+    public record Result(String host, String matchId, int ticks, int players, int extracted) {
+    }
+
+    private static class Assignment {
+        private final int id;
+        private final HostInfo host;
+        private final List<UUID> players;
+        private final long sentMillis;
+        // Set once the host has started the match
+        private String matchId;
+
+        private Assignment(int id, HostInfo host, List<UUID> players, long sentMillis) {
+            this.id = id;
+            this.host = host;
+            this.players = players;
+            this.sentMillis = sentMillis;
+        }
+    }
+}
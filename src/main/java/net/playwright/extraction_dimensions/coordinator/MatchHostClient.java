@@ -0,0 +1,292 @@
+package net.playwright.extraction_dimensions.coordinator;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.minecraft.Util;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import net.playwright.extraction_dimensions.Config;
+import net.playwright.extraction_dimensions.DimensionMod;
+import net.playwright.extraction_dimensions.DimensionPool;
+import net.playwright.extraction_dimensions.MatchManager;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The match host end of the coordinator: keeps a connection to the lobby, tells it how loaded this
+ * server is, starts the matches it assigns, and reports how they went.
+ * <p>
+ * The lobby opens with a challenge, which the host answers in its HELLO with proof that it knows
+ * {@link Config#coordinatorSecret}. A match whose assignment the lobby gave up on before the host's
+ * answer got there is cancelled when the lobby says so.
+ * <p>
+ * Matches keep running if the lobby goes away, but results that come in while it is disconnected are
+ * lost. Everything here other than the connection threads runs on the server thread.
+ */
+public class MatchHostClient implements Connection.Handler {
+
+    private static final long RECONNECT_MILLIS = 2000;
+
+    private final MinecraftServer server;
+    private final String address;
+    private final String name;
+    private final String playerAddress;
+    private final Thread connector;
+    private volatile boolean running = true;
+    private volatile Connection connection;
+    // Messages handed over from the connection's reader, handled at the start of the next tick
+    private final Queue<Runnable> inbox = new ConcurrentLinkedQueue<>();
+    // Lobby assignment id of each match it assigned us that is still running
+    private final Object2IntOpenHashMap<String> assignmentIds = new Object2IntOpenHashMap<>();
+    private long nextHeartbeatMillis = 0;
+
+    private MatchHostClient(MinecraftServer server, String address, String name, String playerAddress) {
+        this.server = server;
+        this.address = address;
+        this.name = name;
+        this.playerAddress = playerAddress;
+        this.connector = new Thread(this::connectLoop, "Extraction-Coordinator-Connect");
+        connector.setDaemon(true);
+        assignmentIds.defaultReturnValue(-1);
+    }
+
+    static MatchHostClient start(MinecraftServer server, String address, String name, String playerAddress) {
+        // Fail on a bad address now rather than on every reconnect
+        Protocol.parseAddress(address);
+        MatchHostClient client = new MatchHostClient(server, address, name, playerAddress);
+        client.connector.start();
+        return client;
+    }
+
+    // Connects, and connects again whenever the connection is lost
+    private void connectLoop() {
+        boolean warned = false;
+        try {
+            while (running) {
+                Connection current = connection;
+                if (current == null || !current.isOpen()) {
+                    try {
+                        connection = connect();
+                        warned = false;
+                        DimensionMod.LOGGER.info("Connected to the coordinator lobby at {} as {}", address, name);
+                    } catch (IOException e) {
+                        if (!warned) {
+                            warned = true;
+                            DimensionMod.LOGGER.warn("Can't reach the coordinator lobby at {}, will keep trying",
+                                    address, e);
+                        }
+                    }
+                }
+                Thread.sleep(RECONNECT_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    private Connection connect() throws IOException {
+        SocketChannel socket = SocketChannel.open(Protocol.parseAddress(address));
+        if (socket.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) {
+            socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+        // The lobby speaks first, with its challenge
+        Connection lobby = new Connection(socket, "lobby", this);
+        lobby.start();
+        return lobby;
+    }
+
+    // Answers the lobby's challenge; sending is safe from the reader thread
+    private void sendHello(Connection lobby, byte[] nonce) {
+        byte[] nameBytes = Protocol.utf8(name);
+        byte[] addressBytes = Protocol.utf8(playerAddress);
+        byte[] proof = Protocol.prove(Config.coordinatorSecret, nonce);
+        ByteBuffer hello = Protocol.frame(Protocol.HELLO,
+                4 + 2 + nameBytes.length + 2 + addressBytes.length + 2 + proof.length);
+        hello.putInt(Protocol.VERSION);
+        Protocol.putString(hello, nameBytes);
+        Protocol.putString(hello, addressBytes);
+        Protocol.putString(hello, proof);
+        lobby.send(hello);
+    }
+
+    @Override
+    public void received(Connection connection, byte type, ByteBuffer payload) {
+        switch (type) {
+            case Protocol.CHALLENGE -> {
+                byte[] nonce = new byte[Protocol.NONCE_BYTES];
+                payload.get(nonce);
+                sendHello(connection, nonce);
+            }
+            case Protocol.ASSIGN -> {
+                int id = payload.getInt();
+                int count = payload.getInt();
+                List<UUID> players = new ArrayList<>(Math.min(count, payload.remaining() / Protocol.UUID_BYTES));
+                for (int i = 0; i < count; i++) {
+                    players.add(Protocol.getUuid(payload));
+                }
+                inbox.add(() -> onAssign(connection, id, players));
+            }
+            case Protocol.ABORT -> {
+                int id = payload.getInt();
+                inbox.add(() -> onAbort(id));
+            }
+            default -> {
+                DimensionMod.LOGGER.warn("Unknown message {} from the coordinator lobby", type);
+                connection.close();
+            }
+        }
+    }
+
+    @Override
+    public void closed(Connection connection) {
+        if (running) {
+            DimensionMod.LOGGER.warn("Lost the connection to the coordinator lobby, reconnecting");
+        }
+    }
+
+    private void onAssign(Connection lobby, int id, List<UUID> players) {
+        // A player can only be in one match at a time
+        List<UUID> free = players.stream().filter(playerId -> !MatchManager.isInMatch(playerId)).toList();
+        MatchManager.Match match = !free.isEmpty() && DimensionPool.canAcquire()
+                ? MatchManager.startMatchFor(server, free) : null;
+        if (match != null) {
+            assignmentIds.put(match.getId(), id);
+            DimensionMod.LOGGER.info("Started match {} for {} players from the lobby", match.getId(), free.size());
+        }
+
+        byte[] matchId = Protocol.utf8(match != null ? match.getId() : "");
+        ByteBuffer frame = Protocol.frame(Protocol.ASSIGNED, 4 + 1 + 2 + matchId.length);
+        frame.putInt(id).put((byte) (match != null ? 1 : 0));
+        Protocol.putString(frame, matchId);
+        lobby.send(frame);
+    }
+
+    private void onAbort(int id) {
+        String matchId = null;
+        for (Object2IntMap.Entry<String> entry : assignmentIds.object2IntEntrySet()) {
+            if (entry.getIntValue() == id) {
+                matchId = entry.getKey();
+                break;
+            }
+        }
+        // Turned down, or already over
+        if (matchId == null)
+            return;
+
+        // Taken off first, so the lobby doesn't get a result for it
+        assignmentIds.removeInt(matchId);
+        MatchManager.Match match = MatchManager.getMatch(matchId);
+        if (match != null) {
+            DimensionMod.LOGGER.info("The lobby gave up on match {} before it heard back, cancelling it", matchId);
+            match.cancel();
+        }
+    }
+
+    /**
+     * Handles what the lobby sent and sends a heartbeat when one is due.
+     */
+    void tick() {
+        Runnable message;
+        while ((message = inbox.poll()) != null) {
+            message.run();
+        }
+
+        long now = Util.getMillis();
+        Connection lobby = connection;
+        if (lobby == null || !lobby.isOpen() || now < nextHeartbeatMillis)
+            return;
+        nextHeartbeatMillis = now + Config.heartbeatIntervalMillis;
+
+        ByteBuffer frame = Protocol.frame(Protocol.HEARTBEAT, 4 + 4 + 4 + 1);
+        frame.putInt(MatchManager.getMatches().size())
+                .putInt(server.getPlayerCount())
+                .putFloat(server.getAverageTickTime())
+                .put((byte) (DimensionPool.canAcquire() ? 1 : 0));
+        lobby.send(frame);
+    }
+
+    void onExtracted(ServerPlayer player, MatchManager.Match match) {
+        if (!assignmentIds.containsKey(match.getId()))
+            return;
+        Connection lobby = connection;
+        if (lobby != null && lobby.isOpen()) {
+            byte[] matchId = Protocol.utf8(match.getId());
+            ByteBuffer frame = Protocol.frame(Protocol.PLAYER_RESULT, 2 + matchId.length + Protocol.UUID_BYTES + 1);
+            Protocol.putString(frame, matchId);
+            Protocol.putUuid(frame, player.getUUID());
+            frame.put(Protocol.EXTRACTED);
+            lobby.send(frame);
+        }
+        Coordinator.getTransfer().toLobby(player);
+    }
+
+    void onMatchEnded(MatchManager.Match match) {
+        int id = assignmentIds.removeInt(match.getId());
+        if (id < 0)
+            return;
+
+        List<UUID> players = match.getPlayerIds();
+        Connection lobby = connection;
+        if (lobby != null && lobby.isOpen()) {
+            byte[] matchId = Protocol.utf8(match.getId());
+            ByteBuffer frame = Protocol.frame(Protocol.MATCH_RESULT,
+                    4 + 2 + matchId.length + 4 + 4 + players.size() * (Protocol.UUID_BYTES + 1));
+            frame.putInt(id);
+            Protocol.putString(frame, matchId);
+            frame.putInt((int) (MatchManager.currentTick() - match.getCreatedTick()));
+            frame.putInt(players.size());
+            for (UUID playerId : players) {
+                Protocol.putUuid(frame, playerId);
+                frame.put(match.hasExtracted(playerId) ? Protocol.EXTRACTED : Protocol.LOST);
+            }
+            lobby.send(frame);
+        } else {
+            DimensionMod.LOGGER.warn("Not connected to the coordinator lobby, the result of {} is lost", match.getId());
+        }
+
+        // Those who extracted were sent back already
+        for (UUID playerId : players) {
+            ServerPlayer player = server.getPlayerList().getPlayer(playerId);
+            if (player != null && !match.hasExtracted(playerId)) {
+                Coordinator.getTransfer().toLobby(player);
+            }
+        }
+    }
+
+    public boolean isConnected() {
+        Connection lobby = connection;
+        return lobby != null && lobby.isOpen();
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return running matches the lobby assigned to this server
+     */
+    public int getAssignedMatches() {
+        return assignmentIds.size();
+    }
+
+    void close() {
+        running = false;
+        connector.interrupt();
+        Connection lobby = connection;
+        if (lobby != null) {
+            lobby.close();
+        }
+    }
+}
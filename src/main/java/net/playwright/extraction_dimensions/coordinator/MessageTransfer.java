@@ -0,0 +1,32 @@
+package net.playwright.extraction_dimensions.coordinator;
+
+import net.minecraft.ChatFormatting;
+import net.minecraft.network.chat.ClickEvent;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.level.ServerPlayer;
+import net.playwright.extraction_dimensions.Config;
+
+/**
+ * Tells players where to connect, for servers that aren't behind a proxy.
+ */
+class MessageTransfer implements PlayerTransfer {
+
+    @Override
+    public void toHost(ServerPlayer player, String hostName, String hostAddress, String matchId) {
+        if (hostAddress.isEmpty()) {
+            player.sendSystemMessage(Component.literal("Match found on " + hostName + "! Connect to it to play."));
+            return;
+        }
+        player.sendSystemMessage(Component.literal("Match found on " + hostName + "! Connect to ")
+                .append(Component.literal(hostAddress).withStyle(style -> style
+                        .withColor(ChatFormatting.AQUA)
+                        .withUnderlined(true)
+                        .withClickEvent(new ClickEvent(ClickEvent.Action.COPY_TO_CLIPBOARD, hostAddress))))
+                .append(" to play."));
+    }
+
+    @Override
+    public void toLobby(ServerPlayer player) {
+        player.sendSystemMessage(Component.literal("Head back to " + Config.lobbyServerName + " to queue again."));
+    }
+}
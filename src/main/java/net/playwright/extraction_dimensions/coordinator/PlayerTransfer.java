@@ -0,0 +1,25 @@
+package net.playwright.extraction_dimensions.coordinator;
+
+import net.minecraft.server.level.ServerPlayer;
+
+/**
+ * Moves players between the lobby and the match hosts. What that takes depends on how the servers are
+ * put together, so it can be replaced with {@link Coordinator#setTransfer}.
+ * <p>
+ * Always called on the server thread.
+ */
+public interface PlayerTransfer {
+
+    /**
+     * Called on the lobby once a match host has started a match for the player.
+     *
+     * @param hostName    the name the host reported, e.g. its server name behind a proxy
+     * @param hostAddress the address the host reported for players, possibly empty
+     */
+    void toHost(ServerPlayer player, String hostName, String hostAddress, String matchId);
+
+    /**
+     * Called on a match host once the player has extracted or their match has ended.
+     */
+    void toLobby(ServerPlayer player);
+}
@@ -0,0 +1,118 @@
+package net.playwright.extraction_dimensions.coordinator;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.UUID;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The messages a lobby and its match hosts exchange.
+ * <p>
+ * Every message is a frame {@code [length: int][type][payload]}, where the length counts the type and
+ * payload. Strings and byte strings are {@code [length: short][bytes]}, UUIDs two longs.
+ * <ul>
+ * <li>{@link #CHALLENGE} lobby to host, once after connecting: a random nonce</li>
+ * <li>{@link #HELLO} host to lobby, in answer: protocol version, host name, player address, then
+ * {@link #prove proof} that it knows the shared secret</li>
+ * <li>{@link #HEARTBEAT} host to lobby: running matches, players online, average tick time, whether it
+ * takes new matches</li>
+ * <li>{@link #ASSIGN} lobby to host: assignment id, players</li>
+ * <li>{@link #ASSIGNED} host to lobby: assignment id, whether the match was started, its id</li>
+ * <li>{@link #PLAYER_RESULT} host to lobby, as a player extracts: match id, player, outcome</li>
+ * <li>{@link #MATCH_RESULT} host to lobby, as a match ends: assignment id, match id, ticks it ran,
+ * then every player and their outcome</li>
+ * <li>{@link #ABORT} lobby to host: assignment id whose answer came too late; the host cancels the match
+ * if it started one, since its players have been put back in the queue</li>
+ * </ul>
+ * The lobby ignores a host until its HELLO has come in and checked out.
+ */
+public final class Protocol {
+
+    static final int VERSION = 2;
+
+    static final byte HELLO = 1;
+    static final byte HEARTBEAT = 2;
+    static final byte ASSIGN = 3;
+    static final byte ASSIGNED = 4;
+    static final byte PLAYER_RESULT = 5;
+    static final byte MATCH_RESULT = 6;
+    static final byte CHALLENGE = 7;
+    static final byte ABORT = 8;
+
+    // Player outcomes
+    public static final byte EXTRACTED = 0;
+    public static final byte LOST = 1;
+
+    static final int MAX_FRAME_BYTES = 1 << 20;
+    static final int UUID_BYTES = 16;
+    static final int NONCE_BYTES = 16;
+
+    private Protocol() {
+    }
+
+    /**
+     * @return a frame with its length and type written, ready for {@code payloadBytes} of payload
+     */
+    static ByteBuffer frame(byte type, int payloadBytes) {
+        return ByteBuffer.allocate(4 + 1 + payloadBytes).putInt(1 + payloadBytes).put(type);
+    }
+
+    static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static void putString(ByteBuffer buffer, byte[] utf8) {
+        buffer.putShort((short) utf8.length).put(utf8);
+    }
+
+    static String getString(ByteBuffer buffer) {
+        return new String(getBytes(buffer), StandardCharsets.UTF_8);
+    }
+
+    static byte[] getBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * @return the HMAC-SHA256 of the lobby's nonce keyed with the shared secret, or nothing if there is
+     * no secret
+     */
+    static byte[] prove(String secret, byte[] nonce) {
+        if (secret.isEmpty())
+            return new byte[0];
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(utf8(secret), "HmacSHA256"));
+            return mac.doFinal(nonce);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    static void putUuid(ByteBuffer buffer, UUID id) {
+        buffer.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+    }
+
+    static UUID getUuid(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    /**
+     * Parses {@code host:port} for TCP, or {@code unix:/path/to/socket} for a Unix domain socket.
+     */
+    static SocketAddress parseAddress(String address) {
+        if (address.startsWith("unix:"))
+            return UnixDomainSocketAddress.of(address.substring("unix:".length()));
+        int colon = address.lastIndexOf(':');
+        if (colon < 0)
+            throw new IllegalArgumentException("Expected host:port or unix:/path, got " + address);
+        return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+}
@@ -0,0 +1,46 @@
+package net.playwright.extraction_dimensions.coordinator;
+
+import io.netty.buffer.Unpooled;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.protocol.game.ClientboundCustomPayloadPacket;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerPlayer;
+import net.playwright.extraction_dimensions.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Asks a BungeeCord-compatible proxy (BungeeCord, Waterfall, or Velocity with its BungeeCord channel
+ * enabled) to move players, using the host name as the proxy's server name.
+ */
+class ProxyTransfer implements PlayerTransfer {
+
+    private static final ResourceLocation CHANNEL = new ResourceLocation("bungeecord", "main");
+
+    @Override
+    public void toHost(ServerPlayer player, String hostName, String hostAddress, String matchId) {
+        player.sendSystemMessage(Component.literal("Match found! Sending you to " + hostName + "..."));
+        connect(player, hostName);
+    }
+
+    @Override
+    public void toLobby(ServerPlayer player) {
+        connect(player, Config.lobbyServerName);
+    }
+
+    private static void connect(ServerPlayer player, String server) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF("Connect");
+            out.writeUTF(server);
+        } catch (IOException e) {
+            // Can't happen writing to memory
+            throw new IllegalStateException(e);
+        }
+        player.connection.send(new ClientboundCustomPayloadPacket(CHANNEL,
+                new FriendlyByteBuf(Unpooled.wrappedBuffer(bytes.toByteArray()))));
+    }
+}
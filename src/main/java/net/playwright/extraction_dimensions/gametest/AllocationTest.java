@@ -0,0 +1,212 @@
+package net.playwright.extraction_dimensions.gametest;
+
+import com.mojang.authlib.GameProfile;
+import net.minecraft.gametest.framework.GameTest;
+import net.minecraft.gametest.framework.GameTestHelper;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Entity;
+import net.minecraftforge.common.util.FakePlayer;
+import net.minecraftforge.common.util.FakePlayerFactory;
+import net.minecraftforge.gametest.GameTestHolder;
+import net.minecraftforge.gametest.PrefixGameTestTemplate;
+import net.playwright.extraction_dimensions.Config;
+import net.playwright.extraction_dimensions.DimensionMod;
+import net.playwright.extraction_dimensions.MatchManager;
+import net.playwright.extraction_dimensions.MatchReclaimer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Checks that running matches allocate nothing from tick to tick.
+ * <p>
+ * Starts a few matches of fake players, and every player starts an extraction that outlasts the test
+ * as soon as they arrive. Once the bars are up and the buffers have grown, {@link MatchManager} adds up
+ * what its bookkeeping allocates ({@link MatchManager#trackAllocations}) over a window of ticks. Deciding
+ * what happens (frame snapshots, timers, journal and recorder records, stats) must allocate nothing at
+ * all. Carrying it out (HUD flushes and match commands) must allocate nothing in the ticks that sent no
+ * packets; a packet is always a new object. Each window covers timer and extraction updates every
+ * second and at least one journal clock record.
+ * <p>
+ * Runs with serial and with parallel bookkeeping. Run with {@code ./gradlew runGameTestServer}.
+ */
+@GameTestHolder(DimensionMod.MODID)
+@PrefixGameTestTemplate(false)
+public class AllocationTest {
+
+    private static final int MATCHES = 3;
+    private static final int PLAYERS_PER_MATCH = 2;
+    // Ticks after the last extraction started before measuring, for bars to be added and buffers to grow
+    private static final int SETTLE_TICKS = 100;
+    private static final int WINDOW_TICKS = 300;
+
+    @GameTest(template = "empty", timeoutTicks = 20 * 60 * 2, batch = "allocation")
+    public static void serialBookkeepingAllocatesNothing(GameTestHelper helper) {
+        new AllocationRun(helper, "alloc_serial", false).start();
+    }
+
+    @GameTest(template = "empty", timeoutTicks = 20 * 60 * 2, batch = "allocation_parallel")
+    public static void parallelBookkeepingAllocatesNothing(GameTestHelper helper) {
+        new AllocationRun(helper, "alloc_parallel", true).start();
+    }
+
+    private static class AllocationRun {
+        private final GameTestHelper helper;
+        private final String prefix;
+        private final boolean parallel;
+        private final MinecraftServer server;
+        private final List<MatchManager.Match> matches = new ArrayList<>();
+        private final List<FakePlayer> players = new ArrayList<>();
+        private final boolean[] extracting = new boolean[MATCHES * PLAYERS_PER_MATCH];
+        private int extractingCount = 0;
+        private int settledTicks = 0;
+        private int measuredTicks = 0;
+        private int quietTicks = 0;
+        private long lastBookkeepingBytes;
+        private long lastApplyBytes;
+        private long lastPackets;
+        private long bookkeepingBytes = 0;
+        private long quietApplyBytes = 0;
+        private boolean measured = false;
+
+        private final int savedWarmupSeconds = Config.matchWarmupSeconds;
+        private final int savedDurationSeconds = Config.matchDurationSeconds;
+        private final int savedExtractionSeconds = Config.extractionSeconds;
+        private final boolean savedParallelBookkeeping = Config.parallelBookkeeping;
+
+        private AllocationRun(GameTestHelper helper, String prefix, boolean parallel) {
+            this.helper = helper;
+            this.server = helper.getLevel().getServer();
+            this.prefix = prefix;
+            this.parallel = parallel;
+        }
+
+        private void start() {
+            Config.matchWarmupSeconds = 5;
+            Config.matchDurationSeconds = 10 * 60;
+            // Outlasts the test, so no extraction completes while measuring
+            Config.extractionSeconds = 5 * 60;
+            Config.parallelBookkeeping = parallel;
+
+            for (int m = 0; m < MATCHES; m++) {
+                List<FakePlayer> group = new ArrayList<>();
+                for (int p = 0; p < PLAYERS_PER_MATCH; p++) {
+                    String name = prefix + "_" + m + "_" + p;
+                    UUID id = UUID.nameUUIDFromBytes(("extraction_alloc:" + name).getBytes(StandardCharsets.UTF_8));
+                    group.add(FakePlayerFactory.get(helper.getLevel(), new GameProfile(id, name)));
+                }
+                MatchManager.Match match = MatchManager.startMatch(server, group);
+                if (match == null) {
+                    restoreConfig();
+                    helper.fail("Could not start match " + m);
+                    return;
+                }
+                matches.add(match);
+                players.addAll(group);
+            }
+            helper.onEachTick(this::tick);
+        }
+
+        private void tick() {
+            if (measured) {
+                // Matches were cancelled; wait for their levels to go before taking the players out
+                if (MatchReclaimer.size() == 0) {
+                    finish();
+                }
+                return;
+            }
+
+            if (extractingCount < extracting.length) {
+                startExtractions();
+            } else if (settledTicks < SETTLE_TICKS) {
+                settledTicks++;
+            } else if (!MatchManager.trackAllocations) {
+                MatchManager.trackAllocations = true;
+                lastBookkeepingBytes = MatchManager.getBookkeepingAllocatedBytes();
+                lastApplyBytes = MatchManager.getApplyAllocatedBytes();
+                lastPackets = hudPackets();
+            } else {
+                // Everything since the last call is the bookkeeping of one server tick
+                long bookkeeping = MatchManager.getBookkeepingAllocatedBytes();
+                long apply = MatchManager.getApplyAllocatedBytes();
+                long packets = hudPackets();
+                bookkeepingBytes += bookkeeping - lastBookkeepingBytes;
+                if (packets == lastPackets) {
+                    quietApplyBytes += apply - lastApplyBytes;
+                    quietTicks++;
+                }
+                lastBookkeepingBytes = bookkeeping;
+                lastApplyBytes = apply;
+                lastPackets = packets;
+
+                if (++measuredTicks == WINDOW_TICKS) {
+                    MatchManager.trackAllocations = false;
+                    measured = true;
+                    for (MatchManager.Match match : matches) {
+                        match.cancel();
+                    }
+                }
+            }
+        }
+
+        // Start extracting as soon as the player has arrived
+        private void startExtractions() {
+            for (int m = 0; m < matches.size(); m++) {
+                MatchManager.Match match = matches.get(m);
+                if (match.getState() != MatchManager.Match.MatchState.PLAYING)
+                    continue;
+                for (int p = 0; p < PLAYERS_PER_MATCH; p++) {
+                    int index = m * PLAYERS_PER_MATCH + p;
+                    FakePlayer player = players.get(index);
+                    if (!extracting[index] && player.level().dimension().equals(match.getDimension())) {
+                        MatchManager.startExtraction(player);
+                        extracting[index] = true;
+                        extractingCount++;
+                    }
+                }
+            }
+        }
+
+        private long hudPackets() {
+            long packets = 0;
+            for (MatchManager.Match match : matches) {
+                packets += match.getMetrics().getHudPackets();
+            }
+            return packets;
+        }
+
+        private void finish() {
+            restoreConfig();
+            for (FakePlayer player : players) {
+                if (player.level() instanceof ServerLevel level) {
+                    level.removePlayerImmediately(player, Entity.RemovalReason.DISCARDED);
+                }
+            }
+
+            DimensionMod.LOGGER.info("Allocation test ({} bookkeeping): {} matches x {} players over {} ticks",
+                    parallel ? "parallel" : "serial", MATCHES, PLAYERS_PER_MATCH, measuredTicks);
+            DimensionMod.LOGGER.info("  bookkeeping {} bytes, HUD and commands {} bytes in {} ticks without packets",
+                    bookkeepingBytes, quietApplyBytes, quietTicks);
+
+            if (bookkeepingBytes > 0) {
+                helper.fail("Match bookkeeping allocated " + bookkeepingBytes + " bytes in " + measuredTicks + " ticks");
+            } else if (quietApplyBytes > 0) {
+                helper.fail("HUD flushes and commands allocated " + quietApplyBytes + " bytes in " + quietTicks
+                        + " ticks that sent no packets");
+            } else {
+                helper.succeed();
+            }
+        }
+
+        private void restoreConfig() {
+            MatchManager.trackAllocations = false;
+            Config.matchWarmupSeconds = savedWarmupSeconds;
+            Config.matchDurationSeconds = savedDurationSeconds;
+            Config.extractionSeconds = savedExtractionSeconds;
+            Config.parallelBookkeeping = savedParallelBookkeeping;
+        }
+    }
+}
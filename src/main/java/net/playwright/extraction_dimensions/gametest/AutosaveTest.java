@@ -0,0 +1,103 @@
+package net.playwright.extraction_dimensions.gametest;
+
+import net.minecraft.gametest.framework.GameTest;
+import net.minecraft.gametest.framework.GameTestHelper;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.TicketType;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraftforge.gametest.GameTestHolder;
+import net.minecraftforge.gametest.PrefixGameTestTemplate;
+import net.playwright.extraction_dimensions.DimensionMod;
+import net.playwright.extraction_dimensions.DimensionPool;
+import net.playwright.extraction_dimensions.EphemeralLevels;
+import net.playwright.extraction_dimensions.MatchReclaimer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Measures what an autosave costs the server thread for populated match levels, with and without the
+ * ephemeral mark.
+ * <p>
+ * Creates several match levels and generates the chunks around their centre, so every chunk is unsaved
+ * and holds its generated mobs. Each level is then saved the way autosave does it
+ * ({@code ServerLevel.save} without flushing), first while marked ephemeral and then unmarked, and both
+ * times are logged. Run with {@code ./gradlew runGameTestServer}. The load is set with the system
+ * properties {@code extraction.autosave.levels} and {@code extraction.autosave.radius}.
+ */
+@GameTestHolder(DimensionMod.MODID)
+@PrefixGameTestTemplate(false)
+public class AutosaveTest {
+
+    private static final int LEVELS = Integer.getInteger("extraction.autosave.levels", 20);
+    // Radius in chunks generated around each level's centre
+    private static final int RADIUS = Integer.getInteger("extraction.autosave.radius", 4);
+
+    private static final ChunkPos CENTRE = new ChunkPos(0, 0);
+    private static final TicketType<ChunkPos> TICKET = TicketType.create("extraction_autosave_test",
+            Comparator.comparingLong(ChunkPos::toLong));
+
+    @GameTest(template = "empty", timeoutTicks = 20 * 60 * 5, batch = "autosave")
+    public static void autosaveEphemeralLevels(GameTestHelper helper) {
+        MinecraftServer server = helper.getLevel().getServer();
+        List<ServerLevel> levels = new ArrayList<>();
+        boolean[] measured = {false};
+
+        helper.onEachTick(() -> {
+            if (levels.size() < LEVELS) {
+                // One level per tick, so no single tick generates all of them
+                ServerLevel level = DimensionPool.acquire(server);
+                if (level == null) {
+                    helper.fail("Could not create match level " + levels.size());
+                    return;
+                }
+                populate(level);
+                levels.add(level);
+            } else if (!measured[0]) {
+                measured[0] = true;
+                measure(levels);
+                for (ServerLevel level : levels) {
+                    level.getChunkSource().removeRegionTicket(TICKET, CENTRE, RADIUS, CENTRE);
+                    MatchReclaimer.reclaim(server, level.dimension());
+                }
+            } else if (MatchReclaimer.size() == 0) {
+                helper.succeed();
+            }
+        });
+    }
+
+    private static void populate(ServerLevel level) {
+        level.getChunkSource().addRegionTicket(TICKET, CENTRE, RADIUS, CENTRE);
+        for (int x = -RADIUS; x <= RADIUS; x++) {
+            for (int z = -RADIUS; z <= RADIUS; z++) {
+                level.getChunk(x, z);
+            }
+        }
+    }
+
+    private static void measure(List<ServerLevel> levels) {
+        long ephemeralNanos = 0;
+        for (ServerLevel level : levels) {
+            EphemeralLevels.mark(level.dimension());
+            long start = System.nanoTime();
+            level.save(null, false, false);
+            ephemeralNanos += System.nanoTime() - start;
+        }
+
+        // Saving while marked wrote nothing, so every chunk is still unsaved here
+        long savedNanos = 0;
+        for (ServerLevel level : levels) {
+            EphemeralLevels.unmark(level.dimension());
+            long start = System.nanoTime();
+            level.save(null, false, false);
+            savedNanos += System.nanoTime() - start;
+        }
+
+        int chunks = levels.size() * (2 * RADIUS + 1) * (2 * RADIUS + 1);
+        DimensionMod.LOGGER.info("Autosave of {} match levels ({} chunks): ephemeral {} ms, saved {} ms",
+                levels.size(), chunks, String.format("%.2f", ephemeralNanos / 1_000_000.0),
+                String.format("%.2f", savedNanos / 1_000_000.0));
+    }
+}
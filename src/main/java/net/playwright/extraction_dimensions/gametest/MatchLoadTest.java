@@ -0,0 +1,295 @@
+package net.playwright.extraction_dimensions.gametest;
+
+import com.mojang.authlib.GameProfile;
+import net.minecraft.gametest.framework.GameTest;
+import net.minecraft.gametest.framework.GameTestAssertException;
+import net.minecraft.gametest.framework.GameTestHelper;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.common.util.FakePlayer;
+import net.minecraftforge.common.util.FakePlayerFactory;
+import net.minecraftforge.gametest.GameTestHolder;
+import net.minecraftforge.gametest.PrefixGameTestTemplate;
+import net.playwright.extraction_dimensions.ChunkResidency;
+import net.playwright.extraction_dimensions.Config;
+import net.playwright.extraction_dimensions.DimensionMod;
+import net.playwright.extraction_dimensions.MatchCommandBuffer;
+import net.playwright.extraction_dimensions.MatchManager;
+import net.playwright.extraction_dimensions.MatchReclaimer;
+import net.playwright.extraction_dimensions.metrics.RollingHistogram;
+
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Load test: runs several matches of fake players at once, all the way from warmup to reclamation.
+ * <p>
+ * Every fake player starts an extraction as soon as it arrives in its match, so each match goes
+ * through WARMUP, PLAYING, extraction and ENDED. Phase lengths are shortened for the run. Once every
+ * match has been reclaimed the test reports tick times, heap growth, leftover levels and HUD traffic
+ * (the packets actually sent against one packet for every timer or extraction update), and fails if
+ * the mean tick time is over budget or a match level is still registered.
+ * <p>
+ * A second test runs the same load twice, with serial and with parallel match bookkeeping
+ * ({@link Config#parallelBookkeeping}), and checks that both runs applied the same commands to every
+ * match, in the same order and for the same players and targets. Run with {@code ./gradlew runGameTestServer}. The load is set with the system properties
+ * {@code extraction.loadtest.matches}, {@code extraction.loadtest.players} and
+ * {@code extraction.loadtest.msptBudget}.
+ */
+@GameTestHolder(DimensionMod.MODID)
+@PrefixGameTestTemplate(false)
+public class MatchLoadTest {
+
+    private static final int MATCHES = Integer.getInteger("extraction.loadtest.matches", 4);
+    private static final int PLAYERS_PER_MATCH = Integer.getInteger("extraction.loadtest.players", 4);
+    private static final double MSPT_BUDGET = Double.parseDouble(System.getProperty("extraction.loadtest.msptBudget", "50"));
+
+    // Commands whose order and count per match don't depend on timing; messages do ("Preparing the arena...")
+    private static final List<String> COMPARED_COMMANDS = List.of(MatchCommandBuffer.TELEPORT,
+            MatchCommandBuffer.EXTRACT, MatchCommandBuffer.KILL, MatchCommandBuffer.RELEASE, MatchCommandBuffer.END);
+
+    @GameTest(template = "empty", timeoutTicks = 20 * 60 * 3, batch = "load")
+    public static void concurrentMatches(GameTestHelper helper) {
+        LoadRun run = new LoadRun(helper, "load", false, outcomes -> helper.succeed());
+        run.start();
+        drive(helper, () -> run);
+    }
+
+    @GameTest(template = "empty", timeoutTicks = 20 * 60 * 6, batch = "bookkeeping")
+    public static void parallelBookkeepingMatchesSerial(GameTestHelper helper) {
+        LoadRun[] current = new LoadRun[1];
+        current[0] = new LoadRun(helper, "serial", false, serial -> {
+            current[0] = new LoadRun(helper, "parallel", true, parallel -> {
+                if (parallel.equals(serial)) {
+                    helper.succeed();
+                } else {
+                    helper.fail("Parallel bookkeeping ended differently: " + parallel + ", serial: " + serial);
+                }
+            });
+            current[0].start();
+        });
+        current[0].start();
+        drive(helper, () -> current[0]);
+    }
+
+    // One tick callback for the whole test, handed to whichever run is going
+    private static void drive(GameTestHelper helper, Supplier<LoadRun> current) {
+        helper.onEachTick(() -> {
+            LoadRun run = current.get();
+            try {
+                run.tick();
+            } catch (GameTestAssertException e) {
+                run.restoreConfig();
+                throw e;
+            }
+        });
+    }
+
+    private static class LoadRun {
+        private final GameTestHelper helper;
+        private final String prefix;
+        private final boolean parallel;
+        // Gets one line per match describing how it ended, if the run passed its own checks
+        private final Consumer<List<String>> onFinished;
+        private final MinecraftServer server;
+        private final List<MatchManager.Match> matches = new ArrayList<>();
+        private final List<WeakReference<ServerLevel>> levels = new ArrayList<>();
+        private final List<FakePlayer> players = new ArrayList<>();
+        private final boolean[] extracting = new boolean[MATCHES * PLAYERS_PER_MATCH];
+        private final RollingHistogram tickTimes = new RollingHistogram(20 * 60 * 3);
+        private long tickNanosTotal = 0;
+        private long maxTickNanos = 0;
+        // Largest number of chunks, and their estimated heap, held by all matches at once
+        private int peakResidentChunks = 0;
+        private long peakResidentBytes = 0;
+        private long heapBefore;
+        private boolean finished = false;
+
+        private final int savedWarmupSeconds = Config.matchWarmupSeconds;
+        private final int savedDurationSeconds = Config.matchDurationSeconds;
+        private final int savedExtractionSeconds = Config.extractionSeconds;
+        private final boolean savedParallelBookkeeping = Config.parallelBookkeeping;
+        private final boolean savedKeepHistory = MatchCommandBuffer.keepHistory;
+
+        private LoadRun(GameTestHelper helper, String prefix, boolean parallel, Consumer<List<String>> onFinished) {
+            this.helper = helper;
+            this.server = helper.getLevel().getServer();
+            this.prefix = prefix;
+            this.parallel = parallel;
+            this.onFinished = onFinished;
+        }
+
+        private void start() {
+            Config.matchWarmupSeconds = 5;
+            Config.matchDurationSeconds = 30;
+            Config.extractionSeconds = 3;
+            Config.parallelBookkeeping = parallel;
+            MatchCommandBuffer.keepHistory = true;
+            heapBefore = usedHeapAfterGc();
+
+            for (int m = 0; m < MATCHES; m++) {
+                List<FakePlayer> group = new ArrayList<>();
+                for (int p = 0; p < PLAYERS_PER_MATCH; p++) {
+                    String name = prefix + "_" + m + "_" + p;
+                    UUID id = UUID.nameUUIDFromBytes(("extraction_load:" + name).getBytes(StandardCharsets.UTF_8));
+                    group.add(FakePlayerFactory.get(helper.getLevel(), new GameProfile(id, name)));
+                }
+
+                MatchManager.Match match = MatchManager.startMatch(server, group);
+                if (match == null) {
+                    restoreConfig();
+                    helper.fail("Could not start match " + m);
+                    return;
+                }
+                matches.add(match);
+                levels.add(new WeakReference<>(server.getLevel(match.getDimension())));
+                players.addAll(group);
+            }
+        }
+
+        private void tick() {
+            if (finished)
+                return;
+
+            // Duration of the last full server tick
+            long nanos = server.tickTimes[(server.getTickCount() + 99) % 100];
+            tickTimes.record(nanos);
+            tickNanosTotal += nanos;
+            maxTickNanos = Math.max(maxTickNanos, nanos);
+
+            boolean allDone = MatchReclaimer.size() == 0;
+            int residentChunks = 0;
+            long residentBytes = 0;
+            for (MatchManager.Match match : matches) {
+                residentChunks += ChunkResidency.getResidentChunks(match.getDimension());
+                residentBytes += ChunkResidency.getEstimatedBytes(match.getDimension());
+            }
+            peakResidentChunks = Math.max(peakResidentChunks, residentChunks);
+            peakResidentBytes = Math.max(peakResidentBytes, residentBytes);
+
+            for (int m = 0; m < matches.size(); m++) {
+                MatchManager.Match match = matches.get(m);
+                if (!match.isEnded()) {
+                    allDone = false;
+                }
+                if (match.getState() != MatchManager.Match.MatchState.PLAYING)
+                    continue;
+
+                // Start extracting as soon as the player has arrived
+                for (int p = 0; p < PLAYERS_PER_MATCH; p++) {
+                    int index = m * PLAYERS_PER_MATCH + p;
+                    FakePlayer player = players.get(index);
+                    if (!extracting[index] && player.level().dimension().equals(match.getDimension())) {
+                        MatchManager.startExtraction(player);
+                        extracting[index] = true;
+                    }
+                }
+            }
+
+            if (allDone) {
+                finish();
+            }
+        }
+
+        private void finish() {
+            finished = true;
+            restoreConfig();
+
+            int leaked = 0;
+            for (MatchManager.Match match : matches) {
+                if (server.getLevel(match.getDimension()) != null)
+                    leaked++;
+            }
+
+            int lost = 0;
+            for (FakePlayer player : players) {
+                if (!player.isAlive() || !player.level().dimension().equals(Level.OVERWORLD))
+                    lost++;
+                // Extracted players were added to the overworld; take them out again
+                if (player.level() instanceof ServerLevel level) {
+                    level.removePlayerImmediately(player, Entity.RemovalReason.DISCARDED);
+                }
+            }
+
+            long hudUpdates = 0;
+            long hudPackets = 0;
+            long hudSends = 0;
+            List<String> outcomes = new ArrayList<>();
+            for (MatchManager.Match match : matches) {
+                hudUpdates += match.getMetrics().getHudUpdates();
+                hudPackets += match.getMetrics().getHudPackets();
+                hudSends += match.getMetrics().getHudSends();
+                // One line per match: its state, then every compared command as kind/slot/target in order
+                StringBuilder outcome = new StringBuilder(match.getState().name());
+                for (MatchCommandBuffer.Applied applied : match.getCommands().getHistory()) {
+                    if (COMPARED_COMMANDS.contains(applied.kind())) {
+                        outcome.append(' ').append(applied.kind()).append('/').append(applied.slot());
+                        if (applied.target() != null) {
+                            outcome.append('/').append(applied.target());
+                        }
+                    }
+                }
+                outcomes.add(outcome.toString());
+            }
+
+            // Drop our own references, then see whether anything else still holds on to a match level
+            matches.clear();
+            long heapGrowth = usedHeapAfterGc() - heapBefore;
+            int retained = 0;
+            for (WeakReference<ServerLevel> level : levels) {
+                if (level.get() != null)
+                    retained++;
+            }
+
+            int ticks = tickTimes.size();
+            double meanMspt = ticks > 0 ? tickNanosTotal / (double) ticks / 1_000_000.0 : 0;
+            DimensionMod.LOGGER.info("Load test ({} bookkeeping): {} matches x {} players over {} ticks",
+                    parallel ? "parallel" : "serial", MATCHES, PLAYERS_PER_MATCH, ticks);
+            DimensionMod.LOGGER.info("  mspt mean {}, p50 {}, p99 {}, max {}", String.format("%.2f", meanMspt),
+                    millis(tickTimes.percentile(0.5)), millis(tickTimes.percentile(0.99)), millis(maxTickNanos));
+            double playerSeconds = players.size() * (ticks / 20.0);
+            DimensionMod.LOGGER.info("  HUD {} packets in {} sends for {} updates: {} vs {} packets/s per player",
+                    hudPackets, hudSends, hudUpdates, String.format("%.3f", hudSends / playerSeconds),
+                    String.format("%.3f", hudUpdates / playerSeconds));
+            DimensionMod.LOGGER.info("  peak resident {} chunks, ~{} MB estimated, ~{} MB per match",
+                    peakResidentChunks, peakResidentBytes / (1024 * 1024), peakResidentBytes / MATCHES / (1024 * 1024));
+            DimensionMod.LOGGER.info("  heap growth {} MB, {} levels still registered, {} levels not yet collected",
+                    heapGrowth / (1024 * 1024), leaked, retained);
+
+            if (leaked > 0) {
+                helper.fail(leaked + " match levels were not unregistered");
+            } else if (lost > 0) {
+                helper.fail(lost + " players did not extract");
+            } else if (meanMspt > MSPT_BUDGET) {
+                helper.fail(String.format("Mean tick time %.2fms is over the %.2fms budget", meanMspt, MSPT_BUDGET));
+            } else {
+                onFinished.accept(outcomes);
+            }
+        }
+
+        private void restoreConfig() {
+            Config.matchWarmupSeconds = savedWarmupSeconds;
+            Config.matchDurationSeconds = savedDurationSeconds;
+            Config.extractionSeconds = savedExtractionSeconds;
+            Config.parallelBookkeeping = savedParallelBookkeeping;
+            MatchCommandBuffer.keepHistory = savedKeepHistory;
+        }
+
+        private static long usedHeapAfterGc() {
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+
+        private static String millis(long nanos) {
+            return String.format("%.2f", nanos / 1_000_000.0);
+        }
+    }
+}
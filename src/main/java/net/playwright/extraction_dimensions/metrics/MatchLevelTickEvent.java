@@ -0,0 +1,23 @@
+package net.playwright.extraction_dimensions.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering one tick of a match dimension.
+ */
+@Name("extraction_dimensions.MatchLevelTick")
+@Label("Match Level Tick")
+@Category({"Extraction Dimensions", "Match"})
+@Description("Time spent ticking a match dimension")
+public class MatchLevelTickEvent extends Event {
+
+    @Label("Match")
+    public String match;
+
+    @Label("State")
+    public String state;
+}
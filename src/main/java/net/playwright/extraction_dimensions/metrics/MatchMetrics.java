@@ -0,0 +1,139 @@
+package net.playwright.extraction_dimensions.metrics;
+
+import jdk.jfr.EventType;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Entity;
+import net.playwright.extraction_dimensions.MatchManager.Match.MatchState;
+import net.playwright.extraction_dimensions.MatchScheduler;
+
+/**
+ * Per-match timings and load figures, kept cheap enough to update every tick.
+ * <p>
+ * Level tick time comes from the Forge level tick events, bookkeeping time from the match's own
+ * scheduled tasks; both go into one-minute rolling histograms. Not thread safe: the metrics are
+ * confined to one thread at a time, the server thread or the match's bookkeeping task, which the server
+ * thread joins.
+ */
+public class MatchMetrics implements MatchScheduler.TimingListener {
+
+    private static final int WINDOW_TICKS = 60 * 20;
+    private static final EventType LEVEL_TICK_EVENT = EventType.getEventType(MatchLevelTickEvent.class);
+    private static final EventType STATS_EVENT = EventType.getEventType(MatchStatsEvent.class);
+
+    private final String matchId;
+    private final RollingHistogram levelTick = new RollingHistogram(WINDOW_TICKS);
+    private final RollingHistogram bookkeeping = new RollingHistogram(WINDOW_TICKS);
+    private final long[] ticksInState = new long[MatchState.values().length];
+    private MatchState state = MatchState.WARMUP;
+    private long stateEnteredTick;
+
+    // Player updates the HUD was asked for, packets it actually sent and the sends they went out in
+    private long hudUpdates;
+    private long hudPackets;
+    private long hudSends;
+
+    private long levelTickStartNanos;
+    private long pendingBookkeepingNanos;
+    private MatchLevelTickEvent levelTickEvent;
+
+    public MatchMetrics(String matchId, long createdTick) {
+        this.matchId = matchId;
+        this.stateEnteredTick = createdTick;
+    }
+
+    public void levelTickStarted() {
+        levelTickStartNanos = System.nanoTime();
+        if (LEVEL_TICK_EVENT.isEnabled()) {
+            levelTickEvent = new MatchLevelTickEvent();
+            levelTickEvent.begin();
+        }
+    }
+
+    public void levelTickEnded() {
+        levelTick.record(System.nanoTime() - levelTickStartNanos);
+        // Bookkeeping from the previous server tick end, recorded once per tick (zeros included)
+        bookkeeping.record(pendingBookkeepingNanos);
+        pendingBookkeepingNanos = 0;
+
+        if (levelTickEvent != null) {
+            levelTickEvent.end();
+            if (levelTickEvent.shouldCommit()) {
+                levelTickEvent.match = matchId;
+                levelTickEvent.state = state.name();
+                levelTickEvent.commit();
+            }
+            levelTickEvent = null;
+        }
+    }
+
+    @Override
+    public void taskRan(long nanos) {
+        pendingBookkeepingNanos += nanos;
+    }
+
+    public void enterState(MatchState newState, long tick) {
+        ticksInState[state.ordinal()] += tick - stateEnteredTick;
+        state = newState;
+        stateEnteredTick = tick;
+    }
+
+    public long getTicksInState(MatchState inState, long now) {
+        long ticks = ticksInState[inState.ordinal()];
+        return inState == state ? ticks + now - stateEnteredTick : ticks;
+    }
+
+    public void hudFlushed(int updates, int packets, int sends) {
+        hudUpdates += updates;
+        hudPackets += packets;
+        hudSends += sends;
+    }
+
+    public long getHudUpdates() {
+        return hudUpdates;
+    }
+
+    public long getHudPackets() {
+        return hudPackets;
+    }
+
+    public long getHudSends() {
+        return hudSends;
+    }
+
+    public RollingHistogram getLevelTickNanos() {
+        return levelTick;
+    }
+
+    public RollingHistogram getBookkeepingNanos() {
+        return bookkeeping;
+    }
+
+    /**
+     * Commits a {@link MatchStatsEvent} if a recording has it enabled.
+     */
+    public void emitStats(ServerLevel level, int players, long estimatedChunkBytes) {
+        if (!STATS_EVENT.isEnabled())
+            return;
+
+        MatchStatsEvent event = new MatchStatsEvent();
+        event.match = matchId;
+        event.state = state.name();
+        event.levelTickP50 = levelTick.percentile(0.5);
+        event.levelTickP99 = levelTick.percentile(0.99);
+        event.bookkeepingP50 = bookkeeping.percentile(0.5);
+        event.bookkeepingP99 = bookkeeping.percentile(0.99);
+        event.loadedChunks = level.getChunkSource().getLoadedChunksCount();
+        event.estimatedChunkBytes = estimatedChunkBytes;
+        event.entities = countEntities(level);
+        event.players = players;
+        event.commit();
+    }
+
+    public static int countEntities(ServerLevel level) {
+        int count = 0;
+        for (Entity ignored : level.getAllEntities()) {
+            count++;
+        }
+        return count;
+    }
+}
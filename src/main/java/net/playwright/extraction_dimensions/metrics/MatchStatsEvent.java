@@ -0,0 +1,55 @@
+package net.playwright.extraction_dimensions.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event with a once-a-second summary of one match.
+ */
+@Name("extraction_dimensions.MatchStats")
+@Label("Match Stats")
+@Category({"Extraction Dimensions", "Match"})
+@Description("Rolling tick timings and load of a match dimension")
+public class MatchStatsEvent extends Event {
+
+    @Label("Match")
+    public String match;
+
+    @Label("State")
+    public String state;
+
+    @Label("Level Tick p50")
+    @Timespan(Timespan.NANOSECONDS)
+    public long levelTickP50;
+
+    @Label("Level Tick p99")
+    @Timespan(Timespan.NANOSECONDS)
+    public long levelTickP99;
+
+    @Label("Bookkeeping p50")
+    @Timespan(Timespan.NANOSECONDS)
+    public long bookkeepingP50;
+
+    @Label("Bookkeeping p99")
+    @Timespan(Timespan.NANOSECONDS)
+    public long bookkeepingP99;
+
+    @Label("Loaded Chunks")
+    public int loadedChunks;
+
+    @Label("Estimated Chunk Heap")
+    @Description("Rough heap taken up by the loaded chunks' blocks, light and block entities")
+    @DataAmount
+    public long estimatedChunkBytes;
+
+    @Label("Entities")
+    public int entities;
+
+    @Label("Players")
+    public int players;
+}
@@ -0,0 +1,80 @@
+package net.playwright.extraction_dimensions.metrics;
+
+/**
+ * A histogram over the last N recorded values.
+ * <p>
+ * Values fall into log-linear buckets (8 per power of two, so about 12% resolution), and the window
+ * remembers only which bucket each value went into. Recording is O(1) and never allocates, which
+ * makes it cheap enough to feed from every tick; percentiles are computed on demand by walking the
+ * bucket counts.
+ * <p>
+ * Not thread safe.
+ */
+public class RollingHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final int[] counts = new int[BUCKET_COUNT];
+    private final short[] window;
+    private int cursor = 0;
+    private int size = 0;
+
+    public RollingHistogram(int windowSize) {
+        this.window = new short[windowSize];
+    }
+
+    public void record(long value) {
+        int bucket = bucketOf(Math.max(0, value));
+        if (size == window.length) {
+            counts[window[cursor]]--;
+        } else {
+            size++;
+        }
+        window[cursor] = (short) bucket;
+        counts[bucket]++;
+        if (++cursor == window.length) {
+            cursor = 0;
+        }
+    }
+
+    /**
+     * @param quantile between 0 and 1, e.g. 0.99
+     * @return an approximation (the lower bound of the matching bucket) of the value at that quantile,
+     *         or 0 if nothing was recorded
+     */
+    public long percentile(double quantile) {
+        if (size == 0)
+            return 0;
+
+        long target = Math.max(1, (long) Math.ceil(quantile * size));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += counts[bucket];
+            if (seen >= target)
+                return lowerBound(bucket);
+        }
+        return lowerBound(BUCKET_COUNT - 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return (1L << exponent) | (sub << (exponent - SUB_BUCKET_BITS));
+    }
+}
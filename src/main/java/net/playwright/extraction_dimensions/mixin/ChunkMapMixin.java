@@ -0,0 +1,38 @@
+package net.playwright.extraction_dimensions.mixin;
+
+import net.minecraft.server.level.ChunkMap;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.playwright.extraction_dimensions.ChunkResidency;
+import net.playwright.extraction_dimensions.EphemeralLevels;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(ChunkMap.class)
+public abstract class ChunkMapMixin {
+
+    @Shadow
+    @Final
+    ServerLevel level;
+
+    // Chunks are also written when they unload, which doesn't go through ServerLevel.save
+    @Inject(method = "save(Lnet/minecraft/world/level/chunk/ChunkAccess;)Z", at = @At("HEAD"), cancellable = true)
+    private void extraction_dimensions$skipEphemeralChunk(ChunkAccess chunk, CallbackInfoReturnable<Boolean> cir) {
+        if (EphemeralLevels.isEphemeral(level)) {
+            cir.setReturnValue(false);
+        }
+    }
+
+    // Players a match has let go of hold no chunks, like spectators
+    @Inject(method = "skipPlayer", at = @At("HEAD"), cancellable = true)
+    private void extraction_dimensions$skipReleasedPlayer(ServerPlayer player, CallbackInfoReturnable<Boolean> cir) {
+        if (ChunkResidency.isReleased(level, player)) {
+            cir.setReturnValue(true);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package net.playwright.extraction_dimensions.mixin;
+
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.chunk.storage.EntityStorage;
+import net.minecraft.world.level.entity.ChunkEntities;
+import net.playwright.extraction_dimensions.EphemeralLevels;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(EntityStorage.class)
+public abstract class EntityStorageMixin {
+
+    @Shadow
+    @Final
+    private ServerLevel level;
+
+    // Entity sections are stored separately from chunks when they unload
+    @Inject(method = "storeEntities", at = @At("HEAD"), cancellable = true)
+    private void extraction_dimensions$skipEphemeralEntities(ChunkEntities<Entity> entities, CallbackInfo ci) {
+        if (EphemeralLevels.isEphemeral(level)) {
+            ci.cancel();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package net.playwright.extraction_dimensions.mixin;
+
+import net.minecraft.world.level.Level;
+import net.playwright.extraction_dimensions.TickGovernor;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(Level.class)
+public abstract class LevelMixin {
+
+    @Inject(method = "tickBlockEntities", at = @At("HEAD"), cancellable = true)
+    private void extraction_dimensions$governBlockEntities(CallbackInfo ci) {
+        if (!TickGovernor.allowBlockEntityTicks((Level) (Object) this)) {
+            ci.cancel();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package net.playwright.extraction_dimensions.mixin;
+
+import net.minecraft.world.entity.Mob;
+import net.playwright.extraction_dimensions.TickGovernor;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(Mob.class)
+public abstract class MobMixin {
+
+    // Only the AI is skipped; movement and physics still run every tick
+    @Inject(method = "serverAiStep", at = @At("HEAD"), cancellable = true)
+    private void extraction_dimensions$governAi(CallbackInfo ci) {
+        if (!TickGovernor.allowMobAi((Mob) (Object) this)) {
+            ci.cancel();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package net.playwright.extraction_dimensions.mixin;
+
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.util.ProgressListener;
+import net.playwright.extraction_dimensions.EphemeralLevels;
+import net.playwright.extraction_dimensions.TickGovernor;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.ModifyVariable;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import java.util.function.BooleanSupplier;
+
+@Mixin(ServerLevel.class)
+public abstract class ServerLevelMixin {
+
+    // Autosave, /save-all and shutdown all go through here; ephemeral levels skip it entirely
+    @Inject(method = "save", at = @At("HEAD"), cancellable = true)
+    private void extraction_dimensions$skipEphemeralSave(ProgressListener progress, boolean flush, boolean skipSave,
+                                                         CallbackInfo ci) {
+        if (EphemeralLevels.isEphemeral((ServerLevel) (Object) this)) {
+            ci.cancel();
+        }
+    }
+
+    @Inject(method = "tick", at = @At("HEAD"), cancellable = true)
+    private void extraction_dimensions$governTick(BooleanSupplier hasTimeLeft, CallbackInfo ci) {
+        ServerLevel level = (ServerLevel) (Object) this;
+        if (TickGovernor.beginLevelTick(level)) {
+            // Skipped ticks still move chunk loading along, so spawn areas keep generating
+            level.getChunkSource().tick(hasTimeLeft, false);
+            ci.cancel();
+        }
+    }
+
+    @Inject(method = "tick", at = @At("RETURN"))
+    private void extraction_dimensions$endGovernedTick(BooleanSupplier hasTimeLeft, CallbackInfo ci) {
+        TickGovernor.endLevelTick();
+    }
+
+    @ModifyVariable(method = "tickChunk", at = @At("HEAD"), argsOnly = true)
+    private int extraction_dimensions$governRandomTicks(int randomTickSpeed) {
+        return TickGovernor.allowRandomTicks((ServerLevel) (Object) this) ? randomTickSpeed : 0;
+    }
+}